@@ -3,6 +3,7 @@ package org.smltools.grepp.cli
 import groovy.util.logging.Slf4j
 import groovy.util.ConfigObject
 import groovy.util.OptionAccessor
+import java.nio.charset.Charset
 import org.smltools.grepp.cli.varparsers.*
 import org.smltools.grepp.config.ConfigHolder
 import org.smltools.grepp.filters.Filter
@@ -21,9 +22,11 @@ import org.smltools.grepp.util.PropertiesParser
 import org.smltools.grepp.filters.enums.*
 import org.smltools.grepp.filters.logfile.FileDateFilter
 import org.smltools.grepp.filters.logfile.FileSortFilter
+import org.smltools.grepp.output.BufferedOutput
 import org.smltools.grepp.output.ConfigOutput
 import org.smltools.grepp.output.GreppOutput
 import org.smltools.grepp.output.SimpleOutput
+import org.smltools.grepp.output.SpoolOutputStream
 import org.smltools.grepp.processors.DataProcessor
 import org.smltools.grepp.processors.InputStreamProcessor
 import org.smltools.grepp.processors.TextFileProcessor
@@ -42,6 +45,9 @@ public class CLIFacade {
 
 	//OPTIONS
 	protected File curWorkDir //allows to restrict access to a supplied working dir only
+	protected OutputStream resultStream //results are printed there instead of the console, if it's set
+	protected InputStream inputStream //is processed instead of System.in, if it's set
+	protected String spoolFileSuffix //is appended to the spool file name, if it's set
         
 	public CLIFacade(ConfigHolder config) {
 		this.config = config
@@ -59,6 +65,39 @@ public class CLIFacade {
 		return curWorkDir
 	}
 
+	/**
+	 * Makes results be printed to the given stream instead of the console; e.g. by {@link GreppServer}. Spooling (-s) isn't affected.
+	 */
+	public void setResultStream(OutputStream resultStream) {
+		this.resultStream = resultStream
+	}
+
+	/**
+	 * Prints a notice for the user to the result stream if it's set, so a server client gets it; to the console otherwise.
+	 */
+	protected void printNotice(String notice) {
+		if (resultStream != null) {
+			resultStream.write((notice + "\n").getBytes(Charset.defaultCharset()))
+		}
+		else {
+			println notice
+		}
+	}
+
+	/**
+	 * Makes the given stream be processed instead of System.in, if no files are given.
+	 */
+	public void setInputStream(InputStream inputStream) {
+		this.inputStream = inputStream
+	}
+
+	/**
+	 * Makes the spool file name unique, when several queries could spool in the same second; e.g. by {@link GreppServer}.
+	 */
+	public void setSpoolFileSuffix(String spoolFileSuffix) {
+		this.spoolFileSuffix = spoolFileSuffix
+	}
+
 
 	public CliBuilder getCliBuilder() {
 		def cli = new CliBuilder(usage:"grepp [options] [extra_options|filter_regex] [filename [filename]]"
@@ -86,6 +125,8 @@ Using on NIX
 grepp --my_predefined_config -d 2011-11-11T11:10;2011-11-11T11:11 myapp.log 
 grepp --my_predefined_config -d 2011-11-11T11:10;-10 myapp.log 
 grepp --my_predefined_regex_id myapp.log 
+grepp -f --my_predefined_config myapp.log 
+grepp -n 20 --reverse --my_predefined_config myapp.log* 
 grepp 'SomethingINeedToFind' myanotherapp.log 
 grepp -s -d 2012-12-12T12;2012-12-12T12:12 'RecordShouldContainThis%and%ShouldContainThisAsWell' thirdapp.log 
 grepp -d 2009-09-09T09:00;+ 'RecordShouldContainThis%and%ShouldContainThisAsWell%or%ItCouldContainThis%and%This' thirdapp.log 
@@ -94,7 +135,11 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
 """)
         cli.v("Enforce info to stdout")
         cli.t("Enforce trace to stdout")
+        cli.server(args:1, argName:"port", "Starts a query server on localhost:<port>, which keeps config and plugins loaded. Queries are sent to /grepp with the usual arguments as 'arg' parameters, e.g. curl 'localhost:<port>/grepp?arg=-l&arg=Chapter&arg=Once&arg=app.log'; results are streamed back")
         cli.s("Toggles spooling to configured results dir and with configured spooling extension")
+        cli.gz("Toggles gzip compression of the spooled results; '.gz' is appended to the spool file name. Compression is done on a separate thread")
+        cli.roll(args:1, argName:"size", "Rolls the spooled results by size, i.e. a new spool file (e.g. result_<time>_002.txt) is started once the current one has <size> bytes on disk. <size> is in bytes, or with K, M, G suffix")
+        cli.flush(args:1, argName:"policy", "Sets when buffered results are printed: 'entry' (each result), 'chunk' (after each file), 'time[:millis]' (if a second or <millis> passed since the last time, and after each file) or 'size' (only when the buffer is full). Default is 'chunk', and 'entry' for a stream input; a console terminal is always flushed on each result")
         cli.m("Toggles non-stop file traversing")
         cli.h("Print this message")
         cli.l(args:1, argName:"entry_regex", "Tells grepp to split the input in blocks, treating <entry_regex> as a start of the next block (so it's a block end at the same time).\n<entry_regex> - a string which will be used to \"split\" the input. Is optinal, as by default it will be looked up by the filename in config. Anyway, if not found input would be processed by line.")
@@ -116,6 +161,17 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
         cli.noff("No File Filtering - i.e. turns off file filtering based on date etc.")		
         cli.norx("No RegeX - i.e. treats regex special symbols as usual chars. Extended %or%, %and% etc. are still available though")
         cli.nohd("No HeaDer - i.e. forces header ommitting for a report filter")
+        cli.seek("SEEKing - i.e. skips to the first entry after the -d 'from' date by a binary search in the file, instead of filtering the file from its start. Seeking relies on entries being ordered by date")
+        cli.idx("Toggles a sidecar index of entry dates for the files, which is kept in the configured index dir. It's used to seek to the -d 'from' date and to split files for -par, so it implies -seek. If a file grew, only the appended part is indexed")
+        cli.mmap("Toggles memory-mapped file reading. Is faster for big files with ASCII-compatible encodings")
+        cli.lazy("Toggles lazy line decoding, i.e. entries are matched as views of the read bytes, and only the ones which could pass the filter_regex are decoded. Is faster for ASCII or UTF-8 logs where most entries don't match; is ignored for thread (-e) or report filtering")
+        cli.ra("Toggles read-ahead, i.e. files are read on a separate thread while the read lines are filtered, and the next file is read while the current one is filtered. The time reading and filtering waited for each other is logged, to tell if it's I/O or CPU bound")
+        cli.par(args:1, argName:"threads", "Toggles parallel file processing in <threads> threads. For the piped input, entries are filtered in <threads> threads while the input is read. Results are printed in the same order as without it. Is ignored with -m, and for the filters which can't be run in parallel (i.e. reports)")
+        cli.f("Follows the files like tail -f does, i.e. keeps filtering the lines appended to them until interrupted. Rotated (renamed or truncated) files are followed from the start. The last entry is printed if there are no new lines for a while (see -idle)")
+        cli.idle(args:1, argName:"millis", "Sets the time without new lines for -f, after which the last pending entry is printed. Default is 500")
+        cli.n(args:1, argName:"count", "Stops processing as soon as <count> results are printed. Is applied to the whole input, not to each file; -par is ignored with it")
+        cli.r(longOpt:"reverse", "Processes the input newest first, i.e. files are taken from the newest one and each is read from the end, entry by entry. Files which can't be read so with the current filters (i.e. with threads, reports or entry terminators, or compressed ones) are read from the start. Is most useful with -n")
+        cli.split(args:1, argName:"size", "Sets the size of a part for -par; files bigger than two parts are split at log entry starts and the parts are processed in parallel, unless thread (-e) or report filtering is on. <size> is in bytes, or with K, M, G suffix. Default is 64M")
 
         return cli
 	}
@@ -151,6 +207,9 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
         	System.exit(0)
         }
 
+        getFlushPolicy(options) //so an invalid -flush value is reported before anything is processed
+        getFlushInterval(options)
+
         if (options.v) {
         	enforceInfo()
         }
@@ -170,7 +229,8 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
         ConfigObject runtimeConfig = new ConfigObject()
         runtimeConfig.spoolFileExtension = config.defaults.spoolFileExtension
         runtimeConfig.resultsDir = config.defaults.resultsDir
-		runtimeConfig.spoolFileName = String.format("result_%tY%<tm%<td_%<tH%<tM%<tS", new Date())
+        runtimeConfig.indexDir = config.defaults.indexDir ?: 'index'
+		runtimeConfig.spoolFileName = String.format("result_%tY%<tm%<td_%<tH%<tM%<tS", new Date()) + (spoolFileSuffix ?: "")
 		
 		if (curWorkDir != null) {
 			runtimeConfig.cwd = curWorkDir
@@ -290,7 +350,7 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
 		}
 
 		if (options.dateProp && !options.d) {
-			println "dateProp option is ignored if the d option is not supplied"
+			printNotice("dateProp option is ignored if the d option is not supplied")
 		}
 
 		if (options.d) {
@@ -392,21 +452,35 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
 	}
 
 	public GreppOutput makeOutput(ConfigObject runtimeConfig, FilterChain entryFilterChain, OptionAccessor options) {
-		PrintWriter printer = null
 		GreppOutput output = null
+		BufferedOutput.FlushPolicy flushPolicy = getFlushPolicy(options)
+		if (flushPolicy == null && !runtimeConfig.data.containsKey('files')) {
+			flushPolicy = BufferedOutput.FlushPolicy.ENTRY //a stream could be endless, e.g. piped from tail -f; so results shouldn't wait for its end
+		}
+
 		if (options.p) {
 			LOGGER.info("Creating config output")
 			output = new ConfigOutput(config, entryFilterChain)
 		}
 		else if (options.s) {
 			LOGGER.info("Creating file output")
-			printer = getFilePrinter(runtimeConfig)
-			output = new SimpleOutput<String>(config, entryFilterChain, printer)
+			runtimeConfig.spoolCompressed = options.gz
+			runtimeConfig.spoolRollSize = options.roll ? GreppUtil.parseSize(options.roll) : 0L
+			output = BufferedOutput.toStream(config, entryFilterChain, getSpoolStream(runtimeConfig), flushPolicy)
 		}
 		else {
 			LOGGER.info("Creating console output")
-			printer = getConsolePrinter()
-			output = new SimpleOutput<String>(config, entryFilterChain, printer)
+			output = resultStream != null ? BufferedOutput.toStream(config, entryFilterChain, resultStream, flushPolicy)
+					: BufferedOutput.toConsole(config, entryFilterChain, flushPolicy)
+		}
+
+		Long flushInterval = getFlushInterval(options)
+		if (flushInterval != null && output instanceof BufferedOutput) {
+			output.setFlushInterval(flushInterval)
+		}
+
+		if (options.n && output instanceof SimpleOutput) {
+			output.setResultLimit(Integer.valueOf(options.n))
 		}
 		return output
 	}
@@ -415,18 +489,43 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
 		DataProcessor processor = null
 		if (runtimeConfig.data.containsKey('files')) {
 			processor = new TextFileProcessor(output, options.m)
+			processor.setUseMappedFiles(options.mmap)
+			processor.setDecodingLazily(options.lazy)
+			processor.setReadingAhead(options.ra)
+			if (options.par) {
+				processor.setThreads(Integer.valueOf(options.par))
+			}
+			if (options.split) {
+				processor.setSplitSize(GreppUtil.parseSize(options.split))
+			}
+			processor.setSeeking(options.seek || options.idx)
+			if (options.idx) {
+				processor.setIndexDir(new File(runtimeConfig.home, runtimeConfig.indexDir))
+			}
+			processor.setFollowing(options.f)
+			processor.setReversed(options.r)
+			if (options.idle) {
+				processor.setIdleTimeout(Long.valueOf(options.idle))
+			}
 			runtimeConfig.data = runtimeConfig.data.files
 			
 		}
 		else {
 			processor = new InputStreamProcessor(output)
-			runtimeConfig.data = System.in
+			if (options.par) {
+				processor.setThreads(Integer.valueOf(options.par))
+			}
+			runtimeConfig.data = inputStream != null ? inputStream : System.in
 		}		
 		return processor
 	}
 
 	public void process(String[] args) {
 		def options = parseOptions(args)
+		if (options.server) {
+			new GreppServer(config, Integer.valueOf(options.server)).run()
+			return
+		}
 		def runtimeConfig = makeRuntimeConfig()
 		makeFilterChains(runtimeConfig, options)
 		def entryFilterChain = runtimeConfig.containsKey('entryFilterChain') ? runtimeConfig.entryFilterChain : null
@@ -446,7 +545,11 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
 
 			if (options.add) {
 				if (entryFilterChain.configIdExists(options.add) || fileFilterChain.configIdExists(options.add)) {
-					println "ConfigId $options.add already exists for a given filter chain; try different one or remove the old one"
+					String notice = "ConfigId $options.add already exists for a given filter chain; try different one or remove the old one"
+					if (resultStream != null) {
+						throw new IllegalArgumentException(notice) //so the server fails the query
+					}
+					println notice
 					return
 				}
 			}
@@ -549,17 +652,62 @@ cat blabla.txt | grepp -l Chapter 'Once upon a time' > myfavoritechapter.txt
 		GreppUtil.resetLogging(infoConfig)
 	}
 
-    public static PrintWriter getConsolePrinter() {
-		return new PrintWriter(System.out, true)
-	}
-	
-	public static PrintWriter getFilePrinter(ConfigObject runtimeConfig) {
+	/**
+	 * Opens a stream to the spool file in the results dir. It's gzipped and rolled by size, if runtimeConfig has spoolCompressed and spoolRollSize set (see {@link SpoolOutputStream}).
+	 */
+	public static OutputStream getSpoolStream(ConfigObject runtimeConfig) {
 		def outputDir = new File(runtimeConfig.home, runtimeConfig.resultsDir)
 		if (!outputDir.exists()) outputDir.mkdir()
-		def out_file = new File(outputDir, runtimeConfig.spoolFileName + "." + runtimeConfig.spoolExtension)
-		LOGGER.trace("Creating new file: {}", out_file.getCanonicalPath())
-		out_file.createNewFile()
-		return new PrintWriter(new FileWriter(out_file), true) //autoflushing PrintWriter
+		def spool = new SpoolOutputStream(outputDir, runtimeConfig.spoolFileName, runtimeConfig.spoolFileExtension, runtimeConfig.spoolCompressed == true
+			, runtimeConfig.spoolRollSize ?: 0L)
+		LOGGER.trace("Created new file: {}", spool.getCurrentFile().getCanonicalPath())
+		return spool
+	}
+
+	/**
+	 * Parses -flush option value, i.e. a policy name optionally followed by ':' and an interval (for 'time').
+	 *
+	 * @return FlushPolicy, or null if it's not given
+	 * @throws IllegalArgumentException if the policy is unknown
+	 */
+	public static BufferedOutput.FlushPolicy getFlushPolicy(OptionAccessor options) {
+		if (!options.flush) {
+			return null
+		}
+
+		String policy = options.flush.split(':')[0]
+		BufferedOutput.FlushPolicy flushPolicy = BufferedOutput.FlushPolicy.values().find { it.name().equalsIgnoreCase(policy) }
+		if (flushPolicy == null) {
+			throw new IllegalArgumentException("Invalid -flush policy: " + policy + "; should be one of entry, chunk, time[:millis], size")
+		}
+		return flushPolicy
+	}
+
+	/**
+	 * Parses the interval of -flush option value, i.e. what follows 'time:'.
+	 *
+	 * @return interval in milliseconds, or null if it's not given
+	 * @throws IllegalArgumentException if it's not a positive number, or is given for a policy other than 'time'
+	 */
+	public static Long getFlushInterval(OptionAccessor options) {
+		if (!options.flush) {
+			return null
+		}
+
+		String[] flushParams = options.flush.split(':', 2)
+		if (flushParams.length < 2) {
+			return null
+		}
+
+		if (getFlushPolicy(options) != BufferedOutput.FlushPolicy.TIME) {
+			throw new IllegalArgumentException("Invalid -flush value: " + options.flush + "; only 'time' policy has an interval")
+		}
+
+		Long flushInterval = flushParams[1].isLong() ? Long.valueOf(flushParams[1]) : null
+		if (flushInterval == null || flushInterval < 1) {
+			throw new IllegalArgumentException("Invalid -flush interval: " + flushParams[1] + "; should be a positive number of milliseconds")
+		}
+		return flushInterval
 	}
 
 }
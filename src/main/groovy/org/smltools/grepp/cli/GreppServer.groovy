@@ -0,0 +1,275 @@
+package org.smltools.grepp.cli
+
+import groovy.util.logging.Slf4j
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpHandler
+import com.sun.net.httpserver.HttpServer
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReadWriteLock
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import org.smltools.grepp.config.ConfigHolder
+
+/**
+ * Long-running grepp, which processes queries sent over a local HTTP API. <br>
+ * Config, Groovy runtime and compiled plugins stay loaded between queries, so a query doesn't pay for JVM startup and their initialization. <br>
+ * A query is GET or POST to /grepp with the same arguments as the CLI, each in an 'arg' parameter; e.g. /grepp?arg=-l&arg=Chapter&arg=Once&arg=app.log <br>
+ * Results are streamed back with chunked transfer as they're flushed (see -flush). If no files are given, the POST body is processed as the piped input. <br>
+ * Queries are processed by a fixed thread pool, each by its own {@link CLIFacade} sharing the config. Queries which save config (i.e. --add or -p) should be POSTed, and are processed while no other query is. <br>
+ * Options, which affect the whole server or never end (-h, -server, -v, -t and -f), are refused. A query is aborted once its client has gone, as soon as results fail to be flushed.
+ *
+ * @author Alexander Semelit
+ *
+ */
+@Slf4j("LOGGER")
+public class GreppServer {
+	public static final String CONTEXT = "/grepp"
+	public static final int DEFAULT_THREADS = 4
+	private static final List<String> REFUSED_OPTIONS = ["h", "help", "server", "v", "t", "f"]
+	private static final List<String> CONFIG_SAVING_OPTIONS = ["add", "p", "parse"]
+
+	private final ConfigHolder config
+	private final ReadWriteLock configLock = new ReentrantReadWriteLock() //queries read config, while --add and -p save it
+	private final AtomicLong queryCount = new AtomicLong()
+	private final int port
+	private final int threads
+	private HttpServer server
+	private ExecutorService executor
+
+	public GreppServer(ConfigHolder config, int port) {
+		this(config, port, DEFAULT_THREADS)
+	}
+
+	public GreppServer(ConfigHolder config, int port, int threads) {
+		if (config == null) {
+			throw new IllegalArgumentException("Config shouldn't be null")
+		}
+		if (port < 0 || threads < 1) {
+			throw new IllegalArgumentException("Port shouldn't be negative, and threads number should be positive: " + port + ";" + threads)
+		}
+		this.config = config
+		this.port = port
+		this.threads = threads
+	}
+
+	/**
+	 * Starts listening on the loopback interface only.
+	 */
+	public void start() {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0)
+		executor = Executors.newFixedThreadPool(threads)
+		server.setExecutor(executor)
+		server.createContext(CONTEXT, { HttpExchange exchange -> handle(exchange) } as HttpHandler)
+		server.start()
+		LOGGER.info("Listening on {}{} in {} threads", server.getAddress(), CONTEXT, threads)
+	}
+
+	/**
+	 *
+	 * @return port the server is listening on; is useful if it was started on port 0
+	 */
+	public int getPort() {
+		return server != null ? server.getAddress().getPort() : port
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0)
+			executor.shutdownNow()
+			server = null
+			notifyAll()
+		}
+	}
+
+	/**
+	 * Starts the server and blocks until it's stopped, or until the JVM is.
+	 */
+	public void run() {
+		start()
+		Runtime.getRuntime().addShutdownHook(new Thread({ stop() } as Runnable))
+		synchronized (this) {
+			while (server != null) {
+				wait()
+			}
+		}
+	}
+
+	protected void handle(HttpExchange exchange) {
+		Date startTime = new Date()
+		long queryId = queryCount.incrementAndGet()
+		List<String> args = parseArgs(exchange.getRequestURI().getRawQuery())
+		LOGGER.info("Query {}: {}", queryId, args)
+		ResponseStream response = new ResponseStream(exchange)
+		try {
+			boolean isPost = "POST".equals(exchange.getRequestMethod())
+			if (!isPost && !"GET".equals(exchange.getRequestMethod())) {
+				response.fail(405, "Only GET and POST are supported")
+				return
+			}
+			if (args.isEmpty()) {
+				response.fail(400, "No arguments given; pass them as 'arg' parameters")
+				return
+			}
+			String refused = findOption(args, REFUSED_OPTIONS)
+			if (refused != null) {
+				response.fail(400, refused + " isn't available via the server; run grepp with it instead")
+				return
+			}
+			boolean isSavingConfig = findOption(args, CONFIG_SAVING_OPTIONS) != null
+			if (isSavingConfig && !isPost) {
+				response.fail(405, "Queries which save config should be sent with POST")
+				return
+			}
+
+			CLIFacade facade = new CLIFacade(config)
+			facade.setResultStream(response)
+			facade.setInputStream(exchange.getRequestBody())
+			facade.setSpoolFileSuffix("_" + queryId)
+			def lock = isSavingConfig ? configLock.writeLock() : configLock.readLock()
+			lock.lock()
+			try {
+				facade.process(args as String[])
+			}
+			finally {
+				lock.unlock()
+			}
+		}
+		catch (Exception e) {
+			if (response.isBroken()) {
+				LOGGER.info("Query {} is aborted, since its client has gone", queryId)
+			}
+			else {
+				LOGGER.error("An unexpected exception occured", e)
+				response.fail(400, "Error occured! " + e.getMessage())
+			}
+		}
+		finally {
+			response.close()
+			exchange.close()
+			LOGGER.info("Query {} processing time = {} sec", queryId, ((new Date().getTime() - startTime.getTime())/1000))
+		}
+	}
+
+	/**
+	 * Finds the first of the options given either with - or --.
+	 *
+	 * @return the option as it's given, or null if none is
+	 */
+	static String findOption(List<String> args, List<String> options) {
+		return args.find { String arg -> options.any { arg == "-" + it || arg == "--" + it } }
+	}
+
+	/**
+	 * Parses 'arg' parameters of a raw query string in their order.
+	 */
+	static List<String> parseArgs(String rawQuery) {
+		List<String> args = new ArrayList<String>()
+		if (rawQuery != null) {
+			for (String param : rawQuery.split("&")) {
+				int eqIdx = param.indexOf('=')
+				if (eqIdx > 0 && "arg".equals(URLDecoder.decode(param.substring(0, eqIdx), "UTF-8"))) {
+					args.add(URLDecoder.decode(param.substring(eqIdx + 1), "UTF-8"))
+				}
+			}
+		}
+		return args
+	}
+
+	/**
+	 * Response body, which sends 200 with chunked transfer on the first write. <br>
+	 * So a query failing before it printed anything gets an error status; otherwise the error message is appended to the results.
+	 */
+	private static class ResponseStream extends OutputStream {
+		private final HttpExchange exchange
+		private OutputStream body = null
+		private boolean isClosed = false
+		private boolean isBroken = false
+
+		ResponseStream(HttpExchange exchange) {
+			this.exchange = exchange
+		}
+
+		private OutputStream body() {
+			if (body == null) {
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=" + java.nio.charset.Charset.defaultCharset().name())
+				exchange.sendResponseHeaders(200, 0) //0 means chunked
+				body = exchange.getResponseBody()
+			}
+			return body
+		}
+
+		/**
+		 *
+		 * @return true if writing to the client has failed, i.e. it has gone
+		 */
+		boolean isBroken() {
+			return isBroken
+		}
+
+		void fail(int status, String message) {
+			if (isClosed || isBroken) {
+				return
+			}
+			byte[] bytes = (message + "\n").getBytes("UTF-8")
+			if (body == null) {
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8")
+				exchange.sendResponseHeaders(status, bytes.length)
+				body = exchange.getResponseBody()
+			}
+			write(bytes, 0, bytes.length)
+		}
+
+		@Override
+		public void write(int b) {
+			try {
+				body().write(b)
+			}
+			catch (IOException ioe) {
+				isBroken = true
+				throw ioe
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			try {
+				body().write(b, off, len)
+			}
+			catch (IOException ioe) {
+				isBroken = true
+				throw ioe
+			}
+		}
+
+		@Override
+		public void flush() {
+			if (body != null) {
+				try {
+					body.flush()
+				}
+				catch (IOException ioe) {
+					isBroken = true
+					throw ioe
+				}
+			}
+		}
+
+		/**
+		 * Output closes it when a query is done; the response is ended by the server after that.
+		 */
+		@Override
+		public void close() {
+			if (!isClosed && !isBroken) {
+				try {
+					body()
+					flush()
+				}
+				catch (IOException ignored) {
+					//client has gone after the last results; there's nobody to tell
+				}
+			}
+			isClosed = true
+		}
+	}
+}
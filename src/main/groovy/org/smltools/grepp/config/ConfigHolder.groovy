@@ -22,6 +22,7 @@ import org.smltools.grepp.util.GreppUtil
  */
 
 public class ConfigHolder extends ConfigObject {
+    public final static String DEFAULTS_KEY = "defaults";
     public final static String SAVED_CONFIG_KEY = "savedConfigs";
     public final static String SAVED_CONFIG_FILENAME_PATTERN_KEY = "pattern";
     public final static String SAVED_CONFIG_STARTER_KEY = "starter";
@@ -32,33 +33,45 @@ public class ConfigHolder extends ConfigObject {
     public final static String SAVED_CONFIG_LOG_THRESHOLD_KEY = "logThreshold";
 
     /**
-     * Finds config id by specified String. Method looks up for <config> element containing matching <pattern> with "alevel" parameter equal to level.
+     * Finds config id by specified String, i.e. the first savedConfig whose 'pattern' is found in it. Patterns are matched by a {@link FileNameIndex} made once per config.
      * 
      * @param config
      * @param fileName String which would be matched to 'pattern' property of a savedConfig
      * @return
      */
-    @SuppressWarnings("unchecked")
     public static String findConfigIdByFileName(ConfigHolder config, String fileName) {
             if (config == null || fileName == null) {
                     throw new IllegalArgumentException("Both config and fileName shouldn't be null");
             }
 
-            return config.savedConfigs.findResult { configId, props ->
-                    if (props.containsKey(SAVED_CONFIG_FILENAME_PATTERN_KEY)) {
-                            String currentConfigPtrn = props.pattern
-                            if (fileName =~ currentConfigPtrn) {
-                                return configId;
-                            }
-                    }
-            }
+            return config.getFileNameIndex().find(fileName)
     } 
     
     private URL configFilePath
+    private FileNameIndex fileNameIndex
+
+    /**
+     *
+     * @return index of savedConfigs file name patterns; it's made again after the config was merged, or if any of the patterns has changed
+     */
+    synchronized FileNameIndex getFileNameIndex() {
+        Map savedConfigs = (Map) this.get(SAVED_CONFIG_KEY)
+        if (fileNameIndex == null || !fileNameIndex.isMadeOf(savedConfigs)) {
+            fileNameIndex = new FileNameIndex(savedConfigs)
+        }
+        return fileNameIndex
+    }
+
+    @Override
+    public synchronized Map merge(ConfigObject other) {
+        fileNameIndex = null
+        return super.merge(other)
+    }
 
     public void save() {
     	backupConfigFile()
     	writeToConfigFile()
+    	writeSnapshot()
     }
 
     public ConfigHolder() {
@@ -69,12 +82,42 @@ public class ConfigHolder extends ConfigObject {
         if (configFilePath == null) throw new IllegalArgumentException("configFilePath shouldn't be null")
         
         this.configFilePath = configFilePath
-        this.merge(new ConfigSlurper().parse(configFilePath))
+        ConfigObject snapshot = readSnapshot()
+        if (snapshot != null) {
+            this.merge(snapshot)
+        }
+        else {
+            this.merge(new ConfigSlurper().parse(configFilePath))
+            writeSnapshot()
+        }
+    }
+
+    /**
+     *
+     * @return config file, or null if the config isn't loaded from a file; e.g. from a jar
+     */
+    File findConfigFile() {
+        return configFilePath != null && "file".equals(configFilePath.getProtocol()) ? new File(configFilePath.toURI()) : null
+    }
+
+    ConfigObject readSnapshot() {
+        File configFile = findConfigFile()
+        return configFile != null ? ConfigSnapshot.read(configFile) : null
+    }
+
+    void writeSnapshot() {
+        File configFile = findConfigFile()
+        if (configFile != null) {
+            ConfigSnapshot.write(configFile, this)
+        }
     }
 
     void loadDefaults() {
         this.defaults.spoolFileExtension = 'txt'
         this.defaults.resultsDir = 'results'
+        this.defaults.indexDir = 'index'
+        this.defaults.threadBuffersLimit = '64M'
+        this.defaults.compressThreadBuffers = false
         this.defaults.report.aggregator = 'csv'
         this.defaults.report.printHeader = true
     }
@@ -0,0 +1,243 @@
+package org.smltools.grepp.config;
+
+import groovy.lang.GString;
+import groovy.util.ConfigObject;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smltools.grepp.util.GreppUtil;
+
+/**
+ *
+ * Compact binary snapshot of a parsed config, kept next to the config file as &lt;config file&gt;.snapshot, so ConfigSlurper isn't run on each start. <br>
+ * Snapshot holds SHA-1 of the config file it was made of, and is ignored if the file has changed. <br>
+ * Only nested maps, lists, strings, numbers and booleans are supported; a config with anything else (e.g. a closure) isn't snapshotted.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class ConfigSnapshot {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConfigSnapshot.class);
+	public static final String SNAPSHOT_FILE_EXTENSION = ".snapshot";
+	private static final int MAGIC = 0x47524350; //GRCP
+	private static final int FORMAT_VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte INTEGER = 3;
+	private static final byte LONG = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte BIG_DECIMAL = 6;
+	private static final byte BIG_INTEGER = 7;
+	private static final byte LIST = 8;
+	private static final byte CONFIG = 9;
+	private static final byte MAP = 10;
+
+	private ConfigSnapshot() { throw new AssertionError(); } //please don't instantiate the class
+
+	public static File snapshotFileOf(File configFile) {
+		return new File(configFile.getPath() + SNAPSHOT_FILE_EXTENSION);
+	}
+
+	/**
+	 *
+	 * @param configFile config file to find a snapshot of
+	 * @return parsed config as it was snapshotted, or null if there is no snapshot of the current config file content
+	 */
+	public static ConfigObject read(File configFile) {
+		File snapshotFile = snapshotFileOf(configFile);
+		if (!snapshotFile.isFile()) {
+			LOGGER.trace("No config snapshot {}", snapshotFile.getPath());
+			return null;
+		}
+
+		try {
+			String hash = GreppUtil.sha1Of(configFile, null);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 64 * 1024));
+			try {
+				if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !hash.equals(in.readUTF())) {
+					LOGGER.debug("Config snapshot {} is stale", snapshotFile.getPath());
+					return null;
+				}
+				Object config = readValue(in);
+				return config instanceof ConfigObject ? (ConfigObject) config : null;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.debug("Can't read config snapshot {}", snapshotFile.getPath(), ioe);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the config for the current config file content. It's written to a temporary file and renamed, so a concurrent start never reads a partial snapshot. <br>
+	 * Failures are logged only, as the config is just parsed next time.
+	 *
+	 * @param configFile file the config was parsed from
+	 * @param config parsed config
+	 */
+	public static void write(File configFile, Map<?, ?> config) {
+		File snapshotFile = snapshotFileOf(configFile);
+		File tmpFile = new File(snapshotFile.getPath() + ".tmp" + System.nanoTime());
+		try {
+			String hash = GreppUtil.sha1Of(configFile, null);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 64 * 1024));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeUTF(hash);
+				writeValue(out, config);
+			}
+			finally {
+				out.close();
+			}
+			if (snapshotFile.exists() && !snapshotFile.delete()) {
+				throw new IOException("Can't replace " + snapshotFile.getPath());
+			}
+			if (!tmpFile.renameTo(snapshotFile)) {
+				throw new IOException("Can't rename " + tmpFile.getPath());
+			}
+			LOGGER.debug("Config snapshot is written to {}", snapshotFile.getPath());
+		}
+		catch (IOException ioe) {
+			LOGGER.debug("Can't write config snapshot {}", snapshotFile.getPath(), ioe);
+		}
+		catch (IllegalArgumentException iae) {
+			LOGGER.debug("Config can't be snapshotted: {}", iae.getMessage());
+		}
+		finally {
+			if (tmpFile.exists() && !tmpFile.delete()) {
+				LOGGER.debug("Can't delete {}", tmpFile.getPath());
+			}
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof String || value instanceof GString) {
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof BigDecimal) {
+			out.writeByte(BIG_DECIMAL);
+			writeString(out, value.toString());
+		}
+		else if (value instanceof BigInteger) {
+			out.writeByte(BIG_INTEGER);
+			writeString(out, value.toString());
+		}
+		else if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			out.writeByte(LIST);
+			out.writeInt(list.size());
+			for (Object item: list) {
+				writeValue(out, item);
+			}
+		}
+		else if (value instanceof Map) {
+			Map<?, ?> map = (Map<?, ?>) value;
+			out.writeByte(value instanceof ConfigObject ? CONFIG : MAP);
+			out.writeInt(map.size());
+			for (Map.Entry<?, ?> entry: map.entrySet()) {
+				writeValue(out, entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		}
+		else {
+			throw new IllegalArgumentException("unsupported value of " + value.getClass().getName());
+		}
+	}
+
+	/**
+	 * Strings are written as UTF-8 bytes with int length, since writeUTF is limited to 64K.
+	 */
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case STRING:
+				return readString(in);
+			case BOOLEAN:
+				return in.readBoolean();
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case BIG_DECIMAL:
+				return new BigDecimal(readString(in));
+			case BIG_INTEGER:
+				return new BigInteger(readString(in));
+			case LIST: {
+				int size = in.readInt();
+				List<Object> list = new ArrayList<Object>(size);
+				for (int i = 0; i < size; i++) {
+					list.add(readValue(in));
+				}
+				return list;
+			}
+			case CONFIG:
+			case MAP: {
+				int size = in.readInt();
+				Map<Object, Object> map = type == CONFIG ? new ConfigObject() : new LinkedHashMap<Object, Object>();
+				for (int i = 0; i < size; i++) {
+					Object key = readValue(in);
+					map.put(key, readValue(in));
+				}
+				return map;
+			}
+			default:
+				throw new IOException("Unknown value type: " + type);
+		}
+	}
+}
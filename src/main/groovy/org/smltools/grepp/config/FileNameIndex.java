@@ -0,0 +1,100 @@
+package org.smltools.grepp.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smltools.grepp.util.JoinedPatterns;
+
+/**
+ *
+ * Finds a saved config id by a file name with a single precompiled pattern of all the savedConfigs patterns. <br>
+ * Patterns are joined (see {@link JoinedPatterns}) as (?:.*?(p1)|.*?(p2)|...) and matched from the start, so the first config in the config order whose pattern is found in the name wins, as with =~ over each of them. <br>
+ * If any pattern can't be joined, patterns are matched one by one instead.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class FileNameIndex {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FileNameIndex.class);
+
+	private final List<String> configIds = new ArrayList<String>();
+	private final List<Pattern> patterns = new ArrayList<Pattern>();
+	private final JoinedPatterns joined;
+	private final List<String> sources = new ArrayList<String>(); //config id and pattern of each savedConfig having it, to tell if the index is stale
+
+	/**
+	 *
+	 * @param savedConfigs savedConfigs section of the config; could be null
+	 */
+	public FileNameIndex(Map<?, ?> savedConfigs) {
+		if (savedConfigs != null) {
+			for (Map.Entry<?, ?> savedConfig: savedConfigs.entrySet()) {
+				Object pattern = patternOf(savedConfig.getValue());
+				if (pattern != null) {
+					sources.add(savedConfig.getKey().toString());
+					sources.add(pattern.toString());
+					try {
+						patterns.add(Pattern.compile(pattern.toString()));
+						configIds.add(savedConfig.getKey().toString());
+					}
+					catch (PatternSyntaxException pse) {
+						LOGGER.error("Invalid file name pattern of {}: {}", savedConfig.getKey(), pse.getMessage());
+					}
+				}
+			}
+		}
+
+		joined = JoinedPatterns.join(patterns, "(?s:.*?)");
+		LOGGER.trace("Indexed {} file name patterns; joined: {}", patterns.size(), joined != null);
+	}
+
+	private static Object patternOf(Object savedConfig) {
+		return savedConfig instanceof Map ? ((Map<?, ?>) savedConfig).get(ConfigHolder.SAVED_CONFIG_FILENAME_PATTERN_KEY) : null;
+	}
+
+	/**
+	 * Tells if the index is stale, i.e. a config with a pattern was added, removed, renamed, reordered or its pattern was edited since the index was made.
+	 *
+	 * @param savedConfigs savedConfigs section of the config; could be null
+	 * @return true if the index was made of the same patterns of the same configs
+	 */
+	public boolean isMadeOf(Map<?, ?> savedConfigs) {
+		int i = 0;
+		if (savedConfigs != null) {
+			for (Map.Entry<?, ?> savedConfig: savedConfigs.entrySet()) {
+				Object pattern = patternOf(savedConfig.getValue());
+				if (pattern != null) {
+					if (i + 1 >= sources.size() || !sources.get(i).equals(savedConfig.getKey().toString()) || !sources.get(i + 1).equals(pattern.toString())) {
+						return false;
+					}
+					i += 2;
+				}
+			}
+		}
+		return i == sources.size();
+	}
+
+	/**
+	 *
+	 * @param fileName file name or path
+	 * @return id of the first saved config whose pattern is found in the name; null if none
+	 */
+	public String find(CharSequence fileName) {
+		if (joined != null) {
+			Matcher matcher = joined.matcher(fileName);
+			return matcher.lookingAt() ? configIds.get(joined.indexOf(matcher)) : null;
+		}
+
+		for (int i = 0; i < patterns.size(); i++) {
+			if (patterns.get(i).matcher(fileName).find()) {
+				return configIds.get(i);
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,22 @@
+package org.smltools.grepp.exceptions;
+
+/**
+ * Exception which is throwed when the output has printed as many results as it was limited to. <br>
+ * Unlike other interruptions it stops processing of all the remaining data, not only of the current file.
+ * 
+ * @author Alexander Semelit
+ *
+ */
+@SuppressWarnings("serial")
+public class ResultLimitReachedException extends FilteringIsInterruptedException {
+	
+	private final int limit;
+    public ResultLimitReachedException(int limit) {
+        super("Result limit " + limit + " is reached");
+        this.limit = limit;
+    }
+    
+	public int getLimit() {
+        return limit;
+    }
+}
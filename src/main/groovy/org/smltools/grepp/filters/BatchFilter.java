@@ -0,0 +1,22 @@
+package org.smltools.grepp.filters;
+
+import org.smltools.grepp.exceptions.FilteringIsInterruptedException;
+
+/**
+ * Filter which can filter a batch of data at once, saving a call per datum. <br>
+ * Filters which don't implement it are filtered datum by datum in batches; see {@link FilterChain#filterEach(Filter, Object[], int)}.
+ *
+ * @author Alexander Semelit
+ * @param <T>
+ */
+public interface BatchFilter<T> extends Filter<T> {
+	/**
+	 * Filters the batch in place, in the order of data: each datum is replaced with what {@link #filter(Object)} would return for it, so null marks the dropped ones. Null data are skipped. <br>
+	 * If filtering is interrupted by a datum, the data from it on are set to null, and the exception is thrown; the data before it stay filtered.
+	 *
+	 * @param batch data to filter; it's reused by the caller
+	 * @param size number of data in the batch
+	 * @throws FilteringIsInterruptedException
+	 */
+	void filterBatch(T[] batch, int size) throws FilteringIsInterruptedException;
+}
@@ -23,7 +23,7 @@ import java.util.Iterator;
  * @param <T>
  */
 
-public abstract class FilterBase<T> implements Filter<T>, Configurable {
+public abstract class FilterBase<T> implements Filter<T>, Configurable, Cloneable {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FilterBase.class);
 
 	protected Map<?, ?> config = null;
@@ -38,6 +38,36 @@ public abstract class FilterBase<T> implements Filter<T>, Configurable {
     	this.config = config;
     }
 
+	/**
+	 * Tells if {@link #copy()} could be used. Filters which can't split their work between copies (e.g. ones accumulating a result across chunks) should return false.
+	 * 
+	 * @return true by default
+	 */
+	public boolean isCopyable() {
+		return true;
+	}
+
+	/**
+	 * Creates an independent copy of the filter. It shares config and already compiled params (i.e. patterns), but not the filtering state. <br>
+	 * Filters which keep any mutable state (buffers, counters, maps, date formats) should override it to give the copy its own. <br>
+	 * Check {@link #isCopyable()} first.
+	 * 
+	 * @return copy of the filter
+	 * @throws UnsupportedOperationException if the filter isn't copyable
+	 */
+	@SuppressWarnings("unchecked")
+	public FilterBase<T> copy() {
+		if (!isCopyable()) {
+			throw new UnsupportedOperationException(getClass().getName() + " isn't copyable");
+		}
+		try {
+			return (FilterBase<T>) super.clone();
+		}
+		catch (CloneNotSupportedException cnse) {
+			throw new AssertionError(cnse); //FilterBase is Cloneable
+		}
+	}
+
     @SuppressWarnings("unchecked")
     @Override
 	public boolean configIdExists(String configId) {
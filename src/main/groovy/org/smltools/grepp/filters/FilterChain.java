@@ -4,11 +4,11 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,10 +18,11 @@ import org.smltools.grepp.exceptions.FilteringIsInterruptedException;
 import org.smltools.grepp.filters.enums.Event;
 import groovy.util.ConfigObject;
 import org.smltools.grepp.util.GreppUtil;
+import org.smltools.grepp.util.PluginCache;
 import java.io.File;
 import static org.smltools.grepp.Constants.*;
 
-public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Configurable {
+public class FilterChain<T> implements BatchFilter<T>, Stateful<T>, Refreshable, Configurable {
     private static final Logger LOGGER = LoggerFactory.getLogger(FilterChain.class);
     private static final List<Class<? extends Filter>> REGISTERED_FILTERS_LIST = new ArrayList<Class<? extends Filter>>();
 	public static final String GREPP_FILTER_PLUGIN_DIR = "/plugin/filters";
@@ -63,9 +64,9 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 	    		File pluginDir = new File(System.getProperty(GREPP_HOME_SYSTEM_OPTION), GREPP_FILTER_PLUGIN_DIR);
 	    		if (pluginDir.exists() && pluginDir.isDirectory()) {
 	    			LOGGER.trace("Plugin dir {} exists; plugging in Filters enabled", GREPP_FILTER_PLUGIN_DIR);
-	    			for (File pluginFile: pluginDir.listFiles()) {
+	    			for (File pluginFile: PluginCache.listPluginFiles(pluginDir)) {
 	    				LOGGER.trace("Found file: {}", pluginFile.getName());
-	    				Class<?> pluginClass = GreppUtil.loadGroovyClass(pluginFile);
+	    				Class<?> pluginClass = PluginCache.loadClass(pluginFile);
 	    				if (pluginClass != null) {
 	    					addFilterByClass(pluginClass);
 	    				}
@@ -165,6 +166,14 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 	private Map<?, ?> state = new HashMap();
 	private boolean isLocked = false;
 	private Class<T> chainType;
+	private List<Filter<T>> baseFilters = null; //filters as they were before the first switch, see switchToConfigId
+	private final Map<String, List<Filter<T>>> filtersByConfigId = new HashMap<String, List<Filter<T>>>();
+	private boolean isSwitchCached = true;
+
+	//compiled plan of the filters, see compile(); null if the filters have changed since it was compiled
+	private Filter<T>[] plan = null;
+	private Stateful<?>[] statefulPlan = null; //the filter by the same index if it's Stateful, null otherwise
+	private boolean[] flushesListOfChainType = null; //true if a List flushed by the filter of the same index is a list of chain type data
 
 	public FilterChain(Map<?, ?> config, Aggregator<T> aggregator, Class<T> chainType) {
 		if (config == null || aggregator == null || chainType == null) {
@@ -189,6 +198,79 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 		}
 	}
 
+	FilterChain(FilterChainPlan<T> plan) {
+		this.chainType = plan.getChainType();
+		this.config = plan.getConfig();
+		this.aggregator = plan.newAggregator();
+		this.filterOrderList.addAll(plan.getFilterOrderList());
+		this.replacedFiltersMap.putAll(plan.getReplacedFiltersMap());
+		for (Filter<T> prototype: plan.getPrototypes()) {
+			filters.add(copyOf(prototype));
+		}
+		this.isLocked = plan.isLocked();
+	}
+
+	/**
+	 * Tells if {@link #copyOf(Filter)} could be used. Filters which are Stateful or Refreshable, but don't extend FilterBase, can't be copied.
+	 *
+	 * @param filter Filter to check
+	 * @return true if the filter could be copied
+	 */
+	static boolean isCopyable(Filter<?> filter) {
+		if (filter instanceof FilterBase<?>) {
+			return ((FilterBase<?>) filter).isCopyable();
+		}
+		return !(filter instanceof Stateful<?> || filter instanceof Refreshable);
+	}
+
+	/**
+	 * Makes an independent copy of the filter. Filters which are neither Stateful, nor Refreshable are considered immutable and aren't copied.
+	 *
+	 * @param filter Filter to copy
+	 * @return copy of the filter
+	 * @throws UnsupportedOperationException if the filter isn't copyable; see {@link #isCopyable(Filter)}
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> Filter<T> copyOf(Filter<T> filter) {
+		if (filter instanceof FilterBase<?>) {
+			return ((FilterBase<T>) filter).copy();
+		}
+		else if (!isCopyable(filter)) {
+			throw new UnsupportedOperationException(filter.getClass() + " has a state, but doesn't extend FilterBase; can't be copied");
+		}
+		else {
+			return filter;
+		}
+	}
+
+	/**
+	 *
+	 * @return true if all the filters could be copied, i.e. {@link #getPlan()} could be used
+	 */
+	public boolean isCopyable() {
+		for (Filter<T> filter: filters) {
+			if (!isCopyable(filter)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Resolves the current chain into an immutable {@link FilterChainPlan}, which can make any number of independent chains of the same configuration. <br>
+	 * Current filter state isn't a part of the plan.
+	 *
+	 * @return plan of the chain
+	 * @throws UnsupportedOperationException if any of the filters isn't copyable; see {@link #isCopyable()}
+	 */
+	public FilterChainPlan<T> getPlan() {
+		List<Filter<T>> prototypes = new ArrayList<Filter<T>>();
+		for (Filter<T> filter: filters) {
+			prototypes.add(copyOf(filter));
+		}
+		return new FilterChainPlan<T>(config, chainType, aggregator.getClass(), filterOrderList, replacedFiltersMap, prototypes, isLocked);
+	}
+
 	@Override
 	public void setConfig(Map<?, ?> config) {
 		this.config = config;
@@ -309,6 +391,7 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 			enableFilter(filter.getClass());
 			filters.add(filter);
 			Collections.sort(filters, naturalByOrderedList);
+			plan = null;
 		}
 		else {
 			throw new IllegalArgumentException("Filter can't be null!");
@@ -374,7 +457,94 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 
 	@Override
 	public T filter(T data) throws FilteringIsInterruptedException {
-		return filterAfter(null, data);
+		Filter<T>[] plan = compile();
+		if (plan.length == 0) {
+			throw new IllegalStateException("No filters in the filter chain!");
+		}
+		return filterFrom(plan, 0, data);
+	}
+
+	/**
+	 * Filters the batch by each of the filters in turn; i.e. each filter gets the whole batch, as it was left by the previous ones. <br>
+	 * Each filter still gets its data in the same order, so the results are the same as filtering datum by datum. <br>
+	 * If a filter is interrupted, the rest of the filters still filter the data before the interruption, and then it's rethrown. <br>
+	 * If a filter which can interrupt comes after a Stateful one, the batch is filtered datum by datum, so the Stateful filter doesn't take in data past the interruption.
+	 */
+	@Override
+	public void filterBatch(T[] batch, int size) throws FilteringIsInterruptedException {
+		Filter<T>[] plan = compile();
+		if (plan.length == 0) {
+			throw new IllegalStateException("No filters in the filter chain!");
+		}
+
+		if (isInterruptedAfterState(plan)) {
+			int i = 0;
+			try {
+				for (; i < size; i++) {
+					if (batch[i] != null) {
+						batch[i] = filterFrom(plan, 0, batch[i]);
+					}
+				}
+			}
+			catch (FilteringIsInterruptedException fiie) {
+				Arrays.fill(batch, i, size, null);
+				throw fiie;
+			}
+			return;
+		}
+
+		FilteringIsInterruptedException interruption = null;
+		for (Filter<T> filter: plan) {
+			try {
+				filterEach(filter, batch, size);
+			}
+			catch (FilteringIsInterruptedException fiie) {
+				interruption = fiie; //data from the previous interruption on are dropped already, so it's an interruption by earlier data
+			}
+		}
+		if (interruption != null) {
+			throw interruption;
+		}
+	}
+
+	/**
+	 * It's checked by each batch, as whether a filter can interrupt could change without changing the filters, e.g. by {@link org.smltools.grepp.filters.entry.EntryDateFilter#setReversed(boolean)}.
+	 *
+	 * @return true if a filter which can interrupt filtering comes after a Stateful one
+	 */
+	private boolean isInterruptedAfterState(Filter<T>[] plan) {
+		boolean hasState = false;
+		for (int i = 0; i < plan.length; i++) {
+			if (hasState && plan[i] instanceof InterruptingFilter<?> && ((InterruptingFilter<?>) plan[i]).canInterrupt()) {
+				return true;
+			}
+			hasState |= statefulPlan[i] != null;
+		}
+		return false;
+	}
+
+	/**
+	 * Filters the batch by any filter; {@link BatchFilter} does it itself, others are called datum by datum as {@link BatchFilter#filterBatch(Object[], int)} describes.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> void filterEach(Filter<T> filter, T[] batch, int size) throws FilteringIsInterruptedException {
+		if (filter instanceof BatchFilter<?>) {
+			((BatchFilter<T>) filter).filterBatch(batch, size);
+			return;
+		}
+
+		int i = 0;
+		try {
+			for (; i < size; i++) {
+				if (batch[i] != null) {
+					batch[i] = filter.filter(batch[i]);
+				}
+			}
+		}
+		catch (FilteringIsInterruptedException fiie) {
+			Arrays.fill(batch, i, size, null);
+			throw fiie;
+		}
 	}
 
 	@SuppressWarnings("unchecked")
@@ -409,19 +579,18 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 
 		LOGGER.trace("Processing event: {}", event);
 
-		Iterator<Filter<T>> filterIterator = filters.iterator();
-		do {
-			Filter<T> curFilter = filterIterator.next();
-            if (curFilter instanceof Stateful<?>) {
-				Object flushedData = ((Stateful<?>) curFilter).processEvent(event);
+		Filter<T>[] plan = compile();
+		for (int i = 0; i < plan.length; i++) {
+			Stateful<?> curFilter = statefulPlan[i];
+			if (curFilter != null) {
+				Object flushedData = curFilter.processEvent(event);
 				if (flushedData != null) {
 					LOGGER.trace("Filtering flushed data from {}", curFilter.getClass());
 					try {
 						if (flushedData instanceof List<?>) {
-							Class<?> parameter = GreppUtil.findParameterClass(curFilter.getClass());
-							if (parameter != null && parameter.isAssignableFrom(chainType)) {
+							if (flushesListOfChainType[i]) {
 								for (T flushedDataPart : (List<T>) flushedData) {
-									T flushedDataPartFiltered = filterAfter(curFilter, flushedDataPart);
+									T flushedDataPartFiltered = filterFrom(plan, i + 1, flushedDataPart);
 									aggregator.add(flushedDataPartFiltered);
 								}
 							}
@@ -430,7 +599,7 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 							}
 						}
 						else {
-							T flushedDataFiltered = filterAfter(curFilter, (T) flushedData);
+							T flushedDataFiltered = filterFrom(plan, i + 1, (T) flushedData);
 							aggregator.add(flushedDataFiltered);
 						}
 					}
@@ -440,7 +609,6 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 				}
 			}
 		}
-		while (filterIterator.hasNext());
 		return aggregator.aggregate();
 	}
 
@@ -484,34 +652,89 @@ public class FilterChain<T> implements Filter<T>, Stateful<T>, Refreshable, Conf
 		return hasChanged;
 	}
 
-	private T filterAfter(Filter<T> filter, T data) throws FilteringIsInterruptedException {
-		if (filters.isEmpty()) {
-			throw new IllegalStateException("No filters in the filter chain!");
-		}
+	/**
+	 * Switches the chain to the configId, e.g. of the next file. Unlike {@link #refreshByConfigId(String)}, filters of each configId are built once: <br>
+	 * the first switch to a configId refreshes copies of Refreshable filters the chain had before any switch, and adds the configId filters; the result is kept, and next switches to it just swap the filters in. <br>
+	 * So a configId always gets the same filters regardless of the previous one. Filters which aren't Refreshable are shared by all the configIds. <br>
+	 * If any Refreshable filter can't be copied, it falls back to refreshing.
+	 *
+	 * @param configId configId to switch to
+	 * @return true if filters have changed
+	 */
+	public boolean switchToConfigId(String configId) {
+		if (isLocked) return false;
+		if (!isSwitchCached) return refreshByConfigId(configId);
 
-		if (data != null) {
-			T filteredData = data;
-			
-			Iterator<Filter<T>> filterIterator;
-			if (filter == null) {
-				filterIterator = filters.iterator();
+		List<Filter<T>> switchedFilters = filtersByConfigId.get(configId);
+		if (switchedFilters == null) {
+			if (baseFilters == null) {
+				baseFilters = new ArrayList<Filter<T>>(filters);
 			}
-			else {
-				filterIterator = filters.subList(filters.indexOf(filter) + 1, filters.size()).iterator();
+			for (Filter<T> filter: baseFilters) {
+				if (filter instanceof Refreshable && !isCopyable(filter)) {
+					LOGGER.debug("Filters can't be cached by configId, as {} isn't copyable", filter.getClass().getName());
+					isSwitchCached = false;
+					return refreshByConfigId(configId);
+				}
+			}
+			List<Filter<T>> currentFilters = new ArrayList<Filter<T>>(filters);
+			filters.clear();
+			for (Filter<T> filter: baseFilters) {
+				filters.add(filter instanceof Refreshable ? copyOf(filter) : filter);
 			}
+			refreshByConfigId(configId);
+			switchedFilters = new ArrayList<Filter<T>>(filters);
+			filtersByConfigId.put(configId, switchedFilters);
+			LOGGER.trace("Filters are built for configId: {}", configId);
+			filters.clear();
+			filters.addAll(currentFilters);
+		}
 
-			while (filteredData != null && filterIterator.hasNext()) {
-				filteredData = filterIterator.next().filter(filteredData);
+		boolean hasChanged = !switchedFilters.equals(filters);
+		filters.clear();
+		filters.addAll(switchedFilters);
+		plan = null;
+		return hasChanged;
+	}
+
+	/**
+	 * Compiles the filters into a flat plan: the filters array, their Stateful views, and whether a List flushed by each of them is a list of chain type data. <br>
+	 * It's done on lock, or on the first filtering after the filters have changed; so filtering and event processing just loop over arrays.
+	 *
+	 * @return filters array
+	 */
+	@SuppressWarnings("unchecked")
+	private Filter<T>[] compile() {
+		if (plan == null) {
+			Filter<T>[] compiledPlan = filters.toArray(new Filter[filters.size()]);
+			Stateful<?>[] compiledStatefulPlan = new Stateful<?>[compiledPlan.length];
+			boolean[] compiledFlushesList = new boolean[compiledPlan.length];
+			for (int i = 0; i < compiledPlan.length; i++) {
+				if (compiledPlan[i] instanceof Stateful<?>) {
+					compiledStatefulPlan[i] = (Stateful<?>) compiledPlan[i];
+					Class<?> parameter = GreppUtil.findParameterClass(compiledPlan[i].getClass());
+					compiledFlushesList[i] = parameter != null && parameter.isAssignableFrom(chainType);
+				}
 			}
-			return filteredData;
-		} 
-		else {
-			return null;
+			statefulPlan = compiledStatefulPlan;
+			flushesListOfChainType = compiledFlushesList;
+			plan = compiledPlan;
+			LOGGER.trace("Compiled plan of {} filters", compiledPlan.length);
+		}
+		return plan;
+	}
+
+	private static <T> T filterFrom(Filter<T>[] plan, int from, T data) throws FilteringIsInterruptedException {
+		T filteredData = data;
+		for (int i = from; filteredData != null && i < plan.length; i++) {
+			filteredData = plan[i].filter(filteredData);
 		}
+		return filteredData;
 	}
 
     @Override
     public void lock() {
         isLocked = true;
+        compile();
     }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package org.smltools.grepp.filters;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Immutable snapshot of an already resolved {@link FilterChain}: filter order, replaced filters and configured filter prototypes. <br>
+ * It is used to make independent chain instances of the same configuration, i.e. one per worker thread, without resolving config ids again. <br>
+ * Prototypes are never used for filtering themselves; each new chain gets its own copies.
+ *
+ * @author Alexander Semelit
+ * @param <T>
+ *
+ */
+public final class FilterChainPlan<T> {
+	private final Map<?, ?> config;
+	private final Class<T> chainType;
+	private final Class<? extends Aggregator> aggregatorClass;
+	private final List<Class<? extends Filter>> filterOrderList;
+	private final Map<Class<? extends Filter>, Class<? extends Filter>> replacedFiltersMap;
+	private final List<Filter<T>> prototypes;
+	private final boolean isLocked;
+
+	FilterChainPlan(Map<?, ?> config, Class<T> chainType, Class<? extends Aggregator> aggregatorClass, List<Class<? extends Filter>> filterOrderList
+			, Map<Class<? extends Filter>, Class<? extends Filter>> replacedFiltersMap, List<Filter<T>> prototypes, boolean isLocked) {
+		this.config = config;
+		this.chainType = chainType;
+		this.aggregatorClass = aggregatorClass;
+		this.filterOrderList = Collections.unmodifiableList(new ArrayList<Class<? extends Filter>>(filterOrderList));
+		this.replacedFiltersMap = Collections.unmodifiableMap(new HashMap<Class<? extends Filter>, Class<? extends Filter>>(replacedFiltersMap));
+		this.prototypes = Collections.unmodifiableList(new ArrayList<Filter<T>>(prototypes));
+		this.isLocked = isLocked;
+	}
+
+	/**
+	 * Makes a new chain with fresh copies of the planned filters. Chains made by the same plan don't share any filtering state.
+	 *
+	 * @return new FilterChain instance
+	 */
+	public FilterChain<T> newChain() {
+		return new FilterChain<T>(this);
+	}
+
+	Map<?, ?> getConfig() {
+		return config;
+	}
+
+	Class<T> getChainType() {
+		return chainType;
+	}
+
+	@SuppressWarnings("unchecked")
+	Aggregator<T> newAggregator() {
+		try {
+			return (Aggregator<T>) aggregatorClass.newInstance();
+		} catch (InstantiationException ie) {
+			throw new RuntimeException("An Aggregator implementation supposed to have a no-argument constructor!", ie);
+		} catch (IllegalAccessException iae) {
+			throw new RuntimeException("An Aggregator implementation supposed to have a public no-argument constructor!", iae);
+		}
+	}
+
+	List<Class<? extends Filter>> getFilterOrderList() {
+		return filterOrderList;
+	}
+
+	Map<Class<? extends Filter>, Class<? extends Filter>> getReplacedFiltersMap() {
+		return replacedFiltersMap;
+	}
+
+	List<Filter<T>> getPrototypes() {
+		return prototypes;
+	}
+
+	boolean isLocked() {
+		return isLocked;
+	}
+}
@@ -0,0 +1,16 @@
+package org.smltools.grepp.filters;
+
+/**
+ * Filter which can interrupt filtering, i.e. throw {@link org.smltools.grepp.exceptions.FilteringIsInterruptedException} once the rest of the data isn't needed. <br>
+ * Stateful filters before it in a chain shouldn't take in data past the interruption, so {@link FilterChain#filterBatch(Object[], int)} filters such batches datum by datum.
+ *
+ * @author Alexander Semelit
+ * @param <T>
+ */
+public interface InterruptingFilter<T> extends Filter<T> {
+	/**
+	 *
+	 * @return true if the filter can interrupt filtering as it's set now
+	 */
+	boolean canInterrupt();
+}
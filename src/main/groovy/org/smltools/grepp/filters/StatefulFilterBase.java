@@ -33,4 +33,12 @@ public abstract class StatefulFilterBase<T> extends RefreshableFilterBase<T> imp
 
    	protected abstract T processEventInternal(Event event);
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public StatefulFilterBase<T> copy() {
+		StatefulFilterBase<T> copy = (StatefulFilterBase<T>) super.copy();
+		copy.state = new HashMap<Object, Object>();
+		return copy;
+	}
+
 }
\ No newline at end of file
@@ -4,13 +4,14 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.smltools.grepp.config.ConfigHolder;
 import org.smltools.grepp.exceptions.ConfigNotExistsRuntimeException;
+import org.smltools.grepp.exceptions.FilteringIsInterruptedException;
 import org.smltools.grepp.exceptions.PropertiesNotFoundRuntimeException;
 import org.smltools.grepp.exceptions.TimeToIsOverduedException;
+import org.smltools.grepp.filters.InterruptingFilter;
 import org.smltools.grepp.filters.OptionallyStateful;
 import org.smltools.grepp.filters.FilterParams;
 import org.smltools.grepp.filters.StatefulFilterBase;
@@ -26,7 +27,7 @@ import org.slf4j.LoggerFactory;
  */
 
 @FilterParams(configIdPath = ConfigHolder.SAVED_CONFIG_KEY + "|" + EntryDateFilter.LOG_DATE_FORMATS_KEY, mandatoryProps = {ConfigHolder.SAVED_CONFIG_DATE_FORMAT_KEY, ""}, order = 15)
-public class EntryDateFilter extends StatefulFilterBase<String> implements OptionallyStateful<String> {
+public class EntryDateFilter extends StatefulFilterBase<String> implements OptionallyStateful<String>, InterruptingFilter<String> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(EntryDateFilter.class);
 	public static final String LOG_DATE_FORMATS_KEY = "logDateFormats";
 
@@ -34,6 +35,7 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
 	private Date from;
 	private Date to;
 	private boolean isDateFromPassed = false;
+	private boolean isReversed = false;
 	private Pattern logDatePtrn = null;
 	private SimpleDateFormat logDateFormat;
 
@@ -52,6 +54,16 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
 		isStateOptional = false;
 	}
 
+	@Override
+	public EntryDateFilter copy() {
+		EntryDateFilter copy = (EntryDateFilter) super.copy();
+		copy.isDateFromPassed = false;
+		if (logDateFormat != null) {
+			copy.logDateFormat = (SimpleDateFormat) logDateFormat.clone(); //SimpleDateFormat is not thread-safe
+		}
+		return copy;
+	}
+
     public void setFrom(Date from) {
     	this.from = from;
     }
@@ -60,6 +72,62 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
     	this.to = to;
     }
 
+    public Date getFrom() {
+    	return from;
+    }
+
+	/**
+	 * Tells the filter that entries come newest first. Then entries after 'to' are skipped, and an entry before 'from' interrupts filtering, since the rest are older; <br>
+	 * dates are checked for every entry, as there is nothing to pass.
+	 * 
+	 * @param isReversed true if entries come in reverse order
+	 */
+    public void setReversed(boolean isReversed) {
+    	this.isReversed = isReversed;
+    }
+
+	/**
+	 * An entry after 'to' interrupts filtering; or, if entries come in reverse order, an entry before 'from'.
+	 */
+	@Override
+	public boolean canInterrupt() {
+		return isReversed ? from != null : to != null;
+	}
+
+	/**
+	 * Sets the filter state as if an entry dated after 'from' was filtered already; so entries aren't checked against 'from' anymore, if the filter is stateful.
+	 */
+	public void passDateFrom() {
+		if (isStateful() && !isReversed) {
+			isDateFromPassed = true;
+		}
+	}
+
+	/**
+	 * Extracts the date from supplied data by the configured log date pattern and format; unlike {@link #filter(String)}, it doesn't change the filter state.
+	 * 
+	 * @param data entry or its first line
+	 * @return parsed date, or null if there is no date in the data or it can't be parsed
+	 */
+	public Date getEntryDate(CharSequence data) {
+		if (data == null || logDatePtrn == null || logDateFormat == null) {
+			return null;
+		}
+
+		Matcher entryDateMatcher = logDatePtrn.matcher(data);
+		if (!entryDateMatcher.find()) {
+			return null;
+		}
+
+		try {
+			return logDateFormat.parse(entryDateMatcher.group(1));
+		}
+		catch (ParseException e) {
+			LOGGER.debug("Can't parse date of: {}", data);
+			return null;
+		}
+	}
+
 	public void setLogDatePattern(String logDatePtrn) {
 		if (logDatePtrn != null) {
 			this.logDatePtrn = Pattern.compile(logDatePtrn);	
@@ -78,6 +146,15 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
 		}
 	}
 
+	public String getLogDateFormat() {
+		if (logDateFormat != null) {
+			return logDateFormat.toPattern();
+		}
+		else {
+			return null;
+		}
+	}
+
 	public void setLogDateFormat(String logDateFormat) {
 		if (logDateFormat != null) {
 			this.logDateFormat = new SimpleDateFormat(logDateFormat);
@@ -171,10 +248,12 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
 	 *             if supplied blockData is not String
 	 * @throws TimeToIsOverduedException
 	 *             if to was passed
+	 * @throws FilteringIsInterruptedException
+	 *             if from was passed in reverse order
 	 */
 
 	@Override
-	public String filter(String blockData) throws TimeToIsOverduedException {
+	public String filter(String blockData) throws FilteringIsInterruptedException {
 		if (from == null && to == null) {
 			throw new IllegalStateException("Either 'from' or 'to' should be supplied to the filter");
 		}
@@ -216,7 +295,7 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
 
 			if (entryDate != null && (from == null || !entryDate.before(from))) {
 				
-				if (isStateful()) {
+				if (isStateful() && !isReversed) {
 					isDateFromPassed = true;
 				}
 
@@ -227,6 +306,12 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
 						}
 						return blockData;
 					} 
+					else if (isReversed) {
+						if (LOGGER.isTraceEnabled()) {
+							LOGGER.trace("Not passed yet");
+						}
+						return null;
+					}
 					else {
 						if (LOGGER.isTraceEnabled()) {
 							LOGGER.trace("Not passed");
@@ -238,6 +323,9 @@ public class EntryDateFilter extends StatefulFilterBase<String> implements Optio
 					LOGGER.trace("Passed from only");
 				return blockData;
 			} 
+			else if (isReversed && entryDate != null) {
+				throw new FilteringIsInterruptedException("Passed from in reverse order: " + logDateFormat.format(entryDate));
+			}
 			else {
 				if (LOGGER.isTraceEnabled()) LOGGER.trace("Not passed");
 				return null;
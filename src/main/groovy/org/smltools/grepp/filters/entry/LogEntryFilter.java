@@ -1,5 +1,6 @@
 package org.smltools.grepp.filters.entry;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.List;
 import java.util.Collections;
@@ -71,6 +72,15 @@ public class LogEntryFilter extends RefreshableFilterBase<String> implements Sta
 		LOGGER.debug("Entry terminator pattern :/{}/", logEntryTerminatorPtrn);
 	}
 
+	@Override
+	public LogEntryFilter copy() {
+		LogEntryFilter copy = (LogEntryFilter) super.copy();
+		copy.isBlockMatched = false;
+		copy.curBlock = new StringBuilder();
+		copy.state = new HashMap<Object, Object>();
+		return copy;
+	}
+
 	private void setLogEntryPattern() {
 		this.logEntryPtrn = Pattern.compile((starter != null ? starter : "") + (dateRegex != null ? dateRegex : "" ));
 		LOGGER.debug("Entry pattern :/{}/", this.logEntryPtrn.pattern());
@@ -194,6 +204,32 @@ public class LogEntryFilter extends RefreshableFilterBase<String> implements Sta
 
     }
 
+	/**
+	 * Checks if the line starts a new entry. Lines for which it's true are safe points to split the input at.
+	 * 
+	 * @param line String to check
+	 * @return true if the line matches the entry start pattern
+	 */
+	public boolean isEntryStart(CharSequence line) {
+		return logEntryPtrn.matcher(line).find();
+	}
+
+	/**
+	 * 
+	 * @return pattern of an entry start
+	 */
+	public String getLogEntryPattern() {
+		return logEntryPtrn != null ? logEntryPtrn.pattern() : null;
+	}
+
+	/**
+	 * 
+	 * @return true if entries are ended by a terminator pattern rather than by the next entry start
+	 */
+	public boolean hasTerminator() {
+		return logEntryTerminatorPtrn != null;
+	}
+
     protected String getNoMatchResult() {
     	return null;
     }
@@ -263,8 +299,30 @@ public class LogEntryFilter extends RefreshableFilterBase<String> implements Sta
     }
 
 	/**
+	 * Ends the pending entry, i.e. passes it as if the next one has started; unlike {@link #flush()}, nothing but the entry is dropped. <br>
+	 * Lines which don't start an entry are skipped until the next entry starts, as after the chunk is ended.
 	 * 
-	 * Listens for CHUNK_ENDED event to return current accumulated block
+	 * @return the pending entry, and entries which got ready by it, if any
+	 */
+	protected List<String> endEntry() {
+		List<String> passingVal = new ArrayList<String>();
+		if (curBlock.length() != 0) {
+			String entry = terminateBlock(null);
+			if (entry != null) {
+				passingVal.add(entry);
+			}
+		}
+		isBlockMatched = false;
+		String next;
+		while ((next = getNoMatchResult()) != null) {
+			passingVal.add(next);
+		}
+		return passingVal;
+	}
+
+	/**
+	 * 
+	 * Listens for CHUNK_ENDED event to return current accumulated block, and for ENTRY_ENDED to end it (see {@link #endEntry()})
 	 */
 	protected List<String> processEventInternal(Event event) {
         switch (event) {
@@ -273,6 +331,9 @@ public class LogEntryFilter extends RefreshableFilterBase<String> implements Sta
         		flush();
   				return Collections.singletonList(passingVal);
             }
+            case ENTRY_ENDED: {
+            	return endEntry();
+            }
             default: {
             	return null;
             }
@@ -2,6 +2,7 @@ package org.smltools.grepp.filters.entry
 
 import groovy.xml.dom.DOMCategory
 import org.smltools.grepp.util.GreppUtil;
+import org.smltools.grepp.util.PluginCache
 import java.util.regex.Matcher
 import java.util.regex.Pattern
 import org.smltools.grepp.exceptions.ConfigNotExistsRuntimeException
@@ -47,6 +48,8 @@ public class ReportFilter extends StatefulFilterBase<String> {
     public static final String MULTIPLE_MATCH_SEPARATOR = ";";
     private static final Map<String, Class<? extends ReportMethod>> ID_TO_METHOD_CLASS_MAP = new HashMap<String, Class<? extends ReportMethod>>()
     private static final Map<String, Class<? extends ReportAggregator>> ID_TO_AGGREGATOR_CLASS_MAP = new HashMap<String, Class<? extends ReportMethod>>()
+    private static final Map<String, File> METHOD_PLUGIN_FILES_BY_ID = new HashMap<String, File>()
+    private static final Map<String, File> AGGREGATOR_PLUGIN_FILES_BY_ID = new HashMap<String, File>()
 
     static {
         addIdToMethodClassMapping(null, SimpleMatchingMethod.class)
@@ -60,15 +63,11 @@ public class ReportFilter extends StatefulFilterBase<String> {
             File pluginDir = new File(System.getProperty(GREPP_HOME_SYSTEM_OPTION), GREPP_REPORT_METHOD_PLUGIN_DIR);
             if (pluginDir.exists() && pluginDir.isDirectory()) {
                 LOGGER.trace("Plugin dir {} exists; plugging in ReportMethods enabled", GREPP_REPORT_METHOD_PLUGIN_DIR)
-                for (File pluginFile: pluginDir.listFiles()) {
-                    LOGGER.trace("Found file: {}", pluginFile.name)
-                    Class<?> pluginClass = GreppUtil.loadGroovyClass(pluginFile);
-                    if (pluginClass != null && ReportMethod.isAssignableFrom(pluginClass)) {
-                        addIdToMethodClassMapping(null, pluginClass);
-                    }
-                    else {
-                        LOGGER.error("{} was ignored class: {}", pluginFile.name, pluginClass)
+                for (plugin in PluginCache.findPluginIds(pluginDir)) { //loaded on the first use
+                    if (ID_TO_METHOD_CLASS_MAP.containsKey(plugin.key)) {
+                        throw new IllegalArgumentException("Filter id " + plugin.key + " already registered!")
                     }
+                    METHOD_PLUGIN_FILES_BY_ID.put(plugin.key, plugin.value)
                 }
             }
             else {
@@ -78,15 +77,11 @@ public class ReportFilter extends StatefulFilterBase<String> {
             pluginDir = new File(System.getProperty(GREPP_HOME_SYSTEM_OPTION), GREPP_REPORT_AGGREGATOR_PLUGIN_DIR);
             if (pluginDir.exists() && pluginDir.isDirectory()) {
                 LOGGER.trace("Plugin dir {} exists; plugging in ReportAggregators enabled", GREPP_REPORT_AGGREGATOR_PLUGIN_DIR)
-                for (File pluginFile: pluginDir.listFiles()) {
-                    LOGGER.trace("Found file: {}", pluginFile.name)
-                    Class<?> pluginClass = GreppUtil.loadGroovyClass(pluginFile);
-                    if (pluginClass != null && ReportAggregator.isAssignableFrom(pluginClass)) {
-                        addIdToAggregatorClassMapping(null, pluginClass);
-                    }
-                    else {
-                        LOGGER.error("{} was ignored class: {}", pluginFile.name, pluginClass)
+                for (plugin in PluginCache.findPluginIds(pluginDir)) { //loaded on the first use
+                    if (ID_TO_AGGREGATOR_CLASS_MAP.containsKey(plugin.key)) {
+                        throw new IllegalArgumentException("Filter id " + plugin.key + " already registered!")
                     }
+                    AGGREGATOR_PLUGIN_FILES_BY_ID.put(plugin.key, plugin.value)
                 }
             }
             else {
@@ -133,6 +128,40 @@ public class ReportFilter extends StatefulFilterBase<String> {
         }
     }
 
+    /**
+     * Finds a ReportMethod class by id; a plugin is loaded when it's asked for the first time.
+     */
+    private static synchronized Class<? extends ReportMethod> findMethodClass(String id) {
+        File pluginFile = METHOD_PLUGIN_FILES_BY_ID.remove(id)
+        if (pluginFile != null) {
+            Class<?> pluginClass = PluginCache.loadClass(pluginFile)
+            if (pluginClass != null && ReportMethod.isAssignableFrom(pluginClass)) {
+                addIdToMethodClassMapping(null, pluginClass)
+            }
+            else {
+                LOGGER.error("{} was ignored class: {}", pluginFile.name, pluginClass)
+            }
+        }
+        return ID_TO_METHOD_CLASS_MAP.get(id)
+    }
+
+    /**
+     * Finds a ReportAggregator class by id; a plugin is loaded when it's asked for the first time.
+     */
+    private static synchronized Class<? extends ReportAggregator> findAggregatorClass(String id) {
+        File pluginFile = AGGREGATOR_PLUGIN_FILES_BY_ID.remove(id)
+        if (pluginFile != null) {
+            Class<?> pluginClass = PluginCache.loadClass(pluginFile)
+            if (pluginClass != null && ReportAggregator.isAssignableFrom(pluginClass)) {
+                addIdToAggregatorClassMapping(null, pluginClass)
+            }
+            else {
+                LOGGER.error("{} was ignored class: {}", pluginFile.name, pluginClass)
+            }
+        }
+        return ID_TO_AGGREGATOR_CLASS_MAP.get(id)
+    }
+
     //Postprocessing stuff
     private Pattern reportPattern = null
     private StringBuilder reportPatternBuilder = null
@@ -145,6 +174,14 @@ public class ReportFilter extends StatefulFilterBase<String> {
     private boolean printHeader = true
 
 
+    /**
+     * Report rows, groups and header state are accumulated across all the chunks, so a report can't be split between copies.
+     */
+    @Override
+    public boolean isCopyable() {
+        return false
+    }
+
     public void setPrintHeader(boolean printHeader) {
         this.printHeader = printHeader;
     }
@@ -155,7 +192,7 @@ public class ReportFilter extends StatefulFilterBase<String> {
 
     public void setAggregatorById(String id) {
         GreppUtil.throwIllegalAEifNull(id, "ReportAggregator 'id' shouldn't be null!", id)
-        Class<? extends ReportAggregator> aggregatorClass = ID_TO_AGGREGATOR_CLASS_MAP.get(id)
+        Class<? extends ReportAggregator> aggregatorClass = findAggregatorClass(id)
         if (aggregatorClass != null) {
             aggregator = aggregatorClass.newInstance()
         }
@@ -253,7 +290,7 @@ public class ReportFilter extends StatefulFilterBase<String> {
                 filterMethods = [groupingMethod]
                 break
             default:
-                Class<? extends ReportMethod> filterClass = ID_TO_METHOD_CLASS_MAP.get(type)
+                Class<? extends ReportMethod> filterClass = findMethodClass(type)
                 if (filterClass != null) {
                     def method = filterClass.newInstance()
                     if (method instanceof ReportMethodBase) {
@@ -8,24 +8,28 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import groovy.util.ConfigObject;
 import org.smltools.grepp.exceptions.PropertiesNotFoundRuntimeException;
+import org.smltools.grepp.filters.BatchFilter;
 import org.smltools.grepp.filters.FilterBase;
 import org.smltools.grepp.filters.FilterParams;
 import org.smltools.grepp.filters.enums.*;
 import org.smltools.grepp.util.GreppUtil;
+import org.smltools.grepp.util.LiteralFinder;
+import org.smltools.grepp.util.RegexLiterals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * 
  * Class provides in-flight pattern building depending on thread start, thread end patterns. If non specified works in the same way as BasicFilter. <br>
- * Forces multiline regex matching. 
+ * Forces multiline regex matching. <br>
+ * Literals required by the pattern are searched first, so the regex is evaluated only for blocks containing them; if the pattern consists of literals only (e.g. noRegex one), the regex is not evaluated at all.
  * 
  * @author Alexander Semelit
  *
  */
 
 @FilterParams(configIdPath = SimpleFilter.FILTERS_CONFIG_KEY, order = 5)
-public class SimpleFilter extends FilterBase<String> {
+public class SimpleFilter extends FilterBase<String> implements BatchFilter<String> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(SimpleFilter.class);	
 	public final static String FILTERS_CONFIG_KEY = "filterAliases";
 	public final static String FILTERS_CONFIG_VALUE_KEY = "value";
@@ -36,6 +40,20 @@ public class SimpleFilter extends FilterBase<String> {
 	private Pattern filterPattern;
 	private StringBuilder patternBuilder = new StringBuilder("(?ms)"); //for extended patterns
 	private boolean noRegex = false;
+	private List<List<String>> patternParts = new ArrayList<List<String>>(); //regexes of %and% parts by %or% alternatives
+	private LiteralFinder[][] literalFinders; //literals required by each alternative; null if some alternative has none
+	private boolean isLiteral = false; //i.e. literalFinders match exactly what the pattern does
+
+	@Override
+	public SimpleFilter copy() {
+		SimpleFilter copy = (SimpleFilter) super.copy();
+		copy.patternBuilder = new StringBuilder(patternBuilder);
+		copy.patternParts = new ArrayList<List<String>>();
+		for (List<String> parts: patternParts) {
+			copy.patternParts.add(new ArrayList<String>(parts));
+		}
+		return copy;
+	}
 
 	public void setFilterPattern(String filterPattern) {
 		setFilterPattern(filterPattern, false);
@@ -45,8 +63,36 @@ public class SimpleFilter extends FilterBase<String> {
 		this.noRegex = noRegex;
 		this.givenFilterPattern = filterPattern;
 		patternBuilder = new StringBuilder("(?ms)"); 
-		extractPatternParts(noRegex ? Pattern.quote(filterPattern) : filterPattern);
+		patternParts = new ArrayList<List<String>>();
+		extractPatternParts(filterPattern);
 		this.filterPattern = Pattern.compile(patternBuilder.toString());
+		makeLiteralFinders();
+	}
+
+	/**
+	 * Makes finders of the literals each part requires. Prefiltering is done only if every alternative requires some literal, as otherwise any block is a candidate.
+	 */
+	private void makeLiteralFinders() {
+		literalFinders = null;
+		isLiteral = false;
+		boolean allLiterals = true;
+		LiteralFinder[][] finders = new LiteralFinder[patternParts.size()][];
+		for (int i = 0; i < finders.length; i++) {
+			List<String> parts = patternParts.get(i);
+			finders[i] = new LiteralFinder[parts.size()];
+			for (int j = 0; j < finders[i].length; j++) {
+				RegexLiterals literals = RegexLiterals.of(parts.get(j));
+				if (literals == null) {
+					LOGGER.debug("No literal prefiltering, as /{}/ doesn't require any literal", parts.get(j));
+					return;
+				}
+				allLiterals &= literals.isLiteral();
+				finders[i][j] = new LiteralFinder(literals.getLongest());
+			}
+		}
+		literalFinders = finders;
+		isLiteral = allLiterals;
+		LOGGER.debug(isLiteral ? "Pattern consists of literals; regex won't be evaluated" : "Regex will be evaluated only if required literals are found");
 	}
 
 	public String getFilterPattern() {
@@ -121,18 +167,89 @@ public class SimpleFilter extends FilterBase<String> {
 
 	@Override
 	public String filter(String blockData) {
+		if (matches(blockData)) {
+			return blockData;
+		}
+		else {
+			return null;
+		}
+
+	}
+
+	/**
+	 * Drops data of the batch which don't match current pattern.
+	 */
+	@Override
+	public void filterBatch(String[] batch, int size) {
+		for (int i = 0; i < size; i++) {
+			if (batch[i] != null && !matches(batch[i])) {
+				batch[i] = null;
+			}
+		}
+	}
+
+	/**
+	 * Checks if data matches current pattern. Unlike {@link #filter(String)}, data could be any CharSequence, e.g. a view of not yet decoded bytes.
+	 * 
+	 * @param data CharSequence to check
+	 * @return true if the data matches
+	 */
+	public boolean matches(CharSequence data) {
 		if (filterPattern == null) {
 			throw new IllegalStateException("Filtering pattern can't be null. It should be either supllied via configId or set explicitly");
 		}
 
-		Matcher blockMtchr = filterPattern.matcher(blockData);
-		if (blockMtchr.find()) {
-			return blockData;
+		if (literalFinders != null) {
+			if (isLiteral) {
+				return matchesLiterals(data);
+			}
+			if (!containsLiterals(data)) {
+				return false;
+			}
 		}
-		else {
-			return null;
+
+		Matcher blockMtchr = filterPattern.matcher(data);
+		return blockMtchr.find();
+	}
+
+	/**
+	 * Matches literal-only pattern, i.e. any alternative has its literals in the given order (as %and% means). 
+	 */
+	private boolean matchesLiterals(CharSequence blockData) {
+		for (LiteralFinder[] finders : literalFinders) {
+			int from = 0;
+			for (LiteralFinder finder : finders) {
+				int idx = finder.indexIn(blockData, from);
+				if (idx < 0) {
+					from = -1;
+					break;
+				}
+				from = idx + finder.length();
+			}
+			if (from >= 0) {
+				return true;
+			}
 		}
+		return false;
+	}
 
+	/**
+	 * Checks if any alternative has all its required literals in the data. Order is not checked, since the regex will check it anyway.
+	 */
+	private boolean containsLiterals(CharSequence blockData) {
+		for (LiteralFinder[] finders : literalFinders) {
+			boolean containsAll = true;
+			for (LiteralFinder finder : finders) {
+				if (!finder.isIn(blockData)) {
+					containsAll = false;
+					break;
+				}
+			}
+			if (containsAll) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -146,8 +263,20 @@ public class SimpleFilter extends FilterBase<String> {
 	{
 		if (LOGGER.isTraceEnabled()) LOGGER.trace("adding complex pattern: val={} qual={}", val, qualifier);
 
+		String part = noRegex ? Pattern.quote(val) : val;
 		if (qualifier != null) patternBuilder = patternBuilder.append(Qualifier.valueOf(qualifier).getPattern());
-		patternBuilder = patternBuilder.append("(?:").append(val).append(")");
+		patternBuilder = patternBuilder.append("(?:").append(part).append(")");
+
+		if (patternParts.isEmpty() || Qualifier.or.toString().equals(qualifier)) {
+			patternParts.add(new ArrayList<String>());
+		}
+		List<String> parts = patternParts.get(patternParts.size() - 1);
+		if (qualifier == null && !parts.isEmpty()) { //no qualifier, i.e. it's concatenated with the previous part
+			parts.set(parts.size() - 1, "(?:" + parts.get(parts.size() - 1) + ")(?:" + part + ")");
+		}
+		else {
+			parts.add(part);
+		}
 
 		if (LOGGER.isTraceEnabled()) {
 			LOGGER.trace("Built so far: {}", patternBuilder.toString());
@@ -191,7 +320,11 @@ public class SimpleFilter extends FilterBase<String> {
 		}
 		else {
 			if (LOGGER.isTraceEnabled()) LOGGER.trace("No extended pattern supplied; keeping things simple");
-			patternBuilder.append(val);
+			String part = noRegex ? Pattern.quote(val) : val;
+			patternBuilder.append(part);
+			List<String> parts = new ArrayList<String>();
+			parts.add(part);
+			patternParts.add(parts);
 		}
 	}
 
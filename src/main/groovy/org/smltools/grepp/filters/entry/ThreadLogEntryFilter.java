@@ -6,8 +6,12 @@ import java.util.ArrayList;
 import java.util.Queue;
 import java.util.LinkedList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.Date;
+import java.util.Iterator;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import org.smltools.grepp.config.ConfigHolder;
@@ -16,6 +20,9 @@ import org.smltools.grepp.exceptions.PropertiesNotFoundRuntimeException;
 import org.smltools.grepp.filters.FilterParams;
 import org.smltools.grepp.filters.enums.*;
 import org.smltools.grepp.util.GreppUtil;
+import org.smltools.grepp.util.JoinedPatterns;
+import org.smltools.grepp.util.LzCodec;
+import org.smltools.grepp.util.SpillFile;
 import groovy.util.ConfigObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,7 +31,11 @@ import org.slf4j.LoggerFactory;
  * Class which provide grouping lines into log entries. <br>
  * Each entry has some pattern which defines it's start, and generally each
  * entry's start is another one's end and vice-versa. <br>
- * This filter works on that principle.
+ * This filter works on that principle. <br>
+ * Threads which are not ended yet are kept in memory up to the thread buffers limit (defaults.threadBuffersLimit in chars, with K, M, G suffixes); <br>
+ * beyond it the oldest ones are spilled to a temporary file, and are read back when they end or the chunk ends. <br>
+ * With defaults.compressThreadBuffers they are kept in memory as compressed frames of UTF-8, which are decompressed only when the thread is passed. <br>
+ * Threads which never end could be passed once they weren't extended for a number of entries (inactiveEntries), or for a time by entry dates (inactiveSeconds).
  * 
  * @author Alexander Semelit
  */
@@ -36,14 +47,53 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 	public final static String THREAD_EXTRACTORS_KEY = "extractors";
 	public final static String THREAD_SKIPENDS_KEY = "skipends";
 	public final static String THREAD_ENDS_KEY = "ends";
+	public final static String THREAD_BUFFERS_LIMIT_KEY = "threadBuffersLimit";
+	public final static String THREAD_INACTIVE_ENTRIES_KEY = "inactiveEntries";
+	public final static String THREAD_INACTIVE_SECONDS_KEY = "inactiveSeconds";
+	public final static long DEFAULT_THREAD_BUFFERS_LIMIT = 64L * 1024L * 1024L;
+	public final static String THREAD_BUFFERS_COMPRESSED_KEY = "compressThreadBuffers";
+	private final static int THREAD_FRAME_CHARS = 2048; //thread text is compressed by frames of at least that many chars
+	private final static int THREAD_FRAME_HEADER = 8; //raw and compressed length
+	private final static Charset UTF_8 = Charset.forName("UTF-8");
 
 	//Complex pattern processing and stuff
 	private List<String> threadStartExtractorList;
-	private Map<String, StringBuilder> threadStartPatternBufferMap = new LinkedHashMap<String, StringBuilder>();
+	private Map<String, ThreadBuffer> threadStartPatternBufferMap = new LinkedHashMap<String, ThreadBuffer>();
 	private List<String> threadSkipEndPatternList = new ArrayList<String>();
 	private List<String> threadEndPatternList;
+	private Pattern[] threadStartExtractors;
+	private JoinedPatterns threadMarkers; //skip ends and ends joined, see compileThreadMarkers
+	private Pattern[] threadMarkerPatterns; //each marker compiled, if they can't be joined
 	private Queue<String> readyThreadEntriesStack = new LinkedList<String>();
 	private Queue<StringBuilder> threadBuffers = new LinkedList<StringBuilder>();
+	private long threadBuffersLimit = DEFAULT_THREAD_BUFFERS_LIMIT;
+	private long bufferedChars = 0L; //chars of all threads kept in memory; compressed frames are counted by their bytes
+	private boolean isThreadBuffersCompressed = false;
+	private LzCodec threadCodec;
+	private byte[] threadFrame; //to compress a frame to, before it's known how long it is
+	private SpillFile spillFile;
+	private int threadInactiveEntries = 0;
+	private long threadInactiveMillis = 0L;
+	private EntryDateFilter threadDates; //to get entry dates for threadInactiveMillis
+	private Map<String, ThreadBuffer> threadActivity = newThreadActivityMap(); //not ended threads, least recently extended first
+	private long entryCount = 0L;
+	private long entryTime = 0L; //date of the last entry which had it
+
+	/**
+	 * Thread entry gathered so far; parts which were spilled come first, in the order they were spilled, then compressed frames, then the memory.
+	 */
+	private static final class ThreadBuffer {
+		private StringBuilder memory;
+		private byte[] frames; //each is raw length, compressed length, and the compressed bytes
+		private int framesLength;
+		private List<Long> spilledOffsets;
+		private long lastEntry; //number of the entry which extended the thread last
+		private long lastTime; //date of that entry
+
+		private ThreadBuffer(StringBuilder memory) {
+			this.memory = memory;
+		}
+	}
 
 	public ThreadLogEntryFilter() {
 		threadBuffers.add(new StringBuilder());
@@ -51,23 +101,141 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 		threadBuffers.add(new StringBuilder());
 	}
 
+	@Override
+	public ThreadLogEntryFilter copy() {
+		ThreadLogEntryFilter copy = (ThreadLogEntryFilter) super.copy();
+		copy.threadStartPatternBufferMap = new LinkedHashMap<String, ThreadBuffer>();
+		copy.bufferedChars = 0L;
+		copy.spillFile = null;
+		copy.threadCodec = null;
+		copy.threadFrame = null;
+		copy.threadActivity = newThreadActivityMap();
+		copy.entryCount = 0L;
+		copy.entryTime = 0L;
+		if (threadDates != null) {
+			copy.threadDates = threadDates.copy(); //SimpleDateFormat is not thread-safe
+		}
+		copy.readyThreadEntriesStack = new LinkedList<String>();
+		copy.threadBuffers = new LinkedList<StringBuilder>();
+		copy.threadBuffers.add(new StringBuilder());
+		copy.threadBuffers.add(new StringBuilder());
+		copy.threadBuffers.add(new StringBuilder());
+		return copy;
+	}
+
+	@Override
+	public void setConfig(Map<?, ?> config) {
+		super.setConfig(config);
+		Object defaults = config != null ? config.get(ConfigHolder.DEFAULTS_KEY) : null;
+		Object limit = defaults instanceof Map ? ((Map<?, ?>) defaults).get(THREAD_BUFFERS_LIMIT_KEY) : null;
+		if (limit != null) {
+			setThreadBuffersLimit(GreppUtil.parseSize(limit.toString()));
+		}
+		Object compressed = defaults instanceof Map ? ((Map<?, ?>) defaults).get(THREAD_BUFFERS_COMPRESSED_KEY) : null;
+		if (compressed != null) {
+			setThreadBuffersCompressed(Boolean.valueOf(compressed.toString()));
+		}
+	}
+
+	/**
+	 *
+	 * @param isThreadBuffersCompressed true to keep not ended threads compressed; it's slower, but several times more threads fit in memory
+	 */
+	public void setThreadBuffersCompressed(boolean isThreadBuffersCompressed) {
+		this.isThreadBuffersCompressed = isThreadBuffersCompressed;
+	}
+
+	/**
+	 *
+	 * @param threadBuffersLimit chars of not ended threads to keep in memory; the rest is spilled to a temporary file
+	 */
+	public void setThreadBuffersLimit(long threadBuffersLimit) {
+		if (threadBuffersLimit < 1) {
+			throw new IllegalArgumentException("Thread buffers limit should be positive: " + threadBuffersLimit);
+		}
+		this.threadBuffersLimit = threadBuffersLimit;
+	}
+
+	/**
+	 *
+	 * @param threadInactiveEntries number of entries after which a thread which wasn't extended by any of them is passed as if it has ended; 0 to wait for the end
+	 */
+	public void setThreadInactiveEntries(int threadInactiveEntries) {
+		if (threadInactiveEntries < 0) {
+			throw new IllegalArgumentException("Thread inactive entries shouldn't be negative: " + threadInactiveEntries);
+		}
+		this.threadInactiveEntries = threadInactiveEntries;
+	}
+
+	/**
+	 *
+	 * @param threadInactiveMillis time by entry dates after which a thread which wasn't extended is passed as if it has ended; 0 to wait for the end
+	 * @param logDatePtrn pattern to extract entry date by; date should be its first group
+	 * @param logDateFormat format of extracted entry date
+	 */
+	public void setThreadInactiveMillis(long threadInactiveMillis, String logDatePtrn, String logDateFormat) {
+		if (threadInactiveMillis < 0) {
+			throw new IllegalArgumentException("Thread inactive time shouldn't be negative: " + threadInactiveMillis);
+		}
+		this.threadInactiveMillis = threadInactiveMillis;
+		if (threadInactiveMillis > 0) {
+			threadDates = new EntryDateFilter();
+			threadDates.setLogDatePattern(logDatePtrn);
+			threadDates.setLogDateFormat(logDateFormat);
+		}
+		else {
+			threadDates = null;
+		}
+	}
+
+	private static Map<String, ThreadBuffer> newThreadActivityMap() {
+		return new LinkedHashMap<String, ThreadBuffer>(16, 0.75f, true); //access order, so put of an extended thread moves it to the end
+	}
+
 	public void setThreadExtractorList(List<String> threadStartExtractorList) {
 		GreppUtil.throwIllegalAEifNull(threadStartExtractorList, "Thread strat extractors shouldn't be null");
 		this.threadStartExtractorList = threadStartExtractorList;
+		this.threadStartExtractors = compileAll(threadStartExtractorList);
 		flush();
 	}
 
 	public void setThreadSkipEndPatternList(List<String> threadSkipEndPatternList) {
 		if (threadSkipEndPatternList != null) {
 			this.threadSkipEndPatternList = threadSkipEndPatternList;
+			compileThreadMarkers();
 		}
 	}
 
 	public void setThreadEndPatternList(List<String> threadEndPatternList) {
 		GreppUtil.throwIllegalAEifNull(threadEndPatternList, "Thread ends shouldn't be null");
 		this.threadEndPatternList = threadEndPatternList;
+		compileThreadMarkers();
+	}
+
+	private static Pattern[] compileAll(List<String> patterns) {
+		Pattern[] compiled = new Pattern[patterns.size()];
+		for (int i = 0; i < compiled.length; i++) {
+			compiled[i] = Pattern.compile(patterns.get(i));
+		}
+		return compiled;
+	}
+
+	/**
+	 * Joins skip end and end patterns into one, i.e. (skip1)|(skip2)|...|(end1)|..., so a block is scanned once for all of them. <br>
+	 * Skip ends go first, so where a skip end and an end match at the same place, the skip end is reported. If they can't be joined, they're matched one by one.
+	 */
+	private void compileThreadMarkers() {
+		if (threadEndPatternList == null) {
+			return; //ends are set after skip ends by config
+		}
+
+		List<String> markers = new ArrayList<String>(threadSkipEndPatternList);
+		markers.addAll(threadEndPatternList);
+		threadMarkerPatterns = compileAll(markers);
+		threadMarkers = JoinedPatterns.join(Arrays.asList(threadMarkerPatterns), "");
 	}
 
+
 	@SuppressWarnings("unchecked")
 	@Override
     public boolean fillParamsByConfigId(String configId) {
@@ -91,6 +259,21 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 				throw new PropertiesNotFoundRuntimeException(THREADS_CONFIG_KEY + "." + THREAD_ENDS_KEY + " is not filled for config: " + configId);
 			}
 
+			setThreadInactiveEntries(customCfg.containsKey(THREAD_INACTIVE_ENTRIES_KEY) ? ((Number) customCfg.get(THREAD_INACTIVE_ENTRIES_KEY)).intValue() : 0);
+
+			if (customCfg.containsKey(THREAD_INACTIVE_SECONDS_KEY)) {
+		    	Map<?, ?> savedConfig = (Map<?,?>) ((Map<?,?>) config.get(ConfigHolder.SAVED_CONFIG_KEY)).get(configId);
+		    	Map<?, ?> dateFormatProps = savedConfig != null ? (Map<?,?>) savedConfig.get(ConfigHolder.SAVED_CONFIG_DATE_FORMAT_KEY) : null;
+				if (dateFormatProps == null || !dateFormatProps.containsKey(ConfigHolder.SAVED_CONFIG_DATE_FORMAT_REGEX_KEY) || !dateFormatProps.containsKey(ConfigHolder.SAVED_CONFIG_DATE_FORMAT_VALUE_KEY)) {
+					throw new PropertiesNotFoundRuntimeException(ConfigHolder.SAVED_CONFIG_KEY + "." + ConfigHolder.SAVED_CONFIG_DATE_FORMAT_KEY + " should be filled for " + THREADS_CONFIG_KEY + "." + THREAD_INACTIVE_SECONDS_KEY + " of config: " + configId);
+				}
+				setThreadInactiveMillis(((Number) customCfg.get(THREAD_INACTIVE_SECONDS_KEY)).longValue() * 1000L
+					, (String) dateFormatProps.get(ConfigHolder.SAVED_CONFIG_DATE_FORMAT_REGEX_KEY), (String) dateFormatProps.get(ConfigHolder.SAVED_CONFIG_DATE_FORMAT_VALUE_KEY));
+			}
+			else {
+				setThreadInactiveMillis(0L, null, null);
+			}
+
 			if (LOGGER.isTraceEnabled()) {
 				LOGGER.trace("{}\n{}\n{}", threadStartExtractorList, threadSkipEndPatternList, threadEndPatternList);
 			}
@@ -123,6 +306,12 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
     		config.put(THREAD_SKIPENDS_KEY, threadSkipEndPatternList);
     	}
     	config.put(THREAD_ENDS_KEY, threadEndPatternList);
+    	if (threadInactiveEntries > 0) {
+    		config.put(THREAD_INACTIVE_ENTRIES_KEY, threadInactiveEntries);
+    	}
+    	if (threadInactiveMillis > 0) {
+    		config.put(THREAD_INACTIVE_SECONDS_KEY, threadInactiveMillis / 1000L);
+    	}
     	return root;
 	}
 
@@ -172,6 +361,10 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 		if (data == null) { //ignoring nulls
 			return data;
 		}
+
+		if (threadInactiveEntries > 0 || threadInactiveMillis > 0) {
+			passInactiveThreads(data);
+		}
 		
 		if (searchThreadEnds(data))	{
 			for (String extractedStart: extractThreadStarts(data)) {
@@ -190,6 +383,43 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 	}
 
 
+	/**
+	 * Passes threads which weren't extended for threadInactiveEntries entries, or for threadInactiveMillis by entry dates, as if they have ended. <br>
+	 * Threads are checked from the least recently extended one, until an active one is met; so it's O(1) per entry besides the passed ones. <br>
+	 * Threads extended before the first dated entry are timed from it, since there's no date to time them from otherwise.
+	 * 
+	 * @param data current entry
+	 */
+	private void passInactiveThreads(String data) {
+		entryCount++;
+		if (threadDates != null) {
+			Date entryDate = threadDates.getEntryDate(data);
+			if (entryDate != null) {
+				if (entryTime == 0L) {
+					for (ThreadBuffer threadBuffer: threadActivity.values()) {
+						threadBuffer.lastTime = entryDate.getTime();
+					}
+				}
+				entryTime = entryDate.getTime();
+			}
+		}
+
+		Iterator<Map.Entry<String, ThreadBuffer>> threadIter = threadActivity.entrySet().iterator();
+		while (threadIter.hasNext()) {
+			Map.Entry<String, ThreadBuffer> thread = threadIter.next();
+			ThreadBuffer threadBuffer = thread.getValue();
+			if (!(threadInactiveEntries > 0 && entryCount - threadBuffer.lastEntry > threadInactiveEntries)
+				&& !(threadInactiveMillis > 0 && entryTime - threadBuffer.lastTime > threadInactiveMillis)) {
+				break;
+			}
+
+			LOGGER.trace("passing inactive thread: {}", thread.getKey());
+			threadIter.remove();
+			threadStartPatternBufferMap.remove(thread.getKey());
+			addThreadEntry(releaseThreadBuffer(threadBuffer));
+		}
+	}
+
 	/**
 	 * Iterates through <extractor> patterns matched by PRESERVE_THREAD tag. <br>
 	 * For each tries to match supplied data, and if it matches passes matched string and qualifier to supplied method. 
@@ -199,10 +429,10 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 	 */
 	private List<String> extractThreadStarts(String data) {
 		List<String> extractedStarts = new ArrayList<String>();
-		for (String extractorPattern : threadStartExtractorList) {
+		for (Pattern extractorPattern : threadStartExtractors) {
 			if (LOGGER.isTraceEnabled())
-				LOGGER.trace(extractorPattern);
-			Matcher extractorMatcher = Pattern.compile(extractorPattern).matcher(data);
+				LOGGER.trace(extractorPattern.pattern());
+			Matcher extractorMatcher = extractorPattern.matcher(data);
 			if (extractorMatcher.find()) {
 				String start = extractorMatcher.group();
 				if (LOGGER.isTraceEnabled())
@@ -214,42 +444,52 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 	}
 
 	/**
-	 * Applies <pattern> elements having threadEndPatternList collection as a parameter. <br>
-	 * If any is matched current data is considered as end of current log thread if any.
+	 * Applies <pattern> elements having threadEndPatternList and threadSkipEndPatternList collections as a parameter. <br>
+	 * If any end is matched current data is considered as end of current log thread if any, unless any skip end is matched too.
 	 * 
 	 * @param data String already matched by filter pattern.
 	 * @return true if thread end was found, false otherwise
 	 */
 	private boolean searchThreadEnds(String data) {
-		if (!shouldBeSkipped(data))	{
-			boolean decision = false;
-			Iterator<String> endIter = threadEndPatternList.iterator();
-			while (!decision && endIter.hasNext()) {
-				String thrend = endIter.next();
-				LOGGER.trace("thrend ptrn: {}", thrend);
-				decision = Pattern.compile(thrend).matcher(data).find();
+		int skipEnds = threadSkipEndPatternList.size();
+		if (threadMarkers == null) {
+			boolean isEnded = false;
+			for (int i = 0; i < threadMarkerPatterns.length; i++) {
+				if (threadMarkerPatterns[i].matcher(data).find()) {
+					if (i < skipEnds) {
+						return false;
+					}
+					isEnded = true;
+					break;
+				}
+			}
+			return isEnded;
+		}
+
+		boolean isEnded = false;
+		Matcher markerMatcher = threadMarkers.matcher(data);
+		int from = 0;
+		while (from <= data.length() && markerMatcher.find(from)) {
+			int marker = hitMarker(markerMatcher);
+			LOGGER.trace("thread marker hit: {}", threadMarkerPatterns[marker].pattern());
+			if (marker < skipEnds) {
+				return false; //skip ends cancel any end
 			}
-			return decision;
+			if (skipEnds == 0) {
+				return true;
+			}
+			isEnded = true;
+			from = markerMatcher.start() + 1; //a skip end may overlap the end found
 		}
-		return false;
+		return isEnded;
 	}
 
-	/**
-	 * Applies <pattern> elements having threadSkipEndPatternList collection as a parameter. <br>
-	 * If any is matched current data won't be considered as end, it simply won't be checked for end patterns.
-	 * 
-	 * @param data String already matched by filter pattern.
-	 * @return true if data should skip thead end check, false otherwise
-	 */
-	private boolean shouldBeSkipped(String data) {
-		boolean decision = false;
-		Iterator<String> skipEndIter = threadSkipEndPatternList.iterator();
-		while (!decision && skipEndIter.hasNext()) {
-			String thrend = skipEndIter.next();
-			LOGGER.trace("thrend ptrn: {}", thrend);
-			decision = Pattern.compile(thrend).matcher(data).find();
+	private int hitMarker(Matcher markerMatcher) {
+		int marker = threadMarkers.indexOf(markerMatcher);
+		if (marker == -1) {
+			throw new IllegalStateException("No marker group has matched " + markerMatcher.group());
 		}
-		return decision;
+		return marker;
 	}
 
 	private StringBuilder getStringBuilder() {
@@ -275,15 +515,32 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 	 */
 	private void addThreadStart(String start, String value) {
 		LOGGER.trace("adding thread start: {}", start);
-		if (!threadStartPatternBufferMap.containsKey(start)) {
-			threadStartPatternBufferMap.put(start, getStringBuilder().append(value));
+		ThreadBuffer threadBuffer = threadStartPatternBufferMap.get(start);
+		if (threadBuffer == null) {
+			threadBuffer = new ThreadBuffer(getStringBuilder().append(value));
+			threadStartPatternBufferMap.put(start, threadBuffer);
 		}
 		else { //just appending to this thread
-			StringBuilder threadEntryBuilder = threadStartPatternBufferMap.get(start);
 			if (!value.startsWith("\n")) {
-				threadEntryBuilder.append("\n"); //ensuring there is a new line
+				threadBuffer.memory.append("\n"); //ensuring there is a new line
+				bufferedChars++;
 			}
-			threadEntryBuilder.append(value);
+			threadBuffer.memory.append(value);
+		}
+		bufferedChars += value.length();
+
+		if (isThreadBuffersCompressed && threadBuffer.memory.length() >= THREAD_FRAME_CHARS) {
+			compressThreadFrame(threadBuffer);
+		}
+
+		if (threadInactiveEntries > 0 || threadInactiveMillis > 0) {
+			threadBuffer.lastEntry = entryCount;
+			threadBuffer.lastTime = entryTime;
+			threadActivity.put(start, threadBuffer);
+		}
+
+		if (bufferedChars > threadBuffersLimit) {
+			spillThreadBuffers();
 		}
 	}
 
@@ -295,16 +552,138 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 	 */
 	private String removeThreadStart(String start) {
 		LOGGER.trace("removing thread start: {}", start);
-		StringBuilder threadEntry = threadStartPatternBufferMap.remove(start);
-		if (threadEntry != null) {
-			String result = threadEntry.toString();
-			pushStringBuilder(threadEntry);
-			return result;
+		ThreadBuffer threadBuffer = threadStartPatternBufferMap.remove(start);
+		threadActivity.remove(start);
+		if (threadBuffer != null) {
+			return releaseThreadBuffer(threadBuffer);
 		}
 		else { //no entry was there before, so it's a new start
 			return null;
 		}
-	}    
+	}
+
+	/**
+	 * Gathers the thread entry, reading back what was spilled, and returns the buffer to the pool.
+	 */
+	private String releaseThreadBuffer(ThreadBuffer threadBuffer) {
+		bufferedChars -= threadBuffer.memory.length() + threadBuffer.framesLength;
+		String result;
+		if (threadBuffer.spilledOffsets == null) {
+			result = getThreadMemory(threadBuffer);
+		}
+		else {
+			StringBuilder threadEntry = new StringBuilder();
+			try {
+				for (Long offset : threadBuffer.spilledOffsets) {
+					threadEntry.append(spillFile.read(offset));
+				}
+			}
+			catch (IOException ioe) {
+				throw new IllegalStateException("Can't read spilled thread from " + spillFile.getFile().getPath(), ioe);
+			}
+			result = threadEntry.append(getThreadMemory(threadBuffer)).toString();
+		}
+		threadBuffer.frames = null;
+		threadBuffer.framesLength = 0;
+		pushStringBuilder(threadBuffer.memory);
+		return result;
+	}
+
+	/**
+	 * Compresses what's in the thread memory to a new frame.
+	 */
+	private void compressThreadFrame(ThreadBuffer threadBuffer) {
+		if (threadCodec == null) {
+			threadCodec = new LzCodec();
+		}
+		byte[] raw = threadBuffer.memory.toString().getBytes(UTF_8);
+		int maxLength = LzCodec.maxCompressedLength(raw.length);
+		if (threadFrame == null || threadFrame.length < maxLength) {
+			threadFrame = new byte[maxLength];
+		}
+		int compressedLength = threadCodec.compress(raw, raw.length, threadFrame, 0);
+
+		int framesLength = threadBuffer.framesLength + THREAD_FRAME_HEADER + compressedLength;
+		if (threadBuffer.frames == null) {
+			threadBuffer.frames = new byte[framesLength];
+		}
+		else if (threadBuffer.frames.length < framesLength) {
+			threadBuffer.frames = Arrays.copyOf(threadBuffer.frames, Math.max(framesLength, threadBuffer.frames.length + threadBuffer.frames.length / 4));
+		}
+		writeInt(threadBuffer.frames, threadBuffer.framesLength, raw.length);
+		writeInt(threadBuffer.frames, threadBuffer.framesLength + 4, compressedLength);
+		System.arraycopy(threadFrame, 0, threadBuffer.frames, threadBuffer.framesLength + THREAD_FRAME_HEADER, compressedLength);
+		threadBuffer.framesLength = framesLength;
+
+		bufferedChars += THREAD_FRAME_HEADER + compressedLength - threadBuffer.memory.length();
+		threadBuffer.memory.setLength(0);
+		threadBuffer.memory.trimToSize(); //otherwise the memory keeps the frame size
+	}
+
+	/**
+	 * Gathers what's kept in memory of the thread, decompressing its frames if any.
+	 */
+	private String getThreadMemory(ThreadBuffer threadBuffer) {
+		if (threadBuffer.framesLength == 0) {
+			return threadBuffer.memory.toString();
+		}
+
+		StringBuilder threadEntry = new StringBuilder();
+		int offset = 0;
+		while (offset < threadBuffer.framesLength) {
+			int rawLength = readInt(threadBuffer.frames, offset);
+			int compressedLength = readInt(threadBuffer.frames, offset + 4);
+			byte[] raw = new byte[rawLength];
+			LzCodec.decompress(threadBuffer.frames, offset + THREAD_FRAME_HEADER, compressedLength, raw, rawLength);
+			threadEntry.append(new String(raw, UTF_8));
+			offset += THREAD_FRAME_HEADER + compressedLength;
+		}
+		return threadEntry.append(threadBuffer.memory).toString();
+	}
+
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+	}
+
+	/**
+	 * Spills the oldest threads to the spill file until half of the limit is left in memory, so it's not done on each next line.
+	 */
+	private void spillThreadBuffers() {
+		try {
+			if (spillFile == null) {
+				spillFile = new SpillFile("grepp_threads");
+			}
+			for (ThreadBuffer threadBuffer : threadStartPatternBufferMap.values()) {
+				if (bufferedChars <= threadBuffersLimit / 2) {
+					break;
+				}
+				if (threadBuffer.memory.length() == 0 && threadBuffer.framesLength == 0) {
+					continue;
+				}
+
+				if (threadBuffer.spilledOffsets == null) {
+					threadBuffer.spilledOffsets = new ArrayList<Long>();
+				}
+				threadBuffer.spilledOffsets.add(spillFile.append(getThreadMemory(threadBuffer)));
+				bufferedChars -= threadBuffer.memory.length() + threadBuffer.framesLength;
+				threadBuffer.frames = null;
+				threadBuffer.framesLength = 0;
+				threadBuffer.memory.setLength(0);
+				threadBuffer.memory.trimToSize(); //releasing the memory, as the thread may be long
+			}
+		}
+		catch (IOException ioe) {
+			throw new IllegalStateException("Can't spill threads to a temporary file", ioe);
+		}
+		LOGGER.debug("Threads are spilled; {} chars left in memory, {} bytes spilled", bufferedChars, spillFile.length());
+	}
 
 	/**
 	 * Flushes all state
@@ -314,6 +693,14 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 	public void flush() {
         super.flush();
         threadStartPatternBufferMap.clear();
+        bufferedChars = 0L;
+        threadActivity.clear();
+        entryCount = 0L;
+        entryTime = 0L;
+        if (spillFile != null) {
+        	spillFile.close();
+        	spillFile = null;
+        }
         for (StringBuilder buffer : threadBuffers) {
         	buffer.setLength(0);
         }
@@ -322,20 +709,22 @@ public class ThreadLogEntryFilter extends LogEntryFilter {
 
 	/**
 	 * 
-	 * Listens for CHUNK_ENDED event to return current accumulated block
+	 * Listens for CHUNK_ENDED event to return current accumulated block; ENTRY_ENDED passes only threads which have ended, and open ones are kept
 	 */
 
 	@Override
 	protected List<String> processEventInternal(Event event) {
         switch (event)
         {
+            case ENTRY_ENDED: {
+            	return endEntry();
+            }
             case CHUNK_ENDED: {
             	//all pending blocks gathering
             	terminateBlock(null); //just processing what we've got
             	
-            	for (StringBuilder threadEntry : threadStartPatternBufferMap.values()) {
-            		addThreadEntry(threadEntry.toString());
-            		pushStringBuilder(threadEntry);
+            	for (ThreadBuffer threadBuffer : threadStartPatternBufferMap.values()) {
+            		addThreadEntry(releaseThreadBuffer(threadBuffer));
             	}
             	List<String> passingVal = new ArrayList<String>(readyThreadEntriesStack);
         		flush();
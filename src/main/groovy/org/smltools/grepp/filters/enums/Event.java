@@ -8,6 +8,7 @@ package org.smltools.grepp.filters.enums;
  */
 public enum Event { 
     CHUNK_ENDED,
+    ENTRY_ENDED, //no more lines of the pending entry are expected for now; unlike CHUNK_ENDED, state lasting across entries (e.g. threads) is kept
 	 ALL_CHUNKS_PROCESSED,
 	  CONFIG_REFRESHED
 }
\ No newline at end of file
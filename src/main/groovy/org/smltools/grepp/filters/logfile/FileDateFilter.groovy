@@ -10,11 +10,13 @@ import org.smltools.grepp.filters.RefreshableFilterBase
 import org.smltools.grepp.filters.FilterParams
 import org.smltools.grepp.filters.entry.LogEntryFilter
 import org.smltools.grepp.config.ConfigHolder
+import org.smltools.grepp.util.Compression
 import groovy.util.ConfigObject;
 
 /**
  * Provides filtering of supplied files by last modified date. <br>
- * If it does not comply to from date and to date + configured file threshold, a file would be skipped. 
+ * If it does not comply to from date and to date + configured file threshold, a file would be skipped. <br>
+ * For gzip and zip files the archived modification time is used (see {@link Compression#lastModified(File)}).
  * 
  * @author Alexander Semelit
  *
@@ -30,6 +32,13 @@ public class FileDateFilter extends RefreshableFilterBase<List<File>> {
     protected long logFileThreshold = -1L //means no threshold at all
     protected long logFileThresholdMltplr = 60L*60L*1000L
 
+    @Override
+    public FileDateFilter copy() {
+        FileDateFilter copy = (FileDateFilter) super.copy()
+        copy.fileDateFormat = (SimpleDateFormat) fileDateFormat.clone() //SimpleDateFormat is not thread-safe
+        return copy
+    }
+
     public void setFileDateOutputFormat(String fileDateFormat) {
         this.fileDateFormat = new SimpleDateFormat(fileDateFormat)
     }
@@ -112,7 +121,7 @@ public class FileDateFilter extends RefreshableFilterBase<List<File>> {
             }
         }
 
-        Date fileTime = new Date(file.lastModified())
+        Date fileTime = new Date(Compression.lastModified(file))
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("fileTime: {}\nChecking if file suits FROM {}", fileDateFormat.format(fileTime), from == null ? null : fileDateFormat.format(from))
         }
@@ -3,9 +3,10 @@ package org.smltools.grepp.filters.logfile
 import groovy.util.logging.Slf4j
 import org.smltools.grepp.filters.Filter
 import org.smltools.grepp.filters.FilterParams
+import org.smltools.grepp.util.Compression
 
 /**
- * Provides file sorting. Sorts files ascending by last modified time. <br>
+ * Provides file sorting. Sorts files ascending by last modified time (archived one for gzip and zip files). <br>
  * Is a simple filter, i.e. does not require config to work.
  * 
  * @author Alexander Semelit 
@@ -23,9 +24,12 @@ public class FileSortFilter implements Filter<List<File>> {
 		if (files == null) return files
 		if (files.size() < 2) return files
 
+		Map<File, Long> lastModified = new HashMap<File, Long>() //it could read archive headers, so it's done once per file, not per comparison
+		files.each { lastModified.put(it, Compression.lastModified(it)) }
+
 		List<File> fileList = new ArrayList<File>() 
 		fileList.addAll(files)
-		fileList.sort { it.lastModified() }
+		fileList.sort { lastModified.get(it) }
 		LOGGER.trace("FileList has been sorted.")
 		return fileList
 	}
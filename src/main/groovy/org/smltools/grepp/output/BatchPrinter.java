@@ -0,0 +1,57 @@
+package org.smltools.grepp.output;
+
+import org.smltools.grepp.exceptions.FilteringIsInterruptedException;
+
+/**
+ * Gathers data printed one by one into batches for a {@link BatchableOutput}; other outputs get each datum right away. <br>
+ * As it holds up to a batch of data, it's meant for files and other data read at full speed, not for data arriving interactively. {@link #flush()} should be called at the end of data.
+ *
+ * @author Alexander Semelit
+ * @param <T>
+ */
+public class BatchPrinter<T> {
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	private final GreppOutput<T> output;
+	private final BatchableOutput<T> batchableOutput;
+	private final T[] batch;
+	private int size = 0;
+
+	/**
+	 *
+	 * @param output output to print to
+	 * @param batch array to gather data in; e.g. new String[BatchPrinter.DEFAULT_BATCH_SIZE]. It defines the batch size, and the array type, which batch filters expect
+	 */
+	@SuppressWarnings("unchecked")
+	public BatchPrinter(GreppOutput<T> output, T[] batch) {
+		if (output == null || batch == null || batch.length == 0) {
+			throw new IllegalArgumentException("Output and non-empty batch array should be supplied: " + (output != null) + ";" + (batch != null));
+		}
+		this.output = output;
+		this.batchableOutput = output instanceof BatchableOutput ? (BatchableOutput<T>) output : null;
+		this.batch = batch;
+	}
+
+	public void print(T data) throws FilteringIsInterruptedException {
+		if (batchableOutput == null) {
+			output.print(data);
+			return;
+		}
+
+		batch[size++] = data;
+		if (size == batch.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Prints gathered data.
+	 */
+	public void flush() throws FilteringIsInterruptedException {
+		if (size > 0) {
+			int printed = size;
+			size = 0;
+			batchableOutput.printBatch(batch, printed);
+		}
+	}
+}
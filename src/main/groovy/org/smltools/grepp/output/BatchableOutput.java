@@ -0,0 +1,20 @@
+package org.smltools.grepp.output;
+
+import org.smltools.grepp.exceptions.FilteringIsInterruptedException;
+
+/**
+ * Output which can filter and print a batch of data at once (see {@link org.smltools.grepp.filters.BatchFilter}), with the same results as printing them one by one.
+ *
+ * @author Alexander Semelit
+ * @param <T>
+ */
+public interface BatchableOutput<T> {
+	/**
+	 * Filters and prints the batch. If filtering is interrupted, results of the data before the interruption are printed first, and then it's rethrown.
+	 *
+	 * @param batch data to print; it's changed by filtering
+	 * @param size number of data in the batch
+	 * @throws FilteringIsInterruptedException
+	 */
+	void printBatch(T[] batch, int size) throws FilteringIsInterruptedException;
+}
@@ -0,0 +1,127 @@
+package org.smltools.grepp.output;
+
+import groovy.util.logging.Slf4j
+import java.nio.charset.Charset
+import org.smltools.grepp.config.ConfigHolder
+import org.smltools.grepp.filters.enums.Event
+import org.smltools.grepp.filters.FilterChain
+
+/**
+ *
+ * Output which prints to a large buffer (see {@link ChannelWriter}), and flushes it by a {@link FlushPolicy} instead of after each result. <br>
+ * The buffer is flushed when it's full, and on close, regardless of the policy. <br>
+ * Since PrintWriter swallows write errors, they're checked on each flush; so processing stops once results can't be printed, e.g. the reader has gone.
+ *
+ * @author Alexander Semelit
+ *
+ */
+
+@Slf4j("LOGGER")
+public class BufferedOutput<T> extends SimpleOutput<T> {
+
+	/**
+	 * When the buffered results are flushed.
+	 */
+	public static enum FlushPolicy {
+		/** After each result; i.e. for an interactive console */
+		ENTRY,
+		/** At the end of each chunk (i.e. file), and by a followed file getting idle */
+		CHUNK,
+		/** When a result is printed and the flush interval has passed since the last flush; and at the end of each chunk */
+		TIME,
+		/** Only when the buffer is full */
+		SIZE
+	}
+
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+
+	private final FlushPolicy flushPolicy
+	private long flushInterval = DEFAULT_FLUSH_INTERVAL
+	private long lastFlushed = System.currentTimeMillis()
+
+	public BufferedOutput(ConfigHolder config, FilterChain<T> filterChain, ChannelWriter writer, FlushPolicy flushPolicy) {
+		super(config, filterChain, new PrintWriter(writer, false))
+		if (flushPolicy == null) {
+			throw new IllegalArgumentException("Flush policy shouldn't be null")
+		}
+		this.flushPolicy = flushPolicy
+		LOGGER.trace("Flush policy: {}", flushPolicy)
+	}
+
+	/**
+	 * Makes an output to System.out. If it's a terminal, results are flushed as soon as they're printed, so it stays interactive.
+	 *
+	 * @param flushPolicy policy to use if it's not a terminal; null means {@link FlushPolicy#CHUNK}
+	 */
+	public static <T> BufferedOutput<T> toConsole(ConfigHolder config, FilterChain<T> filterChain, FlushPolicy flushPolicy) {
+		FlushPolicy policy = System.console() != null ? FlushPolicy.ENTRY : flushPolicy != null ? flushPolicy : FlushPolicy.CHUNK
+		return new BufferedOutput<T>(config, filterChain, new ChannelWriter(System.out, Charset.defaultCharset(), ChannelWriter.DEFAULT_BUFFER_SIZE), policy)
+	}
+
+	/**
+	 * Makes an output to an OutputStream, e.g. to a {@link SpoolOutputStream}. The stream is flushed on each flush of the output.
+	 *
+	 * @param flushPolicy policy to use; null means {@link FlushPolicy#CHUNK}
+	 */
+	public static <T> BufferedOutput<T> toStream(ConfigHolder config, FilterChain<T> filterChain, OutputStream out, FlushPolicy flushPolicy) {
+		return new BufferedOutput<T>(config, filterChain, new ChannelWriter(out, Charset.defaultCharset(), ChannelWriter.DEFAULT_BUFFER_SIZE)
+				, flushPolicy != null ? flushPolicy : FlushPolicy.CHUNK)
+	}
+
+	/**
+	 * Sets the interval for {@link FlushPolicy#TIME}.
+	 *
+	 * @param flushInterval interval in milliseconds
+	 */
+	public void setFlushInterval(long flushInterval) {
+		if (flushInterval < 1) {
+			throw new IllegalArgumentException("Flush interval should be positive: " + flushInterval)
+		}
+		this.flushInterval = flushInterval
+		LOGGER.trace("Flush interval: {}", flushInterval)
+	}
+
+	public FlushPolicy getFlushPolicy() {
+		return flushPolicy
+	}
+
+	@Override
+	public void processEvent(Event event) {
+		super.processEvent(event)
+		if ((event == Event.CHUNK_ENDED || event == Event.ENTRY_ENDED) && flushPolicy != FlushPolicy.SIZE && flushPolicy != FlushPolicy.ENTRY) {
+			flushPrinted()
+		}
+	}
+
+	@Override
+	public void join(GreppOutput<T> forked) {
+		String result = ((ForkedOutput<T>) forked).drain()
+		if (result != null) {
+			printer.print(result)
+			printed()
+		}
+	}
+
+	@Override
+	protected void printNotFiltered(T data) {
+		int printedCount = resultCount
+		super.printNotFiltered(data)
+		if (resultCount > printedCount) {
+			printed()
+		}
+	}
+
+	private void printed() {
+		if (flushPolicy == FlushPolicy.ENTRY || (flushPolicy == FlushPolicy.TIME && System.currentTimeMillis() - lastFlushed >= flushInterval)) {
+			flushPrinted()
+		}
+	}
+
+	private void flushPrinted() {
+		printer.flush()
+		if (printer.checkError()) {
+			throw new IllegalStateException("Results can't be printed; the output is closed")
+		}
+		lastFlushed = System.currentTimeMillis()
+	}
+}
@@ -0,0 +1,172 @@
+package org.smltools.grepp.output;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ *
+ * Writer which keeps chars in a large buffer, and writes them to a channel only when it's full or when it's flushed. <br>
+ * Chars are encoded to a direct ByteBuffer, so a file channel writes them without an extra copy. Unlike a PrintWriter over System.out, nothing is written by a single println. <br>
+ * Not thread-safe; it's supposed to be used by a single output.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class ChannelWriter extends Writer {
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	private final WritableByteChannel channel;
+	private final Flushable stream; //flushed after the channel is written, if the channel is over a stream
+	private final CharsetEncoder encoder;
+	private final CharBuffer chars;
+	private final ByteBuffer bytes;
+	private boolean isClosed = false;
+
+	/**
+	 * Creates a writer to an OutputStream, e.g. System.out. The stream is flushed on each flush of the writer.
+	 */
+	public ChannelWriter(OutputStream out, Charset charset, int bufferSize) {
+		this(Channels.newChannel(out), out, charset, bufferSize);
+	}
+
+	/**
+	 * Creates a writer to a channel, e.g. of a FileOutputStream.
+	 */
+	public ChannelWriter(WritableByteChannel channel, Charset charset, int bufferSize) {
+		this(channel, null, charset, bufferSize);
+	}
+
+	private ChannelWriter(WritableByteChannel channel, Flushable stream, Charset charset, int bufferSize) {
+		if (channel == null || charset == null) {
+			throw new IllegalArgumentException("Channel and charset shouldn't be null: " + (channel != null) + ";" + (charset != null));
+		}
+
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size should be positive: " + bufferSize);
+		}
+
+		this.channel = channel;
+		this.stream = stream;
+		this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = CharBuffer.allocate(bufferSize);
+		this.bytes = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(bufferSize * (double) encoder.maxBytesPerChar())));
+	}
+
+	/**
+	 *
+	 * @return number of chars waiting to be written
+	 */
+	public int getBuffered() {
+		return chars.position();
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int length = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, length);
+			off += length;
+			len -= length;
+			if (!chars.hasRemaining()) {
+				writeBuffered(false);
+			}
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int length = Math.min(len, chars.remaining());
+			chars.put(str, off, off + length);
+			off += length;
+			len -= length;
+			if (!chars.hasRemaining()) {
+				writeBuffered(false);
+			}
+		}
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		ensureOpen();
+		chars.put((char) c);
+		if (!chars.hasRemaining()) {
+			writeBuffered(false);
+		}
+	}
+
+	/**
+	 * Encodes buffered chars and writes them to the channel. A trailing high surrogate is kept, unless it's the end of input.
+	 */
+	private void writeBuffered(boolean isEndOfInput) throws IOException {
+		chars.flip();
+		CoderResult result;
+		do {
+			result = encoder.encode(chars, bytes, isEndOfInput);
+			if (result.isError()) {
+				result.throwException();
+			}
+			writeBytes();
+		}
+		while (result.isOverflow());
+
+		if (isEndOfInput) {
+			while (encoder.flush(bytes).isOverflow()) {
+				writeBytes();
+			}
+			writeBytes();
+		}
+		chars.compact();
+	}
+
+	private void writeBytes() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		writeBuffered(false);
+		if (stream != null) {
+			stream.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!isClosed) {
+			try {
+				writeBuffered(true);
+				if (stream != null) {
+					stream.flush();
+				}
+			}
+			finally {
+				isClosed = true;
+				channel.close();
+			}
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (isClosed) {
+			throw new IOException("Writer is closed");
+		}
+	}
+}
@@ -19,6 +19,14 @@ public class ConfigOutput extends SimpleOutput<String> {
         super(config, filterChain)
    	}
 
+	/**
+	 * Each result is merged into the config right away, so it can't be forked.
+	 */
+	@Override
+	public GreppOutput<String> fork() {
+		return null
+	}
+
 	@Override
 	protected void printNotFiltered(String data) {
 		if (data != null) {
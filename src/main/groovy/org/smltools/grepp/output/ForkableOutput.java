@@ -0,0 +1,24 @@
+package org.smltools.grepp.output;
+
+/**
+ * Output which can be split into independent parts, processed concurrently, and then joined back in the original order.
+ *
+ * @author Alexander Semelit
+ * @param <T>
+ */
+public interface ForkableOutput<T> {
+    /**
+     * Creates an output with its own copy of the current filter chain, which keeps the results until they're joined. <br>
+     * A forked output is supposed to be used by a single thread.
+     *
+     * @return forked output, or null if the output can't be forked at the moment
+     */
+    GreppOutput<T> fork();
+
+    /**
+     * Prints everything collected by the forked output to this one.
+     *
+     * @param forked output previously returned by {@link #fork()}
+     */
+    void join(GreppOutput<T> forked);
+}
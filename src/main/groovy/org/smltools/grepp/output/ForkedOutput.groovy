@@ -0,0 +1,48 @@
+package org.smltools.grepp.output;
+
+import groovy.util.logging.Slf4j
+import org.smltools.grepp.config.ConfigHolder
+import org.smltools.grepp.filters.FilterChain
+
+/**
+ * 
+ * Output created by {@link SimpleOutput#fork()}. Keeps printed results in memory until they're joined to the parent output.
+ * 
+ * @author Alexander Semelit
+ *
+ */
+
+@Slf4j("LOGGER")
+class ForkedOutput<T> extends SimpleOutput<T> {
+
+	private final StringWriter buffer
+
+	public ForkedOutput(ConfigHolder config, FilterChain<T> filterChain) {
+		this(config, filterChain, new StringWriter())
+	}
+
+	private ForkedOutput(ConfigHolder config, FilterChain<T> filterChain, StringWriter buffer) {
+		super(config, filterChain, new PrintWriter(buffer))
+		this.buffer = buffer
+	}
+
+	/**
+	 * 
+	 * @return everything printed since the last call, or null if nothing was printed
+	 */
+	String drain() {
+		printer.flush()
+		StringBuffer result = buffer.getBuffer()
+		try {
+			return result.length() > 0 ? result.toString() : null
+		}
+		finally {
+			result.setLength(0)
+		}
+	}
+
+	@Override
+	public GreppOutput<T> fork() {
+		return null
+	}
+}
@@ -0,0 +1,45 @@
+package org.smltools.grepp.output;
+
+import java.util.Date;
+
+/**
+ * Output which can tell the dates of entries, so that entries dated before the date filtering starts from can be skipped without filtering.
+ *
+ * @author Alexander Semelit
+ */
+public interface SeekableOutput {
+    /**
+     * Tells if the current filters drop all the entries dated before {@link #getSeekDate()}, and nothing else depends on them. <br>
+     * It's not the case for thread filtering, since entries of a thread are coupled before their dates are checked.
+     *
+     * @return true if a chunk can be processed starting from some entry
+     */
+    boolean isSeekable();
+
+    /**
+     *
+     * @return the date filtering starts from
+     */
+    Date getSeekDate();
+
+    /**
+     * Extracts the date of an entry by its first line.
+     *
+     * @param line line to check
+     * @return date of the entry, or null if the line doesn't start an entry or has no date
+     */
+    Date getEntryDate(String line);
+
+    /**
+     * Identifies what entry dates depend on, i.e. the entry start and date patterns; so the dates found once can be reused with the same key.
+     *
+     * @return key of the current entry start and date patterns, or null if entries have no dates
+     */
+    String getEntryDatesKey();
+
+    /**
+     * Tells the output that the date filtering starts from was passed by some entry before, as it would be if the chunk was filtered from its start; <br>
+     * i.e. the following entries are checked the same way, as the filters check them after the date is passed.
+     */
+    void passSeekDate();
+}
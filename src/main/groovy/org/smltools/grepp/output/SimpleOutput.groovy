@@ -2,9 +2,16 @@ package org.smltools.grepp.output;
 
 import groovy.util.logging.Slf4j
 import org.smltools.grepp.config.ConfigHolder
+import org.smltools.grepp.exceptions.FilteringIsInterruptedException
+import org.smltools.grepp.exceptions.ResultLimitReachedException
 
 import org.smltools.grepp.filters.enums.Event
 import org.smltools.grepp.filters.FilterChain
+import org.smltools.grepp.filters.entry.EntryDateFilter
+import org.smltools.grepp.filters.entry.LogEntryFilter
+import org.smltools.grepp.filters.entry.ReportFilter
+import org.smltools.grepp.filters.entry.SimpleFilter
+import org.smltools.grepp.filters.entry.ThreadLogEntryFilter
 import org.smltools.grepp.output.GreppOutput;
 import org.smltools.grepp.output.RefreshableOutput;
 
@@ -18,11 +25,14 @@ import org.smltools.grepp.output.RefreshableOutput;
  */
 
 @Slf4j("LOGGER")
-public class SimpleOutput<T> implements GreppOutput<T>, RefreshableOutput<String> {
+public class SimpleOutput<T> implements GreppOutput<T>, RefreshableOutput<String>, ForkableOutput<T>, SplittableOutput, SeekableOutput, BatchableOutput<T> {
 	
 	protected PrintWriter printer;
     protected ConfigHolder config;
 	protected FilterChain<T> filterChain;
+	protected int resultLimit = 0;
+	protected int resultCount = 0;
+	protected String configId; //of the file filtered last
 	
 	public SimpleOutput(ConfigHolder config, FilterChain<T> filterChain) {
 		this(config, filterChain, null)
@@ -34,6 +44,23 @@ public class SimpleOutput<T> implements GreppOutput<T>, RefreshableOutput<String
 		this.filterChain = filterChain
 	}
 	
+	/**
+	 * Limits the number of printed results. Once it's reached, print throws {@link ResultLimitReachedException}, so processing could be stopped; anything filtered after that is dropped. <br>
+	 * Limited output can't be forked, as results are counted in the order they are printed.
+	 * 
+	 * @param resultLimit maximum number of results to print
+	 */
+	public void setResultLimit(int resultLimit) {
+		if (resultLimit < 1) {
+			throw new IllegalArgumentException("Result limit should be positive: " + resultLimit)
+		}
+		this.resultLimit = resultLimit
+	}
+
+	public boolean isLimitReached() {
+		return resultLimit > 0 && resultCount >= resultLimit
+	}
+
     @Override
     public void flush() {
     	if (filterChain != null) {
@@ -43,7 +70,43 @@ public class SimpleOutput<T> implements GreppOutput<T>, RefreshableOutput<String
     
 	@Override
 	public void print(T data) {
+		if (isLimitReached()) {
+			throw new ResultLimitReachedException(resultLimit)
+		}
 		printNotFiltered(filterChain != null ? filterChain.filter(data) : data)
+		if (isLimitReached()) {
+			throw new ResultLimitReachedException(resultLimit)
+		}
+	}
+
+	/**
+	 * Filters the batch by {@link FilterChain#filterBatch(Object[], int)}, and prints the results. <br>
+	 * Output with a result limit prints the batch one by one, so nothing is filtered after the limit is reached.
+	 */
+	@Override
+	public void printBatch(T[] batch, int size) {
+		if (filterChain == null || resultLimit > 0) {
+			for (int i = 0; i < size; i++) {
+				print(batch[i])
+			}
+			return
+		}
+
+		FilteringIsInterruptedException interruption = null
+		try {
+			filterChain.filterBatch(batch, size)
+		}
+		catch (FilteringIsInterruptedException e) {
+			interruption = e //results before it are printed first
+		}
+		for (int i = 0; i < size; i++) {
+			if (batch[i] != null) {
+				printNotFiltered(batch[i])
+			}
+		}
+		if (interruption != null) {
+			throw interruption
+		}
 	}
 
 	@Override
@@ -54,12 +117,20 @@ public class SimpleOutput<T> implements GreppOutput<T>, RefreshableOutput<String
 		}
 	}
 
+	/**
+	 * Switches the filter chain to the configId of the file. <br>
+	 * If it's not the configId of the previous file, the chunk is ended first; so when files are merged, the pending entry and threads of the previous file are printed, rather than left in its filters.
+	 */
 	@Override
 	public void refreshFilters(String fileName) {
 		if (filterChain != null) {
 	        String configId = ConfigHolder.findConfigIdByFileName(config, fileName)
 			if (configId != null) {
-				filterChain.refreshByConfigId(configId)
+				if (this.configId != null && !configId.equals(this.configId)) {
+					processEvent(Event.CHUNK_ENDED)
+				}
+				this.configId = configId
+				filterChain.switchToConfigId(configId)
 			}
 		}
 	}
@@ -71,9 +142,118 @@ public class SimpleOutput<T> implements GreppOutput<T>, RefreshableOutput<String
 		}
 	}
 
+	@Override
+	public GreppOutput<T> fork() {
+		if (filterChain == null || printer == null) {
+			return null
+		}
+
+		if (resultLimit > 0) {
+			LOGGER.debug("Output with a result limit can't be forked")
+			return null
+		}
+
+		if (!filterChain.isCopyable()) {
+			LOGGER.debug("Output can't be forked, as some of the filters aren't copyable")
+			return null
+		}
+
+		return new ForkedOutput<T>(config, filterChain.getPlan().newChain())
+	}
+
+	@Override
+	public void join(GreppOutput<T> forked) {
+		String result = ((ForkedOutput<T>) forked).drain()
+		if (result != null) {
+			printer.print(result)
+			printer.flush()
+		}
+	}
+
+	@Override
+	public boolean isSplittable() {
+		if (filterChain == null || printer == null || filterChain.has(ThreadLogEntryFilter.class) || filterChain.has(ReportFilter.class)) {
+			return false
+		}
+		LogEntryFilter logEntryFilter = filterChain.get(LogEntryFilter.class)
+		return logEntryFilter == null || !logEntryFilter.hasTerminator()
+	}
+
+	@Override
+	public boolean isEntryStart(CharSequence line) {
+		LogEntryFilter logEntryFilter = filterChain != null ? filterChain.get(LogEntryFilter.class) : null
+		return logEntryFilter == null || logEntryFilter.isEntryStart(line)
+	}
+
+	@Override
+	public boolean mayPass(CharSequence entry) {
+		SimpleFilter simpleFilter = filterChain != null ? filterChain.get(SimpleFilter.class) : null
+		return simpleFilter == null || simpleFilter.matches(entry)
+	}
+
+	@Override
+	public void endPart(String nextEntryStart) {
+		if (filterChain != null && filterChain.get(LogEntryFilter.class) != null) {
+			print(nextEntryStart) //terminates the pending entry; the next one stays in the buffer and is dropped with the output
+		}
+	}
+
+	@Override
+	public boolean isSeekable() {
+		if (filterChain == null || filterChain.has(ThreadLogEntryFilter.class)) {
+			return false
+		}
+		EntryDateFilter entryDateFilter = filterChain.get(EntryDateFilter.class)
+		LogEntryFilter logEntryFilter = filterChain.get(LogEntryFilter.class)
+		return entryDateFilter != null && entryDateFilter.getFrom() != null && (logEntryFilter == null || !logEntryFilter.hasTerminator())
+	}
+
+	@Override
+	public Date getSeekDate() {
+		EntryDateFilter entryDateFilter = filterChain != null ? filterChain.get(EntryDateFilter.class) : null
+		return entryDateFilter != null ? entryDateFilter.getFrom() : null
+	}
+
+	@Override
+	public Date getEntryDate(String line) {
+		EntryDateFilter entryDateFilter = filterChain != null ? filterChain.get(EntryDateFilter.class) : null
+		return entryDateFilter != null && isEntryStart(line) ? entryDateFilter.getEntryDate(line) : null
+	}
+
+	@Override
+	public void setReversed(boolean isReversed) {
+		EntryDateFilter entryDateFilter = filterChain != null ? filterChain.get(EntryDateFilter.class) : null
+		if (entryDateFilter != null) {
+			entryDateFilter.setReversed(isReversed)
+		}
+	}
+
+	@Override
+	public void passSeekDate() {
+		EntryDateFilter entryDateFilter = filterChain != null ? filterChain.get(EntryDateFilter.class) : null
+		if (entryDateFilter != null) {
+			entryDateFilter.passDateFrom()
+		}
+	}
+
+	@Override
+	public String getEntryDatesKey() {
+		EntryDateFilter entryDateFilter = filterChain != null ? filterChain.get(EntryDateFilter.class) : null
+		if (entryDateFilter == null || entryDateFilter.getLogDatePattern() == null) {
+			return null
+		}
+		LogEntryFilter logEntryFilter = filterChain.get(LogEntryFilter.class)
+		return [logEntryFilter?.getLogEntryPattern(), entryDateFilter.getLogDatePattern(), entryDateFilter.getLogDateFormat()].join('\n')
+	}
+
 	protected void printNotFiltered(T data) {
 		if (data != null) {
+			if (isLimitReached()) {
+				LOGGER.trace("Result limit is reached; dropping")
+				return
+			}
 			printer.println(data)
+			resultCount++
 		}
 		else {
 			LOGGER.trace("Nothing to print")
@@ -0,0 +1,49 @@
+package org.smltools.grepp.output;
+
+/**
+ * Output which can filter parts of a single chunk independently, as long as the chunk is split at entry starts.
+ *
+ * @author Alexander Semelit
+ */
+public interface SplittableOutput {
+    /**
+     * Tells if the current filters would give the same results for entry-aligned parts of a chunk, as for the whole chunk. <br>
+     * It's not the case for the filters accumulating anything across entries; i.e. for threads or reports.
+     *
+     * @return true if a chunk can be split
+     */
+    boolean isSplittable();
+
+    /**
+     * Checks if the line starts a new entry with the current filters, i.e. if a chunk can be split right before it.
+     *
+     * @param line line to check
+     * @return true if the line starts an entry
+     */
+    boolean isEntryStart(CharSequence line);
+
+    /**
+     * Checks if an entry could pass the current filters, without changing their state. <br>
+     * False means it won't pass for sure, so it can be skipped (and not even decoded) while processing a splittable chunk; true means it should be printed as usual.
+     *
+     * @param entry entry lines joined by '\n'
+     * @return false if the entry won't pass
+     */
+    boolean mayPass(CharSequence entry);
+
+    /**
+     * Ends a part, which is followed by the given entry start. The last pending entry of the part is filtered the same way, as if that entry had started; <br>
+     * i.e. it's an alternative to the CHUNK_ENDED event for all the parts, but the last one.
+     *
+     * @param nextEntryStart the first line of the next part
+     */
+    void endPart(String nextEntryStart);
+
+    /**
+     * Tells the output that the entries of the current chunk come newest first, i.e. it's read from the end; so filters depending on the entries order (i.e. by date) check them accordingly. <br>
+     * It should be set back to false once the chunk is read, since other chunks could be read forward.
+     *
+     * @param isReversed true if entries come in reverse order
+     */
+    void setReversed(boolean isReversed);
+}
@@ -0,0 +1,319 @@
+package org.smltools.grepp.output;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * OutputStream of spooled results, which writes (and gzips, if asked) them on a separate thread, a few blocks behind the producer. <br>
+ * Files can be rolled by size: once a file has about rollSize bytes on disk, the next one is started after the next '\n', so no line is cut in half. <br>
+ * Files are named baseName.extension, or baseName_001.extension, baseName_002.extension etc. if rolled; '.gz' is appended if compressed. <br>
+ * Block buffers are recycled, and at most blocks + 1 buffers are allocated. A failure of writing is rethrown to the producer by the next write or by close.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class SpoolOutputStream extends OutputStream {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SpoolOutputStream.class);
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+	public static final int DEFAULT_BLOCKS = 4;
+	private static final Block FLUSH = new Block(null, 0);
+	private static final Block EOF = new Block(null, 0);
+
+	private final File dir;
+	private final String baseName;
+	private final String extension;
+	private final boolean isCompressed;
+	private final long rollSize;
+	private final BlockingQueue<Block> filled;
+	private final BlockingQueue<byte[]> free;
+	private final Thread writer;
+	private volatile IOException failure = null;
+
+	private byte[] current;
+	private int pos = 0;
+	private boolean isClosed = false;
+
+	//used by the writing thread only
+	private FileOutputStream file;
+	private OutputStream out;
+	private int fileCount = 0;
+
+	public SpoolOutputStream(File dir, String baseName, String extension, boolean isCompressed, long rollSize) throws IOException {
+		this(dir, baseName, extension, isCompressed, rollSize, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+	}
+
+	/**
+	 *
+	 * @param dir dir to write the files to
+	 * @param baseName file name without extension
+	 * @param extension file extension, e.g. of the report aggregator
+	 * @param isCompressed true to gzip the files
+	 * @param rollSize size of a file on disk to start the next one after; 0 to write a single file
+	 * @param blockSize size of a block handed to the writing thread
+	 * @param blocks number of blocks the writing thread could be behind
+	 * @throws IOException if the first file can't be created
+	 */
+	public SpoolOutputStream(File dir, String baseName, String extension, boolean isCompressed, long rollSize, int blockSize, int blocks) throws IOException {
+		if (dir == null || baseName == null || extension == null) {
+			throw new IllegalArgumentException("Dir, base name and extension shouldn't be null: " + (dir != null) + ";" + (baseName != null) + ";" + (extension != null));
+		}
+
+		if (rollSize < 0L) {
+			throw new IllegalArgumentException("Roll size shouldn't be negative: " + rollSize);
+		}
+
+		if (blockSize <= 0 || blocks <= 0) {
+			throw new IllegalArgumentException("Block size and blocks number should be positive: " + blockSize + ";" + blocks);
+		}
+
+		this.dir = dir;
+		this.baseName = baseName;
+		this.extension = extension;
+		this.isCompressed = isCompressed;
+		this.rollSize = rollSize;
+		this.filled = new ArrayBlockingQueue<Block>(blocks);
+		this.free = new ArrayBlockingQueue<byte[]>(blocks + 1);
+		for (int i = 0; i <= blocks; i++) {
+			free.offer(new byte[blockSize]);
+		}
+		this.current = free.poll();
+
+		openNext(); //so a bad dir is noticed right away
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeBehind();
+			}
+		}, "grepp-spool-writer-" + baseName);
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 *
+	 * @return the file which is being written now
+	 */
+	public File getCurrentFile() {
+		return fileOf(fileCount);
+	}
+
+	private File fileOf(int number) {
+		return new File(dir, baseName + (rollSize > 0L ? String.format("_%03d", number) : "") + "." + extension + (isCompressed ? ".gz" : ""));
+	}
+
+	private void openNext() throws IOException {
+		fileCount++;
+		File next = fileOf(fileCount);
+		LOGGER.trace("Spooling to {}", next.getPath());
+		file = new FileOutputStream(next);
+		out = openStream(file);
+	}
+
+	/**
+	 * Makes the stream the file is written through.
+	 *
+	 * @param file stream of the current spool file
+	 * @return the stream gzipping to it if isCompressed; the file stream itself otherwise
+	 */
+	protected OutputStream openStream(FileOutputStream file) throws IOException {
+		return isCompressed ? new GZIPOutputStream(file, 64 * 1024) : file;
+	}
+
+	private void closeCurrent() throws IOException {
+		out.close(); //finishes gzip as well
+	}
+
+	private void writeBehind() {
+		try {
+			try {
+				while (true) {
+					Block block = filled.take();
+					if (block == EOF) {
+						try {
+							closeCurrent();
+						}
+						catch (IOException closeIoe) { //e.g. gzip trailer doesn't fit the disk; EOF is taken already, so there's nothing to drain
+							if (failure == null) {
+								failure = closeIoe;
+							}
+						}
+						return;
+					}
+					else if (block == FLUSH) {
+						out.flush();
+						continue;
+					}
+
+					if (failure == null) {
+						writeBlock(block);
+					}
+					free.offer(block.data);
+				}
+			}
+			catch (IOException ioe) {
+				failure = ioe;
+				try {
+					closeCurrent();
+				}
+				catch (IOException closeIoe) {
+					LOGGER.debug("Can't close spool file", closeIoe);
+				}
+				while (true) { //draining, so the producer isn't blocked
+					Block block = filled.take();
+					if (block == EOF) {
+						return;
+					}
+					else if (block != FLUSH) {
+						free.offer(block.data);
+					}
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			LOGGER.trace("Spool writing is interrupted");
+		}
+	}
+
+	private void writeBlock(Block block) throws IOException {
+		int from = 0;
+		while (from < block.length) {
+			if (rollSize > 0L && file.getChannel().position() >= rollSize) {
+				int lineEnd = indexOfNewLine(block.data, from, block.length);
+				if (lineEnd < 0) {
+					out.write(block.data, from, block.length - from);
+					return;
+				}
+				out.write(block.data, from, lineEnd + 1 - from);
+				from = lineEnd + 1;
+				closeCurrent();
+				openNext();
+			}
+			else {
+				out.write(block.data, from, block.length - from);
+				return;
+			}
+		}
+	}
+
+	private static int indexOfNewLine(byte[] data, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (data[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		current[pos++] = (byte) b;
+		if (pos == current.length) {
+			handOver();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			int length = Math.min(len, current.length - pos);
+			System.arraycopy(b, off, current, pos, length);
+			pos += length;
+			off += length;
+			len -= length;
+			if (pos == current.length) {
+				handOver();
+			}
+		}
+	}
+
+	private void handOver() throws IOException {
+		try {
+			filled.put(new Block(current, pos));
+			current = free.take();
+			pos = 0;
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for spool writing");
+		}
+	}
+
+	/**
+	 * Hands what's written over to the writing thread, which flushes the file after writing it; it doesn't wait for that.
+	 */
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (pos > 0) {
+			handOver();
+		}
+		try {
+			filled.put(FLUSH);
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for spool writing");
+		}
+	}
+
+	/**
+	 * Waits for everything to be written, and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed) {
+			return;
+		}
+
+		try {
+			if (pos > 0 && failure == null) {
+				handOver();
+			}
+			filled.put(EOF);
+			writer.join();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for spool writing");
+		}
+		finally {
+			isClosed = true;
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+		LOGGER.info("Results are spooled to {} file(s) up to {}", fileCount, getCurrentFile().getPath());
+	}
+
+	private void ensureOpen() throws IOException {
+		if (isClosed) {
+			throw new IOException("Spool is closed");
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static final class Block {
+		final byte[] data;
+		final int length;
+
+		Block(byte[] data, int length) {
+			this.data = data;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package org.smltools.grepp.processors;
+
+import java.nio.charset.Charset;
+
+/**
+ *
+ * CharSequence view over a range of a byte array, where each byte is a char. <br>
+ * It's valid for ASCII bytes only, so it's up to the creator to check that. The range can be moved, so a single instance is reused while the array is scanned.
+ *
+ * @author Alexander Semelit
+ *
+ */
+final class AsciiCharSequence implements CharSequence {
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private byte[] bytes;
+	private int start;
+	private int length;
+
+	AsciiCharSequence() {
+	}
+
+	AsciiCharSequence(byte[] bytes, int start, int length) {
+		reset(bytes, start, length);
+	}
+
+	AsciiCharSequence reset(byte[] bytes, int start, int length) {
+		this.bytes = bytes;
+		this.start = start;
+		this.length = length;
+		return this;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + " is out of [0, " + length + ")");
+		}
+		return (char) bytes[start + index];
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if (from < 0 || to > length || from > to) {
+			throw new IndexOutOfBoundsException("Illegal range: [" + from + ", " + to + ")");
+		}
+		return new AsciiCharSequence(bytes, start + from, to - from);
+	}
+
+	@Override
+	public String toString() {
+		return new String(bytes, start, length, ASCII);
+	}
+}
@@ -0,0 +1,227 @@
+package org.smltools.grepp.processors;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import org.smltools.grepp.output.SplittableOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * Reads a file entry by entry without decoding it. <br>
+ * Lines are scanned in a reusable byte buffer, and entry starts are checked on {@link AsciiCharSequence} views of them; an entry is returned as a view as well. <br>
+ * Lines are decoded to Strings only if asked for (see {@link #getLines()}), i.e. only for the entries which could pass the filters. <br>
+ * Lines with non-ASCII bytes or '\r' can't be viewed as is, so they (and the entries containing them) are decoded right away. <br>
+ * Lines are split by '\n', so it works for ASCII-compatible charsets only, as {@link MappedFileLineSource} does.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class ByteEntrySource implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ByteEntrySource.class);
+	public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	private final RandomAccessFile file;
+	private final Charset charset;
+	private final long end;
+	private final AsciiCharSequence lineView = new AsciiCharSequence();
+	private final AsciiCharSequence entryView = new AsciiCharSequence();
+
+	private byte[] buffer;
+	private long bufferStart; //file offset of buffer[0]
+	private int limit = 0;
+	private boolean isRead = false; //i.e. the buffer has everything up to the end
+
+	private int pos = 0; //start of the next line
+	private int entryStart = 0;
+	private int[] lineEnds = new int[16]; //relative to entryStart, without '\n'
+	private int lineCount = 0;
+	private boolean isEntryAscii = true;
+
+	/**
+	 * Creates a source for the [start, end) byte range of the file.
+	 *
+	 * @param file File to read
+	 * @param charset Charset to decode lines with
+	 * @param bufferSize initial buffer size; it grows if an entry doesn't fit
+	 * @param start offset of the first byte to read; is supposed to be a line start
+	 * @param end offset after the last byte to read; negative means the end of file
+	 * @throws IOException
+	 */
+	public ByteEntrySource(File file, Charset charset, int bufferSize, long start, long end) throws IOException {
+		if (file == null || charset == null) {
+			throw new IllegalArgumentException("File and charset shouldn't be null: " + (file != null) + ";" + (charset != null));
+		}
+
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size should be positive: " + bufferSize);
+		}
+
+		if (start < 0L || (end >= 0L && end < start)) {
+			throw new IllegalArgumentException("Illegal range: [" + start + ", " + end + ")");
+		}
+
+		this.file = new RandomAccessFile(file, "r");
+		this.charset = charset;
+		this.end = end >= 0L ? Math.min(end, this.file.length()) : this.file.length();
+		this.buffer = new byte[bufferSize];
+		this.bufferStart = Math.min(start, this.end);
+	}
+
+	/**
+	 * Reads the next entry, i.e. the next line and all the following ones up to a line which the output considers an entry start.
+	 *
+	 * @param output SplittableOutput telling the entry starts
+	 * @return entry lines joined by '\n', as a view valid until the next call; or null if the range is exhausted
+	 * @throws IOException
+	 */
+	public CharSequence nextEntry(SplittableOutput output) throws IOException {
+		entryStart = pos;
+		lineCount = 0;
+		isEntryAscii = true;
+		while (true) {
+			int lineStart = pos;
+			int newLineIdx = -1;
+			boolean isAscii = true;
+			int i = lineStart;
+			while (true) {
+				byte[] buffer = this.buffer;
+				int limit = this.limit;
+				for (; i < limit; i++) {
+					byte b = buffer[i];
+					if (b == '\n') {
+						newLineIdx = i;
+						break;
+					}
+					if (b < 0 || b == '\r') {
+						isAscii = false;
+					}
+				}
+				if (newLineIdx >= 0 || isRead) {
+					break;
+				}
+				int shift = fill();
+				lineStart -= shift;
+				i -= shift;
+			}
+
+			int lineEnd = newLineIdx >= 0 ? newLineIdx : limit;
+			if (lineEnd == lineStart && newLineIdx < 0) { //nothing is left
+				break;
+			}
+
+			if (lineCount > 0 && isEntryStart(output, lineStart, lineEnd, isAscii)) {
+				break; //it's read again as the first line of the next entry
+			}
+
+			addLine(lineEnd - entryStart, isAscii);
+			pos = newLineIdx >= 0 ? newLineIdx + 1 : limit;
+		}
+
+		if (lineCount == 0) {
+			return null;
+		}
+
+		if (isEntryAscii) {
+			return entryView.reset(buffer, entryStart, lineEnds[lineCount - 1]);
+		}
+		StringBuilder entry = new StringBuilder();
+		for (String line : getLines()) {
+			if (entry.length() > 0) {
+				entry.append('\n');
+			}
+			entry.append(line);
+		}
+		return entry;
+	}
+
+	private boolean isEntryStart(SplittableOutput output, int lineStart, int lineEnd, boolean isAscii) {
+		return output.isEntryStart(isAscii ? lineView.reset(buffer, lineStart, lineEnd - lineStart) : decode(lineStart, lineEnd));
+	}
+
+	private void addLine(int lineEnd, boolean isAscii) {
+		if (lineCount == lineEnds.length) {
+			int[] grownEnds = new int[lineCount * 2];
+			System.arraycopy(lineEnds, 0, grownEnds, 0, lineCount);
+			lineEnds = grownEnds;
+		}
+		lineEnds[lineCount] = lineEnd;
+		lineCount++;
+		isEntryAscii &= isAscii;
+	}
+
+	/**
+	 * Decodes lines of the last read entry.
+	 *
+	 * @return decoded lines, without line terminators
+	 */
+	public List<String> getLines() {
+		List<String> lines = new ArrayList<String>(lineCount);
+		int lineStart = entryStart;
+		for (int i = 0; i < lineCount; i++) {
+			int lineEnd = entryStart + lineEnds[i];
+			lines.add(decode(lineStart, lineEnd));
+			lineStart = lineEnd + 1;
+		}
+		return lines;
+	}
+
+	/**
+	 *
+	 * @return number of lines in the last read entry
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	private String decode(int start, int end) {
+		int length = end - start;
+		if (length > 0 && buffer[end - 1] == '\r') {
+			length--;
+		}
+		return new String(buffer, start, length, charset);
+	}
+
+	/**
+	 * Reads more bytes to the buffer. Bytes before the current entry are dropped; if there are none, the buffer is grown.
+	 *
+	 * @return number of bytes the buffer content was shifted by
+	 */
+	private int fill() throws IOException {
+		int shift = entryStart;
+		if (shift > 0) {
+			System.arraycopy(buffer, shift, buffer, 0, limit - shift);
+			bufferStart += shift;
+			limit -= shift;
+			pos -= shift;
+			entryStart = 0;
+		}
+		else if (limit == buffer.length) {
+			if (buffer.length > Integer.MAX_VALUE / 2) {
+				throw new IOException("Entry at offset " + bufferStart + " is longer than " + buffer.length + " bytes");
+			}
+			byte[] grown = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, grown, 0, limit);
+			buffer = grown;
+			LOGGER.debug("Buffer is grown to {} bytes", buffer.length);
+		}
+
+		int toRead = (int) Math.min((long) (buffer.length - limit), end - bufferStart - limit);
+		file.seek(bufferStart + limit);
+		file.readFully(buffer, limit, toRead);
+		limit += toRead;
+		isRead = bufferStart + limit >= end;
+		return shift;
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		file.close();
+	}
+}
@@ -0,0 +1,312 @@
+package org.smltools.grepp.processors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+import org.smltools.grepp.output.SeekableOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * Sparse index of a log file: byte offset and date of every Nth dated entry. <br>
+ * It's valid for the file of the same path, head bytes and entry dates key (see {@link SeekableOutput#getEntryDatesKey()}); <br>
+ * if the file grew since the index was made, only the appended tail is indexed. Offsets are entry starts, so they are safe to start or split processing at. <br>
+ * An index file is looked up and stored under a lock of its own, so the same file could be indexed from several threads (e.g. for -par); a loaded index is read-only.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class EntryIndex {
+	private static final Logger LOGGER = LoggerFactory.getLogger(EntryIndex.class);
+	public static final int DEFAULT_INTERVAL = 1000;
+	private static final int VERSION = 1;
+	private static final int HEAD_SIZE = 4096;
+	private static final int SCAN_WINDOW_SIZE = 16 * 1024 * 1024;
+	private static final ConcurrentMap<String, Object> INDEX_FILE_LOCKS = new ConcurrentHashMap<String, Object>();
+
+	private final String path;
+	private final String key;
+	private final int interval;
+	private long size = 0L;
+	private long lastModified = 0L;
+	private long headChecksum = 0L;
+	private int count = 0;
+	private long[] offsets = new long[16];
+	private long[] times = new long[16];
+
+	private EntryIndex(String path, String key, int interval) {
+		this.path = path;
+		this.key = key;
+		this.interval = interval;
+	}
+
+	/**
+	 * Makes an up to date index of a file; i.e. loads it from the index dir, indexes what was appended to the file, and saves it back if anything changed. <br>
+	 * An index which can't be read is rebuilt, and an index which can't be written is used for this run only.
+	 *
+	 * @param indexDir directory to keep index files in
+	 * @param file File to index
+	 * @param output SeekableOutput to get entry dates by
+	 * @param interval index every interval'th dated entry
+	 * @return EntryIndex for the file
+	 * @throws IOException if the file can't be read
+	 */
+	public static EntryIndex forFile(File indexDir, File file, SeekableOutput output, int interval) throws IOException {
+		if (indexDir == null || file == null || output == null) {
+			throw new IllegalArgumentException("Index dir, file and output shouldn't be null: " + (indexDir != null) + ";" + (file != null) + ";" + (output != null));
+		}
+
+		if (interval < 1) {
+			throw new IllegalArgumentException("Interval should be positive: " + interval);
+		}
+
+		String path = file.getCanonicalPath();
+		File indexFile = new File(indexDir, indexFileName(path));
+		synchronized (lockOf(indexFile)) {
+			return forFile(indexFile, path, file, output, interval);
+		}
+	}
+
+	private static Object lockOf(File indexFile) {
+		String lockKey = indexFile.getAbsolutePath();
+		Object lock = INDEX_FILE_LOCKS.get(lockKey);
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = INDEX_FILE_LOCKS.putIfAbsent(lockKey, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
+	private static EntryIndex forFile(File indexFile, String path, File file, SeekableOutput output, int interval) throws IOException {
+		String key = output.getEntryDatesKey();
+		EntryIndex index = load(indexFile, path, key, interval);
+		if (index != null && (index.size > file.length() || index.headChecksum != headChecksum(file, index.size))) {
+			LOGGER.debug("{} was replaced since it was indexed", path);
+			index = null;
+		}
+
+		if (index == null) {
+			LOGGER.debug("Indexing {} from the start", path);
+			index = new EntryIndex(path, key, interval);
+		}
+		else if (index.size == file.length() && index.lastModified == file.lastModified()) {
+			LOGGER.debug("Index of {} is up to date", path);
+			return index;
+		}
+		else {
+			LOGGER.debug("Indexing {} from {}", path, index.size);
+		}
+
+		index.update(file, output);
+		try {
+			index.save(indexFile);
+		}
+		catch (IOException e) {
+			LOGGER.warn("Can't save index of {} to {}: {}", path, indexFile, e.getMessage());
+		}
+		return index;
+	}
+
+	/**
+	 * Indexes the file from the last indexed entry up to the end.
+	 */
+	private void update(File file, SeekableOutput output) throws IOException {
+		long length = file.length();
+		long modified = file.lastModified();
+		long start = count > 0 ? offsets[count - 1] : 0L;
+		int entries = 0;
+		MappedFileLineSource lines = new MappedFileLineSource(file, Charset.defaultCharset(), SCAN_WINDOW_SIZE, start, length);
+		try {
+			long position = lines.getPosition();
+			String line;
+			while ((line = lines.readLine()) != null) {
+				Date entryDate = output.getEntryDate(line);
+				if (entryDate != null) {
+					if (entries % interval == 0 && (count == 0 || position != offsets[count - 1])) { //the last indexed entry is met again
+						add(position, entryDate.getTime());
+					}
+					entries++;
+				}
+				position = lines.getPosition();
+			}
+		}
+		finally {
+			lines.close();
+		}
+		size = length;
+		lastModified = modified;
+		headChecksum = headChecksum(file, length);
+	}
+
+	private void add(long offset, long time) {
+		if (count == offsets.length) {
+			offsets = grow(offsets);
+			times = grow(times);
+		}
+		offsets[count] = offset;
+		times[count] = time;
+		count++;
+	}
+
+	private static long[] grow(long[] array) {
+		long[] grown = new long[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	/**
+	 *
+	 * @param date Date to look for
+	 * @return offset of the last indexed entry dated before the date; 0 if there is none
+	 */
+	public long floorOffset(Date date) {
+		long time = date.getTime();
+		int low = 0;
+		int high = count - 1;
+		long result = 0L;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (times[middle] < time) {
+				result = offsets[middle];
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param from offset to look from
+	 * @return offset of the first indexed entry at or after the given offset; -1 if there is none
+	 */
+	public long ceilingOffset(long from) {
+		int idx = Arrays.binarySearch(offsets, 0, count, from);
+		if (idx < 0) {
+			idx = -idx - 1;
+		}
+		return idx < count ? offsets[idx] : -1L;
+	}
+
+	/**
+	 *
+	 * @return size of the file when it was indexed
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	private static EntryIndex load(File indexFile, String path, String key, int interval) {
+		if (!indexFile.exists()) {
+			return null;
+		}
+
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				if (in.readInt() != VERSION || !path.equals(in.readUTF()) || !key.equals(in.readUTF()) || in.readInt() != interval) {
+					LOGGER.debug("Index {} was made for another file or config", indexFile);
+					return null;
+				}
+				EntryIndex index = new EntryIndex(path, key, interval);
+				index.size = in.readLong();
+				index.lastModified = in.readLong();
+				index.headChecksum = in.readLong();
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					index.add(in.readLong(), in.readLong());
+				}
+				return index;
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			LOGGER.debug("Can't read index {}: {}", indexFile, e.getMessage());
+			return null;
+		}
+	}
+
+	private void save(File indexFile) throws IOException {
+		File dir = indexFile.getParentFile();
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Can't create " + dir);
+		}
+
+		File tmpFile = File.createTempFile(indexFile.getName(), ".tmp", dir); //a concurrent run could be writing the same index
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+		try {
+			out.writeInt(VERSION);
+			out.writeUTF(path);
+			out.writeUTF(key);
+			out.writeInt(interval);
+			out.writeLong(size);
+			out.writeLong(lastModified);
+			out.writeLong(headChecksum);
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				out.writeLong(offsets[i]);
+				out.writeLong(times[i]);
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		//written aside and renamed, so a concurrent run doesn't read a half-written index
+		if ((indexFile.exists() && !indexFile.delete()) || !tmpFile.renameTo(indexFile)) {
+			tmpFile.delete();
+			throw new IOException("Can't replace " + indexFile);
+		}
+	}
+
+	private static String indexFileName(String path) {
+		CRC32 crc = new CRC32();
+		byte[] bytes = path.getBytes(Charset.forName("UTF-8"));
+		crc.update(bytes, 0, bytes.length);
+		String name = new File(path).getName().replaceAll("[^\\w.-]", "_");
+		return String.format("%s.%08x.idx", name, crc.getValue());
+	}
+
+	/**
+	 * Checksum of the file head, to tell a rotated (replaced) file from a grown one.
+	 *
+	 * @param size size of the file when the checksum was made, if the head was shorter than HEAD_SIZE then
+	 */
+	private static long headChecksum(File file, long size) throws IOException {
+		RandomAccessFile data = new RandomAccessFile(file, "r");
+		try {
+			byte[] head = new byte[(int) Math.min(Math.min((long) HEAD_SIZE, size), data.length())];
+			data.readFully(head);
+			CRC32 crc = new CRC32();
+			crc.update(head, 0, head.length);
+			return crc.getValue();
+		}
+		finally {
+			data.close();
+		}
+	}
+}
@@ -0,0 +1,277 @@
+package org.smltools.grepp.processors
+
+import groovy.util.logging.Slf4j;
+
+import java.nio.charset.Charset
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardWatchEventKinds
+import java.nio.file.WatchEvent
+import java.nio.file.WatchKey
+import java.nio.file.WatchService
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.concurrent.TimeUnit
+import org.smltools.grepp.filters.enums.Event
+import org.smltools.grepp.output.GreppOutput
+import org.smltools.grepp.output.RefreshableOutput
+import org.smltools.grepp.exceptions.*
+
+/**
+ * Follows text files in the way 'tail -f' does, i.e. filters the lines as they are appended to the files. <br>
+ * Files are read from the start, and then it waits for file system notifications (see {@link WatchService}) instead of polling. <br>
+ * Rotation is detected by the file key (inode) and size: a renamed file is read to its end and the new one is read from the start; a truncated (copytruncate) file is read from the start. <br>
+ * Since an entry is passed further only when the next one starts, ENTRY_ENDED is sent after idleTimeout without new lines; it flushes the pending entry, while open threads are kept, so they aren't split by pauses. <br>
+ * Following lasts until the thread is interrupted, until filtering is interrupted for all the files, or until the output's result limit is reached.
+ *
+ * @author Alexander Semelit
+ *
+ */
+@Slf4j("LOGGER")
+public class FileFollower {
+    public static final long DEFAULT_IDLE_TIMEOUT = 500L;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final byte LF = 10;
+    private static final byte CR = 13;
+
+    private final GreppOutput<String> output
+    private final boolean isMerging
+    private final long idleTimeout
+    private final Charset charset = Charset.defaultCharset()
+    private final byte[] buffer = new byte[READ_BUFFER_SIZE]
+
+    private FollowedFile current = null
+    private boolean hasPending = false //an entry could be pending in the filters
+    private boolean hasChunk = false //lines were printed since the chunk was ended
+    private long lastLineTime = 0L
+
+    public FileFollower(GreppOutput<String> output, boolean isMerging, long idleTimeout) {
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("Idle timeout should be positive: " + idleTimeout)
+        }
+        this.output = output
+        this.isMerging = isMerging
+        this.idleTimeout = idleTimeout
+    }
+
+	/**
+	 * Follows given files until interrupted. Files are switched as in sequential processing, i.e. by CHUNK_ENDED (unless merging) and filters refreshing.
+	 *
+	 * @param files Files to follow
+	 */
+    public void follow(List<File> files) {
+        WatchService watcher = FileSystems.getDefault().newWatchService()
+        List<FollowedFile> followed = new ArrayList<FollowedFile>()
+        try {
+            Set<Path> dirs = new HashSet<Path>()
+            for (File file : files) {
+                FollowedFile followedFile = new FollowedFile(file)
+                Path dir = followedFile.path.getParent()
+                if (dirs.add(dir)) {
+                    dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY)
+                }
+                followed.add(followedFile)
+            }
+
+            checkAll(followed)
+            while (!followed.isEmpty()) {
+                long timeout = hasPending ? Math.max(1L, lastLineTime + idleTimeout - System.currentTimeMillis()) : idleTimeout
+                WatchKey key = watcher.poll(timeout, TimeUnit.MILLISECONDS)
+                if (key != null) {
+                    Set<Path> changed = new HashSet<Path>()
+                    boolean isOverflowed = false
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            isOverflowed = true
+                        }
+                        else {
+                            changed.add(((Path) key.watchable()).resolve((Path) event.context()))
+                        }
+                    }
+                    key.reset()
+                    checkAll(isOverflowed ? followed : followed.findAll { changed.contains(it.path) })
+                }
+                else {
+                    checkAll(followed) //events could be missed, or delivered with a delay by a polling WatchService
+                }
+                followed.removeAll { it.isInterrupted }
+
+                if (hasPending && System.currentTimeMillis() - lastLineTime >= idleTimeout) {
+                    LOGGER.trace("No new lines for {} ms; flushing the pending entry", idleTimeout)
+                    endEntry()
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            LOGGER.debug("Following is interrupted")
+        }
+        catch (ResultLimitReachedException e) {
+            LOGGER.info("{}; following is stopped", e.getMessage())
+        }
+        finally {
+            endChunk()
+            followed*.close()
+            watcher.close()
+        }
+    }
+
+    private void checkAll(List<FollowedFile> files) {
+        for (FollowedFile file : files) {
+            if (!file.isInterrupted) {
+                check(file)
+            }
+        }
+    }
+
+	/**
+	 * Reads appended lines of a file, checking first if it was rotated.
+	 *
+	 * @param file FollowedFile to check
+	 */
+    private void check(FollowedFile file) {
+        Object fileKey
+        try {
+            fileKey = Files.readAttributes(file.path, BasicFileAttributes.class).fileKey()
+        }
+        catch (NoSuchFileException e) {
+            LOGGER.trace("{} doesn't exist at the moment", file.path)
+            read(file) //it was moved away; reading what's left until the new one is created
+            return
+        }
+
+        if (file.data == null) {
+            LOGGER.info("File {} started", file.path)
+            file.open(fileKey)
+        }
+        else if (fileKey != null && !fileKey.equals(file.fileKey)) {
+            read(file)
+            if (file.carry.size() > 0) {
+                printLine(file, 0, 0) //the old file won't be ended anymore
+            }
+            LOGGER.info("File {} was rotated; following the new one", file.path)
+            file.close()
+            file.open(fileKey)
+            endChunk()
+        }
+        else if (file.data.length() < file.position) {
+            LOGGER.info("File {} was truncated; following from the start", file.path)
+            file.position = 0L
+            file.carry.reset()
+            endChunk()
+        }
+        read(file)
+    }
+
+    private void read(FollowedFile file) {
+        if (file.data == null || file.isInterrupted) return
+
+        try {
+            int read
+            while ((read = file.read(buffer)) > 0) {
+                int lineStart = 0
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == LF) {
+                        printLine(file, lineStart, i)
+                        lineStart = i + 1
+                    }
+                }
+                file.carry.write(buffer, lineStart, read - lineStart) //incomplete line is printed once it's ended
+            }
+        }
+        catch (ResultLimitReachedException e) {
+            throw e
+        }
+        catch (FilteringIsInterruptedException e) {
+            LOGGER.info("No point to follow {} further as identified by filter chain", file.path)
+            file.isInterrupted = true
+            file.close()
+            endChunk()
+        }
+    }
+
+    private void printLine(FollowedFile file, int start, int end) {
+        String line
+        if (file.carry.size() > 0) {
+            file.carry.write(buffer, start, end - start)
+            byte[] bytes = file.carry.toByteArray()
+            file.carry.reset()
+            line = decode(bytes, 0, bytes.length)
+        }
+        else {
+            line = decode(buffer, start, end - start)
+        }
+
+        if (current != file) {
+            if (!isMerging) {
+                endChunk()
+            }
+            if (output instanceof RefreshableOutput) {
+                output.refreshFilters(file.path.getFileName().toString())
+            }
+            current = file
+        }
+        output.print(line)
+        hasPending = true
+        hasChunk = true
+        lastLineTime = System.currentTimeMillis()
+    }
+
+    private String decode(byte[] bytes, int start, int length) {
+        if (length > 0 && bytes[start + length - 1] == CR) {
+            length--
+        }
+        return new String(bytes, start, length, charset)
+    }
+
+    private void endEntry() {
+        if (hasPending) {
+            output.processEvent(Event.ENTRY_ENDED)
+            hasPending = false
+        }
+    }
+
+    private void endChunk() {
+        if (hasChunk) {
+            output.processEvent(Event.CHUNK_ENDED)
+            hasChunk = false
+            hasPending = false
+        }
+    }
+
+    private static class FollowedFile {
+        final Path path
+        final ByteArrayOutputStream carry = new ByteArrayOutputStream()
+        RandomAccessFile data //not a FileChannel, as reading it is not interruptible
+        Object fileKey
+        long position = 0L
+        boolean isInterrupted = false
+
+        FollowedFile(File file) {
+            this.path = file.getAbsoluteFile().toPath()
+        }
+
+        void open(Object fileKey) {
+            this.data = new RandomAccessFile(path.toFile(), "r")
+            this.fileKey = fileKey
+            this.position = 0L
+            this.carry.reset()
+        }
+
+        int read(byte[] buffer) {
+            data.seek(position)
+            int read = data.read(buffer)
+            if (read > 0) {
+                position += read
+            }
+            return read
+        }
+
+        void close() {
+            if (data != null) {
+                data.close()
+                data = null
+            }
+        }
+    }
+}
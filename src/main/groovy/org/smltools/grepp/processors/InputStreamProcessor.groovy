@@ -2,41 +2,83 @@ package org.smltools.grepp.processors
 
 import java.io.File;
 import java.io.InputStream
+import java.nio.charset.Charset
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
 import org.smltools.grepp.filters.enums.Event
 import org.smltools.grepp.filters.FilterBase;
+import org.smltools.grepp.output.BatchableOutput
+import org.smltools.grepp.output.ForkableOutput
 import org.smltools.grepp.output.GreppOutput;
+import org.smltools.grepp.output.SplittableOutput
 import org.smltools.grepp.processors.DataProcessor;
 
 import groovy.util.logging.Slf4j;
 import org.smltools.grepp.exceptions.*
 
 /**
- * Simple processor to process a given InputStream
- * 
+ * Simple processor to process a given InputStream. <br>
+ * With several threads the stream is processed by a pipeline (see {@link #processInPipeline(InputStream)}), if the output allows it.
+ *
  * @author Alexander Semelit
  *
  */
 
 @Slf4j("LOGGER")
 public class InputStreamProcessor implements DataProcessor<InputStream> {
+	public static final int DEFAULT_BATCH_LINES = 16 * 1024
 
 	GreppOutput<String> output
-	
+	private int threads = 1
+	private int batchLines = DEFAULT_BATCH_LINES
+
 	public InputStreamProcessor(GreppOutput<String> output) {
 		this.output = output
 	}
-	
+
+	/**
+	 * Enables pipelined processing of the stream when it's greater than 1; i.e. entry batches are filtered in that many threads.
+	 *
+	 * @param threads number of filtering threads
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Threads number should be positive: " + threads)
+		}
+		this.threads = threads
+		LOGGER.trace("Threads: {}", threads)
+	}
+
+	/**
+	 * Sets the size of an entry batch for pipelined processing. A batch is ended by the first entry start after that many lines.
+	 *
+	 * @param batchLines number of lines
+	 */
+	public void setBatchLines(int batchLines) {
+		if (batchLines < 1) {
+			throw new IllegalArgumentException("Batch lines number should be positive: " + batchLines)
+		}
+		this.batchLines = batchLines
+		LOGGER.trace("Batch lines: {}", batchLines)
+	}
+
 	/**
 	 * Method which does processing of one portion of data, which contains lines. <br>
 	 * It is considered to be an InputSream.
-	 * 
+	 *
 	 * @param data InputStream containing the data to process
 	 */
     protected void processStream(InputStream data) {
         def curLine = 0
         GreppOutput output = output //shadowing to get rid of GetEffectivePogo in the loop
-		
+
         try {
             data.eachLine { String line ->
                 LOGGER.trace("curLine: {}", curLine)
@@ -52,15 +94,185 @@ public class InputStreamProcessor implements DataProcessor<InputStream> {
         LOGGER.info("Stream ended. Lines processed: {}", curLine)
     }
 
+	/**
+	 * Processes the stream in stages running concurrently: <br>
+	 * 1. lines are read and decoded by a read-ahead thread (see {@link ReadAheadLineSource}); <br>
+	 * 2. lines are gathered into batches of whole entries by the output's entry starts (see {@link SplittableOutput}) on the calling thread; <br>
+	 * 3. each batch is filtered in its own forked output (see {@link ForkableOutput}) by a pool of threads; <br>
+	 * 4. forked results are joined to the output in the batch order by a separate thread. <br>
+	 * Stages are connected by bounded queues, so at most threads*2 batches are in flight. If filtering of a batch was interrupted, the following batches are discarded. <br>
+	 * It's done only if the output says the entries are filtered independently, and can be forked; otherwise the stream is processed sequentially.
+	 *
+	 * @param data InputStream containing the data to process
+	 * @return false if the stream wasn't processed, as the output can't be forked
+	 */
+    protected boolean processInPipeline(InputStream data) {
+        if (!(output instanceof SplittableOutput) || !output.isSplittable() || !(output instanceof ForkableOutput)) {
+            return false
+        }
+        GreppOutput<String> firstForked = output.fork()
+        if (firstForked == null) {
+            return false
+        }
+
+        LOGGER.debug("Processing the stream in a pipeline with {} filtering threads", threads)
+        ExecutorService executor = Executors.newFixedThreadPool(threads)
+        StreamJoiner joiner = new StreamJoiner(output, threads * 2)
+        LineSource lines = new ReadAheadLineSource(new ReaderLineSource(data, Charset.defaultCharset()), "stdin")
+        long curLine = 0
+        try {
+            GreppOutput<String> forked = firstForked
+            List<String> batch = new ArrayList<String>(batchLines)
+            String line
+            while (!joiner.isInterrupted() && (line = lines.readLine()) != null) {
+                curLine++
+                if (batch.size() >= batchLines && output.isEntryStart(line)) {
+                    joiner.put(submitBatch(executor, batch, line, forked))
+                    batch = new ArrayList<String>(batchLines)
+                    forked = output.fork()
+                }
+                batch.add(line)
+            }
+            if (!joiner.isInterrupted()) {
+                joiner.put(submitBatch(executor, batch, null, forked))
+            }
+            joiner.finish()
+        }
+        finally {
+            joiner.stop()
+            executor.shutdownNow()
+            lines.close()
+        }
+
+        if (joiner.isInterrupted()) {
+            LOGGER.trace("No point to read stream further as identified by filter chain")
+        }
+        LOGGER.info("Stream ended. Lines processed: {}", curLine)
+        return true
+    }
+
+	/**
+	 * Filters a batch of entries in the forked output. If it's not the last batch, the last pending entry is ended by the next batch start (see {@link SplittableOutput#endPart(String)}).
+	 */
+    private static StreamPart submitBatch(ExecutorService executor, List<String> batch, String nextEntryStart, GreppOutput<String> forked) {
+        //FutureTask, since a Closure is both Runnable and Callable and submit() would be ambiguous
+        FutureTask<Boolean> task = new FutureTask<Boolean>({
+            try {
+                if (forked instanceof BatchableOutput) {
+                    forked.printBatch(batch.toArray(new String[batch.size()]), batch.size())
+                }
+                else {
+                    for (String line : batch) {
+                        forked.print(line)
+                    }
+                }
+                if (nextEntryStart != null) {
+                    forked.endPart(nextEntryStart)
+                }
+                else {
+                    forked.processEvent(Event.CHUNK_ENDED)
+                }
+            }
+            catch(FilteringIsInterruptedException e) {
+                return true
+            }
+            return false
+        } as Callable<Boolean>)
+        executor.execute(task)
+        return new StreamPart(forked, task)
+    }
+
 	@Override
 	public void process(InputStream data) {
-		if (data == null || data.available() == 0) {
-			LOGGER.trace("No stream was given ot it is empty")
+		if (data == null) {
+			LOGGER.trace("No stream was given")
 			return
 		}
 
-		processStream(data)
+		if (threads < 2 || !processInPipeline(data)) {
+			processStream(data)
+		}
 		output.processEvent(Event.ALL_CHUNKS_PROCESSED)
 		output.close()
 	}
+
+    private static class StreamPart {
+        static final StreamPart END = new StreamPart(null, null)
+
+        final GreppOutput<String> output
+        final Future<Boolean> result
+
+        StreamPart(GreppOutput<String> output, Future<Boolean> result) {
+            this.output = output
+            this.result = result
+        }
+    }
+
+	/**
+	 * The last stage of the pipeline: joins filtered batches to the output in the order they were put. <br>
+	 * Once a batch was interrupted, the rest are cancelled. A failure of a batch is rethrown by {@link #finish()}.
+	 */
+    private static class StreamJoiner {
+        private final GreppOutput<String> output
+        private final BlockingQueue<StreamPart> pending
+        private final Thread thread
+        private volatile boolean isInterrupted = false
+        private volatile Throwable failure = null
+
+        StreamJoiner(GreppOutput<String> output, int capacity) {
+            this.output = output
+            this.pending = new ArrayBlockingQueue<StreamPart>(capacity)
+            this.thread = new Thread({ joinParts() } as Runnable, "grepp-stdin-output")
+            this.thread.setDaemon(true)
+            this.thread.start()
+        }
+
+        boolean isInterrupted() {
+            return isInterrupted || failure != null
+        }
+
+        void put(StreamPart part) {
+            pending.put(part)
+        }
+
+        private void joinParts() {
+            try {
+                StreamPart part
+                while ((part = pending.take()) != StreamPart.END) {
+                    if (isInterrupted()) {
+                        part.result.cancel(true)
+                        continue
+                    }
+                    try {
+                        isInterrupted = part.result.get()
+                        output.join(part.output)
+                    }
+                    catch (ExecutionException ee) {
+                        failure = ee.getCause()
+                    }
+                    catch (Throwable t) {
+                        failure = t //the rest are still taken, so nobody waits for the queue
+                    }
+                }
+            }
+            catch (InterruptedException ie) {
+                //stopped; the rest is discarded
+            }
+        }
+
+        /**
+         * Waits for all the put batches to be joined.
+         */
+        void finish() {
+            pending.put(StreamPart.END)
+            thread.join()
+            if (failure != null) {
+                throw failure
+            }
+        }
+
+        void stop() {
+            thread.interrupt()
+        }
+    }
 }
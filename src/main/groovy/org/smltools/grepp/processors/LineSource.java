@@ -0,0 +1,21 @@
+package org.smltools.grepp.processors;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ *
+ * Abstraction for anything which can supply text line by line. <br>
+ * Lines are returned without line terminators, in the same way as {@link java.io.BufferedReader#readLine()} does.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public interface LineSource extends Closeable {
+	/**
+	 *
+	 * @return next line, or null if the source is exhausted
+	 * @throws IOException
+	 */
+	String readLine() throws IOException;
+}
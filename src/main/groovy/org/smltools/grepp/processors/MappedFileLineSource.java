@@ -0,0 +1,161 @@
+package org.smltools.grepp.processors;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * LineSource which reads a file through a memory-mapped window of a {@link FileChannel}. <br>
+ * Newlines are searched directly in the mapped bytes, so only the found line is copied and decoded. <br>
+ * Files bigger than the window (and than 2 GB) are handled by remapping the window at the start of the current line. <br>
+ * Lines are split by '\n', and a trailing '\r' is dropped, i.e. it works for ASCII-compatible charsets only (UTF-8, ISO-8859-*, windows-125*). <br>
+ * It can read a byte range of a file as well; the range is supposed to start at a line start.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class MappedFileLineSource implements LineSource {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MappedFileLineSource.class);
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long end;
+	private final Charset charset;
+	private int windowSize;
+
+	private MappedByteBuffer window;
+	private long windowStart = 0L;
+	private int windowLimit = 0;
+	private int pos = 0;
+	private byte[] lineBytes = new byte[1024];
+
+	public MappedFileLineSource(File file) throws IOException {
+		this(file, Charset.defaultCharset(), DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedFileLineSource(File file, Charset charset, int windowSize) throws IOException {
+		this(file, charset, windowSize, 0L, -1L);
+	}
+
+	/**
+	 * Creates a source for the [start, end) byte range of the file.
+	 *
+	 * @param file File to read
+	 * @param charset Charset to decode lines with
+	 * @param windowSize initial size of a mapped window
+	 * @param start offset of the first byte to read
+	 * @param end offset after the last byte to read; negative means the end of file
+	 * @throws IOException
+	 */
+	public MappedFileLineSource(File file, Charset charset, int windowSize, long start, long end) throws IOException {
+		if (file == null || charset == null) {
+			throw new IllegalArgumentException("File and charset shouldn't be null: " + (file != null) + ";" + (charset != null));
+		}
+
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size should be positive: " + windowSize);
+		}
+
+		if (start < 0L || (end >= 0L && end < start)) {
+			throw new IllegalArgumentException("Illegal range: [" + start + ", " + end + ")");
+		}
+
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.end = end >= 0L ? Math.min(end, channel.size()) : channel.size();
+		this.charset = charset;
+		this.windowSize = windowSize;
+		map(Math.min(start, this.end));
+	}
+
+	/**
+	 * Maps a new window starting from the given absolute file offset.
+	 *
+	 * @param start absolute offset in the file
+	 * @throws IOException
+	 */
+	private void map(long start) throws IOException {
+		windowStart = start;
+		windowLimit = (int) Math.min((long) windowSize, end - start);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowLimit);
+		pos = 0;
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("Mapped window [{}, {})", windowStart, windowStart + windowLimit);
+		}
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if (windowStart + pos >= end) {
+			return null;
+		}
+
+		int newLineIdx = findNewLine(pos);
+		while (newLineIdx < 0 && windowStart + windowLimit < end) { //line doesn't fit into the window
+			if (pos == 0) { //the line is bigger than the whole window
+				if (windowSize > Integer.MAX_VALUE / 2) {
+					throw new IOException("Line at offset " + windowStart + " is longer than " + windowSize + " bytes");
+				}
+				windowSize *= 2;
+			}
+			int scanned = windowLimit - pos;
+			map(windowStart + pos);
+			newLineIdx = findNewLine(scanned);
+		}
+
+		int lineEnd = newLineIdx >= 0 ? newLineIdx : windowLimit;
+		int lineLength = lineEnd - pos;
+		if (lineLength > 0 && window.get(lineEnd - 1) == '\r') {
+			lineLength--;
+		}
+
+		String line = decode(pos, lineLength);
+		pos = newLineIdx >= 0 ? newLineIdx + 1 : windowLimit;
+		return line;
+	}
+
+	/**
+	 *
+	 * @return absolute file offset of the next line to be read
+	 */
+	public long getPosition() {
+		return windowStart + pos;
+	}
+
+	private int findNewLine(int from) {
+		MappedByteBuffer window = this.window;
+		int limit = windowLimit;
+		for (int i = from; i < limit; i++) {
+			if (window.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private String decode(int start, int length) {
+		if (length == 0) {
+			return "";
+		}
+
+		if (lineBytes.length < length) {
+			lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+		}
+		window.position(start);
+		window.get(lineBytes, 0, length);
+		return new String(lineBytes, 0, length, charset);
+	}
+
+	@Override
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+}
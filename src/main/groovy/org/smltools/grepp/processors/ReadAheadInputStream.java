@@ -0,0 +1,211 @@
+package org.smltools.grepp.processors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * InputStream which reads its source on a separate daemon thread, a few blocks ahead of the consumer. <br>
+ * It's meant for sources which are expensive to read, like decompressing streams; so the source is read (i.e. inflated) while the consumer does filtering. <br>
+ * Block buffers are recycled, and at most blocks + 1 buffers are allocated. The reader always ends with an EOF block; if the source failed, its failure is rethrown to the consumer after the bytes read before it.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class ReadAheadInputStream extends InputStream {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReadAheadInputStream.class);
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+	public static final int DEFAULT_BLOCKS = 4;
+
+	private final InputStream source;
+	private final BlockingQueue<Block> filled;
+	private final BlockingQueue<byte[]> free;
+	private final Thread reader;
+	private volatile boolean isClosed = false;
+	private volatile Throwable failure = null;
+
+	private Block current;
+	private int pos;
+	private boolean isEof = false;
+
+	public ReadAheadInputStream(InputStream source, String name) {
+		this(source, name, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+	}
+
+	public ReadAheadInputStream(InputStream source, String name, int blockSize, int blocks) {
+		if (source == null) {
+			throw new IllegalArgumentException("Source shouldn't be null");
+		}
+
+		if (blockSize <= 0 || blocks <= 0) {
+			throw new IllegalArgumentException("Block size and blocks number should be positive: " + blockSize + ";" + blocks);
+		}
+
+		this.source = source;
+		this.filled = new ArrayBlockingQueue<Block>(blocks);
+		this.free = new ArrayBlockingQueue<byte[]>(blocks + 1);
+		for (int i = 0; i <= blocks; i++) {
+			free.offer(new byte[blockSize]);
+		}
+
+		this.reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readAhead();
+			}
+		}, "grepp-read-ahead-" + name);
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	private void readAhead() {
+		try {
+			while (!isClosed) {
+				byte[] buffer = free.take();
+				int length = 0;
+				int read = 0;
+				try {
+					while (length < buffer.length && (read = source.read(buffer, length, buffer.length - length)) != -1) {
+						length += read;
+					}
+				}
+				catch (Throwable t) {
+					failure = t; //it's rethrown after the bytes read before it, and the consumer shouldn't wait for more bytes forever
+					read = -1;
+				}
+
+				if (length > 0) {
+					filled.put(new Block(buffer, length));
+				}
+
+				if (read == -1) {
+					return;
+				}
+			}
+		}
+		catch (InterruptedException ie) {
+			LOGGER.trace("Read-ahead is interrupted");
+		}
+		finally {
+			if (!isClosed) {
+				try {
+					filled.put(Block.EOF);
+				}
+				catch (InterruptedException ie) {
+					LOGGER.trace("Read-ahead is interrupted");
+				}
+			}
+
+			try {
+				source.close();
+			}
+			catch (IOException ioe) {
+				LOGGER.debug("Can't close read-ahead source", ioe);
+			}
+		}
+	}
+
+	private boolean ensureData() throws IOException {
+		while (current == null || pos >= current.length) {
+			if (current != null) {
+				free.offer(current.data);
+				current = null;
+			}
+
+			if (isEof || isClosed) {
+				return false;
+			}
+
+			Block block;
+			try {
+				block = filled.take();
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for read-ahead");
+			}
+
+			if (block == Block.EOF) {
+				isEof = true;
+				rethrowFailure();
+				return false;
+			}
+			current = block;
+			pos = 0;
+		}
+		return true;
+	}
+
+	private void rethrowFailure() throws IOException {
+		Throwable failure = this.failure;
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		else if (failure != null) {
+			throw new IOException("Read-ahead failed", failure);
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureData()) {
+			return -1;
+		}
+		return current.data[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+
+		if (!ensureData()) {
+			return -1;
+		}
+
+		int length = Math.min(len, current.length - pos);
+		System.arraycopy(current.data, pos, b, off, length);
+		pos += length;
+		return length;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return current != null ? current.length - pos : 0;
+	}
+
+	/**
+	 * Stops the read-ahead thread; the source is closed by that thread.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!isClosed) {
+			isClosed = true;
+			reader.interrupt();
+		}
+	}
+
+	private static final class Block {
+		static final Block EOF = new Block(null, -1);
+
+		final byte[] data;
+		final int length;
+
+		Block(byte[] data, int length) {
+			this.data = data;
+			this.length = length;
+		}
+	}
+}
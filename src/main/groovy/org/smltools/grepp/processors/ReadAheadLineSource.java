@@ -0,0 +1,251 @@
+package org.smltools.grepp.processors;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * LineSource which reads another LineSource on a separate daemon thread, a few line batches ahead of the consumer. <br>
+ * So reading (and decoding) of lines overlaps with filtering of them instead of taking turns. At most batches + 1 batches of lines are held; batch arrays are recycled. <br>
+ * Time each side spent waiting for the other is counted: if the reader waits, the filters are the bottleneck (i.e. it's CPU-bound); if the consumer waits, it's the reading (i.e. it's I/O-bound). <br>
+ * The source is read and closed by the read-ahead thread only. The reader always ends with an EOF batch; if the source failed, its failure is rethrown to the consumer after the lines read before it.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class ReadAheadLineSource implements LineSource {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReadAheadLineSource.class);
+	public static final int DEFAULT_BATCH_SIZE = 4096;
+	public static final int DEFAULT_BATCHES = 8;
+
+	private final LineSource source;
+	private final String name;
+	private final int batches;
+	private final BlockingQueue<Batch> filled;
+	private final BlockingQueue<String[]> free;
+	private final Thread reader;
+	private volatile boolean isClosed = false;
+	private volatile long readerStallNanos = 0L;
+	private volatile Throwable failure = null;
+
+	private Batch current;
+	private int pos;
+	private boolean isEof = false;
+	private long consumerStallNanos = 0L;
+	private long takes = 0L;
+	private long depthSum = 0L;
+
+	public ReadAheadLineSource(LineSource source, String name) {
+		this(source, name, DEFAULT_BATCH_SIZE, DEFAULT_BATCHES);
+	}
+
+	public ReadAheadLineSource(LineSource source, String name, int batchSize, int batches) {
+		if (source == null) {
+			throw new IllegalArgumentException("Source shouldn't be null");
+		}
+
+		if (batchSize <= 0 || batches <= 0) {
+			throw new IllegalArgumentException("Batch size and batches number should be positive: " + batchSize + ";" + batches);
+		}
+
+		this.source = source;
+		this.name = name;
+		this.batches = batches;
+		this.filled = new ArrayBlockingQueue<Batch>(batches);
+		this.free = new ArrayBlockingQueue<String[]>(batches + 1);
+		for (int i = 0; i <= batches; i++) {
+			free.offer(new String[batchSize]);
+		}
+
+		this.reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				readAhead();
+			}
+		}, "grepp-line-read-ahead-" + name);
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	private void readAhead() {
+		try {
+			while (!isClosed) {
+				long stallStart = System.nanoTime();
+				String[] lines = free.take();
+				readerStallNanos += System.nanoTime() - stallStart;
+
+				int length = 0;
+				String line = null;
+				try {
+					while (length < lines.length && (line = source.readLine()) != null) {
+						lines[length++] = line;
+					}
+				}
+				catch (Throwable t) {
+					failure = t; //it's rethrown after the lines read before it, and the consumer shouldn't wait for more lines forever
+					line = null;
+				}
+
+				stallStart = System.nanoTime();
+				if (length > 0) {
+					filled.put(new Batch(lines, length));
+				}
+
+				if (line == null) {
+					return;
+				}
+				readerStallNanos += System.nanoTime() - stallStart;
+			}
+		}
+		catch (InterruptedException ie) {
+			LOGGER.trace("Line read-ahead is interrupted");
+		}
+		finally {
+			if (!isClosed) {
+				try {
+					filled.put(Batch.EOF);
+				}
+				catch (InterruptedException ie) {
+					LOGGER.trace("Line read-ahead is interrupted");
+				}
+			}
+
+			try {
+				source.close();
+			}
+			catch (IOException ioe) {
+				LOGGER.debug("Can't close read-ahead source", ioe);
+			}
+		}
+	}
+
+	private boolean ensureData() throws IOException {
+		while (current == null || pos >= current.length) {
+			if (current != null) {
+				free.offer(current.lines);
+				current = null;
+			}
+
+			if (isEof || isClosed) {
+				return false;
+			}
+
+			Batch batch;
+			try {
+				depthSum += filled.size();
+				takes++;
+				long stallStart = System.nanoTime();
+				batch = filled.take();
+				consumerStallNanos += System.nanoTime() - stallStart;
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for line read-ahead");
+			}
+
+			if (batch == Batch.EOF) {
+				isEof = true;
+				rethrowFailure();
+				return false;
+			}
+			current = batch;
+			pos = 0;
+		}
+		return true;
+	}
+
+	private void rethrowFailure() throws IOException {
+		Throwable failure = this.failure;
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		else if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		else if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		else if (failure != null) {
+			throw new IOException("Line read-ahead of " + name + " failed", failure);
+		}
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if (!ensureData()) {
+			return null;
+		}
+		String line = current.lines[pos];
+		current.lines[pos++] = null; //so it's not held until the array is reused
+		return line;
+	}
+
+	/**
+	 *
+	 * @return number of filled batches waiting for the consumer right now
+	 */
+	public int getQueueDepth() {
+		return filled.size();
+	}
+
+	/**
+	 *
+	 * @return average number of filled batches, which were waiting when the consumer needed the next one
+	 */
+	public double getAverageQueueDepth() {
+		return takes > 0 ? (double) depthSum / takes : 0.0;
+	}
+
+	/**
+	 *
+	 * @return time the reader waited for the consumer to free a batch, in milliseconds
+	 */
+	public long getReaderStallMillis() {
+		return readerStallNanos / 1000000L;
+	}
+
+	/**
+	 *
+	 * @return time the consumer waited for the reader to fill a batch, in milliseconds
+	 */
+	public long getConsumerStallMillis() {
+		return consumerStallNanos / 1000000L;
+	}
+
+	/**
+	 *
+	 * @return true if the consumer waited for the reader longer than the other way round
+	 */
+	public boolean isReadingBound() {
+		return consumerStallNanos > readerStallNanos;
+	}
+
+	/**
+	 * Stops the read-ahead thread, and logs the stall times; the source is closed by that thread.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!isClosed) {
+			isClosed = true;
+			reader.interrupt();
+			LOGGER.info("Read-ahead of {}: reading waited {} ms, filtering waited {} ms, average queue depth {}/{}; is {}-bound"
+					, name, getReaderStallMillis(), getConsumerStallMillis(), String.format("%.1f", getAverageQueueDepth()), batches, isReadingBound() ? "I/O" : "CPU");
+		}
+	}
+
+	private static final class Batch {
+		static final Batch EOF = new Batch(null, -1);
+
+		final String[] lines;
+		final int length;
+
+		Batch(String[] lines, int length) {
+			this.lines = lines;
+			this.length = length;
+		}
+	}
+}
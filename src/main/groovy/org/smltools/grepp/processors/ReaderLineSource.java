@@ -0,0 +1,39 @@
+package org.smltools.grepp.processors;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ *
+ * LineSource over a {@link BufferedReader}; i.e. for the data which can't be memory-mapped, like decompressed streams.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class ReaderLineSource implements LineSource {
+	private final BufferedReader reader;
+
+	public ReaderLineSource(InputStream in, Charset charset) {
+		this(new BufferedReader(new InputStreamReader(in, charset)));
+	}
+
+	public ReaderLineSource(BufferedReader reader) {
+		if (reader == null) {
+			throw new IllegalArgumentException("Reader shouldn't be null");
+		}
+		this.reader = reader;
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		return reader.readLine();
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
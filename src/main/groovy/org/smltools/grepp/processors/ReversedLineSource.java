@@ -0,0 +1,137 @@
+package org.smltools.grepp.processors;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * LineSource which reads a file from the end, i.e. returns its lines last to first. <br>
+ * File is read by blocks going backwards; a line crossing a block start is kept until the previous block is read. <br>
+ * As {@link MappedFileLineSource} does, lines are split by '\n' and a trailing '\r' is dropped, so it works for ASCII-compatible charsets only. <br>
+ * A newline at the very end of the file doesn't make an empty last line, the same way as for forward reading.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public class ReversedLineSource implements LineSource {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReversedLineSource.class);
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	private final RandomAccessFile file;
+	private final Charset charset;
+	private final int blockSize;
+
+	private byte[] buffer;
+	private long blockStart; //file offset of buffer[0]
+	private int limit = 0; //end of the unread bytes in the buffer
+	private boolean isEnded;
+
+	public ReversedLineSource(File file) throws IOException {
+		this(file, Charset.defaultCharset(), DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 *
+	 * @param file File to read
+	 * @param charset Charset to decode lines with
+	 * @param blockSize size of a block read at once
+	 * @throws IOException
+	 */
+	public ReversedLineSource(File file, Charset charset, int blockSize) throws IOException {
+		if (file == null || charset == null) {
+			throw new IllegalArgumentException("File and charset shouldn't be null: " + (file != null) + ";" + (charset != null));
+		}
+
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("Block size should be positive: " + blockSize);
+		}
+
+		this.file = new RandomAccessFile(file, "r");
+		this.charset = charset;
+		this.blockSize = blockSize;
+		this.buffer = new byte[blockSize];
+		this.blockStart = this.file.length();
+		this.isEnded = blockStart == 0L;
+		if (!isEnded) {
+			readBlock();
+			if (buffer[limit - 1] == '\n') {
+				limit--;
+			}
+		}
+	}
+
+	/**
+	 * Reads the block before the current one, keeping the unread bytes after it.
+	 */
+	private void readBlock() throws IOException {
+		int size = (int) Math.min((long) blockSize, blockStart);
+		if (buffer.length < size + limit) {
+			byte[] grown = new byte[Math.max(size + limit, buffer.length * 2)];
+			System.arraycopy(buffer, 0, grown, size, limit);
+			buffer = grown;
+		}
+		else {
+			System.arraycopy(buffer, 0, buffer, size, limit);
+		}
+		blockStart -= size;
+		file.seek(blockStart);
+		file.readFully(buffer, 0, size);
+		limit += size;
+		if (LOGGER.isTraceEnabled()) {
+			LOGGER.trace("Read block [{}, {})", blockStart, blockStart + size);
+		}
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if (isEnded) {
+			return null;
+		}
+
+		int newLineIdx = findNewLine(limit);
+		while (newLineIdx < 0 && blockStart > 0L) { //the line starts in a previous block
+			int kept = limit;
+			readBlock();
+			newLineIdx = findNewLine(limit - kept); //i.e. in the read block only
+		}
+
+		int lineStart = newLineIdx + 1;
+		int lineLength = limit - lineStart;
+		if (lineLength > 0 && buffer[limit - 1] == '\r') {
+			lineLength--;
+		}
+
+		String line = new String(buffer, lineStart, lineLength, charset);
+		if (newLineIdx >= 0) {
+			limit = newLineIdx;
+		}
+		else {
+			isEnded = true;
+		}
+		return line;
+	}
+
+	/**
+	 *
+	 * @return index of the last '\n' before the given index, or -1 if there is none
+	 */
+	private int findNewLine(int before) {
+		byte[] buffer = this.buffer;
+		for (int i = before - 1; i >= 0; i--) {
+			if (buffer[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		file.close();
+	}
+}
@@ -4,22 +4,51 @@ import groovy.util.logging.Slf4j;
 
 import java.util.regex.Matcher
 import java.lang.StringBuilder
+import java.nio.charset.Charset
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+import java.util.zip.ZipEntry
+import java.util.zip.ZipFile
 import org.smltools.grepp.filters.enums.Event
+import org.smltools.grepp.output.BatchPrinter
+import org.smltools.grepp.output.ForkableOutput
 import org.smltools.grepp.output.GreppOutput
 import org.smltools.grepp.output.RefreshableOutput
+import org.smltools.grepp.output.SeekableOutput
+import org.smltools.grepp.output.SplittableOutput
 import org.smltools.grepp.processors.DataProcessor;
+import org.smltools.grepp.util.Compression
 import org.smltools.grepp.exceptions.*
 
 /**
- * Class which triggers and controls text file processing.
+ * Class which triggers and controls text file processing. <br>
+ * gzip, zip and zlib compressed files are detected by their content, and are decompressed on the fly. <br>
+ * If the output's result limit is reached (see {@link ResultLimitReachedException}), the rest of the files are not processed.
  * 
  * @author Alexander Semelit
  *
  */
 @Slf4j("LOGGER")
 public class TextFileProcessor implements DataProcessor<List<File>> {
+    public static final long DEFAULT_SPLIT_SIZE = 64L * 1024L * 1024L;
+    private static final int PROBE_WINDOW_SIZE = 1024 * 1024;
+    private static final long SEEK_PRECISION = 64L * 1024L;
    
     private boolean isMerging;
+    private boolean useMappedFiles = false;
+    private boolean isDecodingLazily = false;
+    private boolean isReadingAhead = false;
+    private int threads = 1;
+    private long splitSize = DEFAULT_SPLIT_SIZE;
+    private boolean isSeeking = false;
+    private File indexDir = null;
+    private boolean isFollowing = false;
+    private boolean isReversed = false;
+    private long idleTimeout = FileFollower.DEFAULT_IDLE_TIMEOUT;
 	private GreppOutput<String> output;
  
 	/**
@@ -35,6 +64,122 @@ public class TextFileProcessor implements DataProcessor<List<File>> {
         LOGGER.trace("Is merging? {}", isMerging)
     }
 
+	/**
+	 * Switches file reading to {@link MappedFileLineSource}, i.e. files are read via memory-mapped windows instead of File.eachLine
+	 * 
+	 * @param useMappedFiles true to read files via memory-mapping
+	 */
+    public void setUseMappedFiles(boolean useMappedFiles) {
+        this.useMappedFiles = useMappedFiles
+        LOGGER.trace("Is using mapped files? {}", useMappedFiles)
+    }
+
+
+	/**
+	 * Switches file reading to {@link ByteEntrySource}, i.e. entries are checked as views of the read bytes, and only the ones which could pass are decoded to Strings. <br>
+	 * It's done only if the output says the entries are filtered independently (see {@link SplittableOutput}), and for uncompressed files; other files are read as usual.
+	 * 
+	 * @param isDecodingLazily true to decode lazily
+	 */
+    public void setDecodingLazily(boolean isDecodingLazily) {
+        this.isDecodingLazily = isDecodingLazily
+        LOGGER.trace("Is decoding lazily? {}", isDecodingLazily)
+    }
+
+	/**
+	 * Toggles asynchronous read-ahead of lines (see {@link ReadAheadLineSource}), i.e. a file is read on a separate thread while its lines are filtered. <br>
+	 * In sequential processing the next file is started to be read while the current one is still filtered; it's used only if that file is processed from its start. <br>
+	 * Is ignored for lazily decoded files and zip archives.
+	 * 
+	 * @param isReadingAhead true to read ahead
+	 */
+    public void setReadingAhead(boolean isReadingAhead) {
+        this.isReadingAhead = isReadingAhead
+        LOGGER.trace("Is reading ahead? {}", isReadingAhead)
+    }
+
+	/**
+	 * Enables parallel processing of files when it's greater than 1. <br>
+	 * Files are processed in forked outputs (see {@link ForkableOutput}), and results are printed in the original file order. Big files are split into parts processed in parallel as well. <br>
+	 * Is ignored while merging, since there the files are a single chunk.
+	 * 
+	 * @param threads number of files processed at once
+	 */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads number should be positive: " + threads)
+        }
+        this.threads = threads
+        LOGGER.trace("Threads: {}", threads)
+    }
+
+	/**
+	 * Sets the size of a part for parallel processing; i.e. a file bigger than two parts is split into parts of about that size. See {@link #splitByEntries(File)}.
+	 * 
+	 * @param splitSize part size in bytes
+	 */
+    public void setSplitSize(long splitSize) {
+        if (splitSize < 1) {
+            throw new IllegalArgumentException("Split size should be positive: " + splitSize)
+        }
+        this.splitSize = splitSize
+        LOGGER.trace("Split size: {}", splitSize)
+    }
+
+	/**
+	 * Toggles seeking to the 'from' date in files before processing them; see {@link #seekStart(File, EntryIndex, GreppOutput)}. Is off by default, since it relies on entries being ordered by date.
+	 * 
+	 * @param isSeeking true to seek
+	 */
+    public void setSeeking(boolean isSeeking) {
+        this.isSeeking = isSeeking
+        LOGGER.trace("Is seeking? {}", isSeeking)
+    }
+
+	/**
+	 * Enables a sidecar index of entry dates (see {@link EntryIndex}) kept in the given dir. It's used to seek in the files, and to split them at known entry starts.
+	 * 
+	 * @param indexDir dir to keep indexes in; null to not use indexes
+	 */
+    public void setIndexDir(File indexDir) {
+        this.indexDir = indexDir
+        LOGGER.trace("Index dir: {}", indexDir)
+    }
+
+	/**
+	 * Toggles following of the files after they are processed, like 'tail -f' does. See {@link FileFollower}. <br>
+	 * Compressed files are processed as usual, and are not followed. Parallel processing is not used for the followed files.
+	 * 
+	 * @param isFollowing true to follow the files
+	 */
+    public void setFollowing(boolean isFollowing) {
+        this.isFollowing = isFollowing
+        LOGGER.trace("Is following? {}", isFollowing)
+    }
+
+	/**
+	 * Sets the time without new lines in the followed files, after which the pending entry is flushed.
+	 * 
+	 * @param idleTimeout timeout in milliseconds
+	 */
+    public void setIdleTimeout(long idleTimeout) {
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("Idle timeout should be positive: " + idleTimeout)
+        }
+        this.idleTimeout = idleTimeout
+        LOGGER.trace("Idle timeout: {}", idleTimeout)
+    }
+
+	/**
+	 * Toggles newest first processing: files are processed in reverse order, and each file is read from the end, entry by entry (see {@link #processReversed(File, GreppOutput)}). <br>
+	 * Files are expected to be sorted oldest first, as FileSortFilter does. Parallel processing is not used then.
+	 * 
+	 * @param isReversed true to process newest first
+	 */
+    public void setReversed(boolean isReversed) {
+        this.isReversed = isReversed
+        LOGGER.trace("Is reversed? {}", isReversed)
+    }
 
 	/**
 	 * Hook method which is called prior to file processing. Needed for check and configInstance refreshing if it is on. 
@@ -56,16 +201,77 @@ public class TextFileProcessor implements DataProcessor<List<File>> {
 	 * @param data a File which needs to be processed
 	 */
     protected void processSingleFile(File data) {
+        processSingleFile(data, output)
+    }
+
+	/**
+	 * Processes one File to the given output.
+	 * 
+	 * @param data a File which needs to be processed
+	 * @param output GreppOutput to print results to
+	 */
+    protected void processSingleFile(File data, GreppOutput output) {
+        processSingleFile(data, output, null)
+    }
+
+	/**
+	 * Processes one File to the given output, using the lines read ahead for it if they fit; otherwise they are discarded.
+	 * 
+	 * @param data a File which needs to be processed
+	 * @param output GreppOutput to print results to
+	 * @param prefetched lines of the File read from its start (see {@link #prefetch(File)}), or null
+	 */
+    protected void processSingleFile(File data, GreppOutput output, LineSource prefetched) {
         if (data == null) return
+        Compression compression = Compression.of(data)
+        if (compression == Compression.ZIP) {
+            processZipFile(data, output)
+            return
+        }
+
         LOGGER.info("File {} started", data.name)
+        long start = seekStart(data, indexOf(data, output), output)
+        boolean isLazy = isDecodingLazily && compression == Compression.NONE && output instanceof SplittableOutput && output.isSplittable()
+        if (prefetched != null && (start > 0 || isLazy)) {
+            LOGGER.debug("Lines of {} read ahead from the start are discarded", data.name)
+            prefetched.close()
+            prefetched = null
+        }
+
         def curLine = 1
-        GreppOutput output = output //shadowing to get rid of GetEffectivePogo in the loop
+        ResultLimitReachedException limitReached = null
         try {
-            data.eachLine { String line ->
-                LOGGER.trace("curLine: {}", curLine)
-                curLine += 1
-                output.print(line)
+            if (isLazy) {
+                curLine += printLazily(data, start, output)
+            }
+            else if (compression != Compression.NONE || useMappedFiles || start > 0 || isReadingAhead) {
+                LineSource lines = prefetched != null ? prefetched : openLines(data, compression, start)
+                try {
+                    BatchPrinter<String> batchPrinter = new BatchPrinter<String>(output, new String[BatchPrinter.DEFAULT_BATCH_SIZE])
+                    String line
+                    while ((line = lines.readLine()) != null) {
+                        LOGGER.trace("curLine: {}", curLine)
+                        curLine += 1
+                        batchPrinter.print(line)
+                    }
+                    batchPrinter.flush()
+                }
+                finally {
+                    lines.close()
+                }
             }
+            else {
+                BatchPrinter<String> batchPrinter = new BatchPrinter<String>(output, new String[BatchPrinter.DEFAULT_BATCH_SIZE])
+                data.eachLine { String line ->
+                    LOGGER.trace("curLine: {}", curLine)
+                    curLine += 1
+                    batchPrinter.print(line)
+                }
+                batchPrinter.flush()
+            }
+        }
+        catch(ResultLimitReachedException e) {
+            limitReached = e //the chunk is ended first, and then the rest is skipped
         }
         catch(FilteringIsInterruptedException e) {
             LOGGER.trace("No point to read file further as identified by filter chain")
@@ -76,13 +282,222 @@ public class TextFileProcessor implements DataProcessor<List<File>> {
         }
         
         LOGGER.info("File {} ended. Lines processed: {}", data.name, curLine)
+        if (limitReached != null) {
+            throw limitReached
+        }
+    }
+
+	/**
+	 * Processes one File to the given output from its end; i.e. lines are read backwards (see {@link ReversedLineSource}) and are gathered into entries by the output's entry starts. <br>
+	 * Each entry is printed in the usual line order, so the filters get the same entries as they would reading forward, just newest first. <br>
+	 * That's why it's done only if the output says the entries are filtered independently (see {@link SplittableOutput}); otherwise the file is processed forward. Compressed files are processed forward as well.
+	 * 
+	 * @param data a File which needs to be processed
+	 * @param output GreppOutput to print results to
+	 */
+    protected void processReversed(File data, GreppOutput output) {
+        if (data == null) return
+        if (!(output instanceof SplittableOutput) || !output.isSplittable() || Compression.of(data) != Compression.NONE) {
+            LOGGER.info("File {} can't be read from the end with current filters; reading it from the start", data.name)
+            processSingleFile(data, output)
+            return
+        }
+
+        LOGGER.info("File {} started from the end", data.name)
+        def curLine = 1
+        ResultLimitReachedException limitReached = null
+        ReversedLineSource lines = new ReversedLineSource(data, Charset.defaultCharset(), ReversedLineSource.DEFAULT_BLOCK_SIZE)
+        output.setReversed(true) //only while the file is read backwards; files read forward are filtered as usual
+        try {
+            List<String> entry = new ArrayList<String>()
+            String line
+            while ((line = lines.readLine()) != null) {
+                curLine += 1
+                entry.add(line)
+                if (output.isEntryStart(line)) {
+                    printReversed(entry, output)
+                }
+            }
+
+            if (!entry.isEmpty()) { //lines before the first entry start; ending the chunk, so they aren't added to the last printed entry
+                output.processEvent(Event.CHUNK_ENDED)
+                printReversed(entry, output)
+            }
+        }
+        catch(ResultLimitReachedException e) {
+            limitReached = e
+        }
+        catch(FilteringIsInterruptedException e) {
+            LOGGER.trace("No point to read file further as identified by filter chain")
+        }
+        finally {
+            lines.close()
+        }
+
+        if (!isMerging) {
+            output.processEvent(Event.CHUNK_ENDED)
+        }
+        output.setReversed(false)
+
+        LOGGER.info("File {} ended. Lines processed: {}", data.name, curLine)
+        if (limitReached != null) {
+            throw limitReached
+        }
+    }
+
+    private static void printReversed(List<String> lines, GreppOutput output) {
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            output.print(lines.get(i))
+        }
+        lines.clear()
+    }
+
+	/**
+	 * Prints entries of a File which could pass the output's filters (see {@link SplittableOutput#mayPass(CharSequence)}); the rest are not decoded at all. <br>
+	 * A skipped entry doesn't change the filters state, so the results are the same as for printing every line.
+	 * 
+	 * @return number of lines read
+	 */
+    private static int printLazily(File data, long start, GreppOutput output) {
+        int lines = 0
+        ByteEntrySource entries = new ByteEntrySource(data, Charset.defaultCharset(), ByteEntrySource.DEFAULT_BUFFER_SIZE, start, -1L)
+        try {
+            CharSequence entry
+            while ((entry = entries.nextEntry(output)) != null) {
+                lines += entries.getLineCount()
+                if (output.mayPass(entry)) {
+                    for (String line : entries.getLines()) {
+                        output.print(line)
+                    }
+                }
+            }
+        }
+        finally {
+            entries.close()
+        }
+        return lines
+    }
+
+	/**
+	 * Opens a LineSource for a File from the given offset; it's read ahead on a separate thread if read-ahead is on.
+	 */
+    private LineSource openLines(File data, Compression compression, long start) {
+        LineSource lines = compression != Compression.NONE ? new ReaderLineSource(new ReadAheadInputStream(compression.open(data), data.name), Charset.defaultCharset())
+                : useMappedFiles ? new MappedFileLineSource(data, Charset.defaultCharset(), MappedFileLineSource.DEFAULT_WINDOW_SIZE, start, -1L)
+                : new ReaderLineSource(openAt(data, start), Charset.defaultCharset())
+        return isReadingAhead ? new ReadAheadLineSource(lines, data.name) : lines
+    }
+
+	/**
+	 * Starts reading a File from its start ahead of its processing, if read-ahead is on and it could be used (see {@link #processSingleFile(File, GreppOutput, LineSource)}).
+	 * 
+	 * @return lines being read ahead, or null
+	 */
+    private LineSource prefetch(File data) {
+        if (!isReadingAhead || data == null) {
+            return null
+        }
+        Compression compression = Compression.of(data)
+        if (compression == Compression.ZIP || (isDecodingLazily && compression == Compression.NONE)) {
+            return null
+        }
+        LOGGER.debug("Reading {} ahead", data.name)
+        return openLines(data, compression, 0L)
+    }
+
+    private static InputStream openAt(File data, long start) {
+        FileInputStream input = new FileInputStream(data)
+        input.getChannel().position(start)
+        return input
+    }
+
+	/**
+	 * Processes a zip archive to the given output. Each entry is a separate chunk, and filters are refreshed by the entry name. <br>
+	 * Entries are inflated on a read-ahead thread (see {@link ReadAheadInputStream}).
+	 * 
+	 * @param data zip File which needs to be processed
+	 * @param output GreppOutput to print results to
+	 */
+    protected void processZipFile(File data, GreppOutput output) {
+        LOGGER.info("Archive {} started", data.name)
+        ResultLimitReachedException limitReached = null
+        ZipFile zip = new ZipFile(data)
+        try {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory()) continue
+
+                LOGGER.info("Entry {} started", entry.name)
+                if (output instanceof RefreshableOutput) {
+                    output.refreshFilters(entry.name)
+                }
+                def curLine = 1
+                LineSource lines = new ReaderLineSource(new ReadAheadInputStream(zip.getInputStream(entry), entry.name), Charset.defaultCharset())
+                try {
+                    String line
+                    while ((line = lines.readLine()) != null) {
+                        LOGGER.trace("curLine: {}", curLine)
+                        curLine += 1
+                        output.print(line)
+                    }
+                }
+                catch(ResultLimitReachedException e) {
+                    limitReached = e
+                }
+                catch(FilteringIsInterruptedException e) {
+                    LOGGER.trace("No point to read entry further as identified by filter chain")
+                }
+                finally {
+                    lines.close()
+                }
+
+                if (!isMerging) {
+                    output.processEvent(Event.CHUNK_ENDED)
+                }
+                LOGGER.info("Entry {} ended. Lines processed: {}", entry.name, curLine)
+                if (limitReached != null) {
+                    throw limitReached
+                }
+            }
+        }
+        finally {
+            zip.close()
+        }
+        LOGGER.info("Archive {} ended", data.name)
     }
 
 	@Override
 	public void process(List<File> data) {
 		if (data != null) {
-			data.each {
-				processSingleFile(initFile(it))
+			try {
+				if (isFollowing) {
+					List<File> followed = data.findAll { Compression.of(it) == Compression.NONE }
+					data.findAll { !followed.contains(it) }.each {
+						processSingleFile(initFile(it))
+					}
+					new FileFollower(output, isMerging, idleTimeout).follow(followed)
+				}
+				else if (isReversed) {
+					data.reverse().each {
+						processReversed(initFile(it), output)
+					}
+				}
+				else if (threads > 1 && !isMerging && output instanceof ForkableOutput) {
+					processInParallel(data)
+				}
+				else if (isReadingAhead) {
+					processWithPrefetch(data)
+				}
+				else {
+					data.each {
+						processSingleFile(initFile(it))
+					}
+				}
+			}
+			catch (ResultLimitReachedException e) {
+				LOGGER.info("{}; the rest is not processed", e.getMessage())
+			}
+			if (isMerging) { //merged files are a single chunk, which is ended here
+				output.processEvent(Event.CHUNK_ENDED)
 			}
 			output.processEvent(Event.ALL_CHUNKS_PROCESSED)
 			output.close()
@@ -91,4 +506,383 @@ public class TextFileProcessor implements DataProcessor<List<File>> {
 			LOGGER.trace("No files given; nothing to process")
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Processes files sequentially, starting to read each next file while the current one is filtered (see {@link #prefetch(File)}).
+	 * 
+	 * @param data Files to process
+	 */
+    protected void processWithPrefetch(List<File> data) {
+        LineSource next = data.isEmpty() ? null : prefetch(data.get(0))
+        try {
+            for (int i = 0; i < data.size(); i++) {
+                LineSource current = next
+                next = i + 1 < data.size() ? prefetch(data.get(i + 1)) : null
+                processSingleFile(initFile(data.get(i)), output, current)
+            }
+        }
+        finally {
+            if (next != null) {
+                next.close()
+            }
+        }
+    }
+
+	/**
+	 * Processes files by a fixed thread pool, each file (or its part, see {@link #splitByEntries(File)}) in its own forked output. <br>
+	 * Filters are refreshed by the main output in file order, and each fork copies the chain right after that; so every file is filtered with the same config it would be sequentially. <br>
+	 * Forked results are joined in file order; at most threads*2 parts are in flight, and only parts of bounded size are forked, to keep memory bounded. If filtering of a part was interrupted, the following parts of that file are discarded. <br>
+	 * Files which aren't split into such parts (i.e. compressed ones, or big ones which can't be split, e.g. with threads) are processed sequentially to the output, once the parts before them are joined. <br>
+	 * If the output can't be forked for some file (e.g. a report got enabled by its config), that file and the rest are processed sequentially.
+	 * 
+	 * @param data Files to process
+	 */
+    protected void processInParallel(List<File> data) {
+        LOGGER.debug("Processing {} files in {} threads", data.size(), threads)
+        ExecutorService executor = Executors.newFixedThreadPool(threads)
+        Queue<FilePart> pending = new LinkedList<FilePart>()
+        Iterator<File> files = data.iterator()
+        Iterator<long[]> ranges = Collections.<long[]>emptyList().iterator()
+        File file = null
+        boolean isSeekDatePassed = false
+        int fileIdx = -1
+        int interruptedFileIdx = -1
+        File notForkedFile = null
+        try {
+            while (notForkedFile == null && (ranges.hasNext() || files.hasNext())) {
+                if (!ranges.hasNext()) {
+                    file = initFile(files.next())
+                    fileIdx++
+                    List<long[]> fileRanges = Compression.of(file) == Compression.NONE ? splitByEntries(file) : null
+                    if (fileRanges == null || (fileRanges.size() == 1 && file.length() > splitSize * 2)) {
+                        LOGGER.debug("{} isn't split into parts of bounded size; processing it sequentially", file.name)
+                        while (!pending.isEmpty()) {
+                            interruptedFileIdx = joinPart(pending.poll(), interruptedFileIdx)
+                        }
+                        processSingleFile(file)
+                        continue
+                    }
+                    ranges = fileRanges.iterator()
+                    isSeekDatePassed = isSplitBySeekDate(file)
+                }
+
+                long[] range = ranges.next()
+                GreppOutput<String> forked = output.fork()
+                if (forked != null) {
+                    if (range != null && isSeekDatePassed) {
+                        forked.passSeekDate() //the parts start from the entry which passes the date, see splitByEntries
+                    }
+                    File partFile = file
+                    boolean isLast = !ranges.hasNext()
+                    //FutureTask, since a Closure is both Runnable and Callable and submit() would be ambiguous
+                    FutureTask<Boolean> task = new FutureTask<Boolean>(range != null ? { processRange(partFile, range[0], range[1], isLast, forked) } as Callable<Boolean>
+                            : { processSingleFile(partFile, forked); false } as Callable<Boolean>)
+                    executor.execute(task)
+                    pending.offer(new FilePart(fileIdx, isLast, forked, task))
+                    if (pending.size() >= threads * 2) {
+                        interruptedFileIdx = joinPart(pending.poll(), interruptedFileIdx)
+                        if (interruptedFileIdx == fileIdx) {
+                            ranges = Collections.<long[]>emptyList().iterator()
+                        }
+                    }
+                }
+                else {
+                    LOGGER.debug("Output can't be forked for {}; processing the rest sequentially", file.name)
+                    notForkedFile = file
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                interruptedFileIdx = joinPart(pending.poll(), interruptedFileIdx)
+            }
+        }
+        finally {
+            executor.shutdownNow()
+        }
+
+        if (notForkedFile != null) {
+            processSingleFile(notForkedFile)
+            while (files.hasNext()) {
+                processSingleFile(initFile(files.next()))
+            }
+        }
+    }
+
+	/**
+	 * Splits a File into [start, end) byte ranges of about splitSize each, to be processed in parallel. <br>
+	 * Each split point is moved forward to the next line which starts an entry (or to the next indexed entry), so no entry is cut in half. The first range starts from {@link #seekStart(File, EntryIndex, GreppOutput)}. <br>
+	 * Splitting is done only for uncompressed files, and only if the output says that current filters give the same results for the parts (see {@link SplittableOutput}). <br>
+	 * If the output filters entries dated before some date, the first range starts from the entry which passes the date (see {@link #findSeekDatePassed(File, long)}), <br>
+	 * and each part should be told that the date is passed; so entries dated before it (or undated) right after a split point are kept, as they are after the date is passed sequentially.
+	 * 
+	 * @param file File to split
+	 * @return list of ranges; or a list with a single null element, if the file should be processed as a whole
+	 */
+    protected List<long[]> splitByEntries(File file) {
+        long size = file.length()
+        EntryIndex index = indexOf(file, output)
+        long start = seekStart(file, index, output)
+        if (!canSplit(file)) {
+            return Collections.<long[]>singletonList(start > 0 ? [start, size] as long[] : null)
+        }
+
+        if (isSplitBySeekDate(file)) {
+            start = findSeekDatePassed(file, start)
+        }
+        long count = (size - start).intdiv(splitSize)
+        if (count < 2) {
+            return Collections.<long[]>singletonList(start > 0 ? [start, size] as long[] : null)
+        }
+
+        List<long[]> ranges = new ArrayList<long[]>()
+        long first = start
+        for (long i = 1; i < count; i++) {
+            long candidate = first + ((size - first) * i).intdiv(count)
+            if (candidate > start) {
+                long point = index != null ? index.ceilingOffset(candidate) : -1L
+                if (point < 0) {
+                    point = findEntryStart(file, candidate)
+                }
+                if (point >= size) {
+                    break //no more entries, and the rest of the file was scanned already
+                }
+                ranges.add([start, point] as long[])
+                start = point
+            }
+        }
+        ranges.add([start, size] as long[])
+        LOGGER.debug("{} is split in {} parts", file.name, ranges.size())
+        return ranges
+    }
+
+    private boolean canSplit(File file) {
+        return output instanceof SplittableOutput && output.isSplittable() && Compression.of(file) == Compression.NONE
+    }
+
+    private boolean isSplitBySeekDate(File file) {
+        return canSplit(file) && output instanceof SeekableOutput && output.isSeekable()
+    }
+
+	/**
+	 * Finds the entry, by which the output passes the date filtering starts from; i.e. the first entry which passes the filters checked before the date (see {@link SplittableOutput#mayPass(CharSequence)}), and is dated on or after the date. <br>
+	 * Entries before it give nothing: they are dropped either before the date check, or by it. And from it on the date is passed, as it is when the file is filtered sequentially. <br>
+	 * Unlike {@link #seekStart(File, EntryIndex, GreppOutput)}, it doesn't rely on the order of entry dates, since each entry is checked.
+	 * 
+	 * @param file File to look in
+	 * @param from offset of an entry start to look from
+	 * @return offset of the entry; file length if there is no such entry
+	 */
+    private long findSeekDatePassed(File file, long from) {
+        Date seekDate = output.getSeekDate()
+        MappedFileLineSource lines = new MappedFileLineSource(file, Charset.defaultCharset(), MappedFileLineSource.DEFAULT_WINDOW_SIZE, from, -1L)
+        try {
+            StringBuilder entry = new StringBuilder()
+            long entryStart = -1L
+            long position = lines.getPosition()
+            String line
+            while (true) {
+                line = lines.readLine()
+                if (line == null || output.isEntryStart(line)) {
+                    if (entryStart >= 0) {
+                        Date entryDate = output.getEntryDate(entry.toString())
+                        if (entryDate != null && !entryDate.before(seekDate) && output.mayPass(entry)) {
+                            LOGGER.debug("Date is passed in {} at {}", file.name, entryStart)
+                            return entryStart
+                        }
+                    }
+                    if (line == null) {
+                        return file.length()
+                    }
+                    entryStart = position
+                    entry.setLength(0)
+                    entry.append(line)
+                }
+                else if (entryStart >= 0) {
+                    entry.append('\n').append(line)
+                }
+                position = lines.getPosition()
+            }
+        }
+        finally {
+            lines.close()
+        }
+    }
+
+	/**
+	 * Finds an entry start to begin file processing from, when the output filters out entries dated before some date (see {@link SeekableOutput}). <br>
+	 * It's a binary search over file offsets: at each probe the first dated entry after the offset is found, and if it's before the date, entries up to it are skipped. <br>
+	 * So it's about log(size) probes instead of reading the file up to the date; the rest (less than {@link #SEEK_PRECISION} plus an entry) is filtered as usual. <br>
+	 * With an index the search starts between the indexed entries around the date. <br>
+	 * It relies on entry dates being non-decreasing within a file. It isn't done while merging, since the date check is skipped once the date is passed in a previous file.
+	 * 
+	 * @param file File to seek in
+	 * @param index EntryIndex of the file, or null
+	 * @param output GreppOutput the file is processed to; entry dates are found by its filters, so it's safe for a worker of {@link #processInParallel(List)}
+	 * @return offset of an entry start to process the file from; 0 if nothing can be skipped
+	 */
+    protected long seekStart(File file, EntryIndex index, GreppOutput output) {
+        if (!canSeek(file, output) || file.length() <= SEEK_PRECISION) {
+            return 0L
+        }
+
+        Date seekDate = output.getSeekDate()
+        long start = 0L
+        long low = 0L
+        long high = file.length()
+        if (index != null) {
+            start = low = index.floorOffset(seekDate)
+            long next = index.ceilingOffset(start + 1)
+            if (next >= 0) {
+                high = next
+            }
+        }
+        while (high - low > SEEK_PRECISION) {
+            long middle = low + (high - low).intdiv(2)
+            long found = findEntryBefore(file, middle, high, seekDate, output)
+            if (found >= 0) {
+                start = found
+                low = found
+            }
+            else {
+                high = middle
+            }
+        }
+        if (start > 0) {
+            LOGGER.debug("Seeking {} to {}", file.name, start)
+        }
+        return start
+    }
+
+    private boolean canSeek(File file, GreppOutput output) {
+        return isSeeking && !isMerging && output instanceof SeekableOutput && output.isSeekable() && Compression.of(file) == Compression.NONE
+    }
+
+	/**
+	 * Makes an up to date index of a file, if indexes are on and the file can be seeked in.
+	 * 
+	 * @param file File to index
+	 * @param output GreppOutput the file is processed to, to get entry dates by
+	 * @return EntryIndex of the file, or null
+	 */
+    protected EntryIndex indexOf(File file, GreppOutput output) {
+        if (indexDir == null || !canSeek(file, output)) {
+            return null
+        }
+        return EntryIndex.forFile(indexDir, file, output, EntryIndex.DEFAULT_INTERVAL)
+    }
+
+	/**
+	 * Finds the first dated entry in [from, to) byte range, and checks whether it's dated before the given date.
+	 * 
+	 * @return offset of the entry if it's before the date; -1 if it's not, or if there is no dated entry in the range
+	 */
+    private long findEntryBefore(File file, long from, long to, Date date, GreppOutput output) {
+        MappedFileLineSource lines = new MappedFileLineSource(file, Charset.defaultCharset(), PROBE_WINDOW_SIZE, from - 1, -1L)
+        try {
+            lines.readLine() //skipping what's left of the line started before 'from'
+            long position = lines.getPosition()
+            String line
+            while (position < to && (line = lines.readLine()) != null) {
+                Date entryDate = output.getEntryDate(line)
+                if (entryDate != null) {
+                    return entryDate.before(date) ? position : -1L
+                }
+                position = lines.getPosition()
+            }
+            return -1L
+        }
+        finally {
+            lines.close()
+        }
+    }
+
+    private long findEntryStart(File file, long from) {
+        MappedFileLineSource lines = new MappedFileLineSource(file, Charset.defaultCharset(), PROBE_WINDOW_SIZE, from - 1, -1L)
+        try {
+            lines.readLine() //skipping what's left of the line started before 'from'
+            long position = lines.getPosition()
+            String line
+            while ((line = lines.readLine()) != null) {
+                if (output.isEntryStart(line)) {
+                    return position
+                }
+                position = lines.getPosition()
+            }
+            return position
+        }
+        finally {
+            lines.close()
+        }
+    }
+
+	/**
+	 * Processes [start, end) byte range of a File to the given output as a separate chunk. <br>
+	 * If it's not the last part, the part is ended by the next entry start (see {@link SplittableOutput#endPart(String)}), so an interruption by the last entry is noticed too.
+	 * 
+	 * @param data a File which part needs to be processed
+	 * @param start offset of the first line of the part
+	 * @param end offset after the last line of the part
+	 * @param isLast true if it's the last part of the file
+	 * @param output GreppOutput to print results to
+	 * @return true if filtering was interrupted, i.e. the rest of the file shouldn't be processed
+	 */
+    protected boolean processRange(File data, long start, long end, boolean isLast, GreppOutput output) {
+        LOGGER.info("File {} part [{}, {}) started", data.name, start, end)
+        boolean isInterrupted = false
+        MappedFileLineSource lines = new MappedFileLineSource(data, Charset.defaultCharset(), MappedFileLineSource.DEFAULT_WINDOW_SIZE, start, -1L)
+        try {
+            String line
+            while (lines.getPosition() < end && (line = lines.readLine()) != null) {
+                output.print(line)
+            }
+
+            if (!isLast) {
+                output.endPart(lines.readLine())
+            }
+        }
+        catch(FilteringIsInterruptedException e) {
+            LOGGER.trace("No point to read file further as identified by filter chain")
+            isInterrupted = true
+        }
+        finally {
+            lines.close()
+        }
+
+        if (isLast) {
+            output.processEvent(Event.CHUNK_ENDED)
+        }
+        LOGGER.info("File {} part [{}, {}) ended", data.name, start, end)
+        return isInterrupted
+    }
+
+    private int joinPart(FilePart part, int interruptedFileIdx) {
+        if (part.fileIdx == interruptedFileIdx) {
+            part.result.cancel(true)
+            return interruptedFileIdx
+        }
+
+        boolean isInterrupted
+        try {
+            isInterrupted = part.result.get()
+        }
+        catch (ExecutionException ee) {
+            throw ee.getCause()
+        }
+        output.join(part.output)
+        return isInterrupted && !part.isLast ? part.fileIdx : interruptedFileIdx
+    }
+
+    private static class FilePart {
+        final int fileIdx
+        final boolean isLast
+        final GreppOutput<String> output
+        final Future<Boolean> result
+
+        FilePart(int fileIdx, boolean isLast, GreppOutput<String> output, Future<Boolean> result) {
+            this.fileIdx = fileIdx
+            this.isLast = isLast
+            this.output = output
+            this.result = result
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package org.smltools.grepp.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 
+ * Compression formats of log files, detected by magic bytes rather than by extension.
+ * 
+ * @author Alexander Semelit
+ *
+ */
+public enum Compression {
+	NONE, GZIP, ZIP, DEFLATE;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Compression.class);
+	private static final int HEADER_LENGTH = 512;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Detects compression of a file. <br>
+	 * zlib (deflate) header is too short to be reliable for text, so a trial inflation of the header is done for it as well.
+	 * 
+	 * @param file File to check
+	 * @return detected compression; NONE for directories and plain files
+	 * @throws IOException
+	 */
+	public static Compression of(File file) throws IOException {
+		if (!file.isFile()) {
+			return NONE;
+		}
+
+		byte[] header = new byte[HEADER_LENGTH];
+		return of(header, readHeader(file, header));
+	}
+
+	static Compression of(byte[] header, int length) {
+		if (length >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b) {
+			return GZIP;
+		}
+		else if (length >= 4 && header[0] == 'P' && header[1] == 'K' && header[2] == 3 && header[3] == 4) {
+			return ZIP;
+		}
+		else if (length >= 2 && (header[0] & 0x0f) == 8 && (header[0] & 0xff) >> 4 <= 7 && ((header[0] & 0xff) << 8 | (header[1] & 0xff)) % 31 == 0 && isInflatable(header, length)) {
+			return DEFLATE;
+		}
+		else {
+			return NONE;
+		}
+	}
+
+	private static boolean isInflatable(byte[] header, int length) {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(header, 0, length);
+			inflater.inflate(new byte[HEADER_LENGTH * 4]);
+			return true;
+		}
+		catch (DataFormatException dfe) {
+			return false;
+		}
+		finally {
+			inflater.end();
+		}
+	}
+
+	private static int readHeader(File file, byte[] header) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			int length = 0;
+			int read;
+			while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+				length += read;
+			}
+			return length;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Opens decompressing stream for the file. Zip archives are not a single stream, and should be read entry by entry via {@link ZipFile}.
+	 * 
+	 * @param file File to open
+	 * @return InputStream of the decompressed data
+	 * @throws IOException
+	 * @throws UnsupportedOperationException for ZIP
+	 */
+	public InputStream open(File file) throws IOException {
+		switch (this) {
+			case GZIP: return new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE);
+			case DEFLATE: return new InflaterInputStream(new FileInputStream(file), new Inflater(), BUFFER_SIZE);
+			case NONE: return new FileInputStream(file);
+			default: throw new UnsupportedOperationException(this + " can't be opened as a single stream: " + file.getName());
+		}
+	}
+
+	/**
+	 * Finds the modification time of file's content. For gzip it's the MTIME of the header, for zip - the latest entry time; if they're not set, or for other files it's {@link File#lastModified()}.
+	 * 
+	 * @param file File to check
+	 * @return modification time in milliseconds
+	 */
+	public static long lastModified(File file) {
+		try {
+			if (file.isFile()) {
+				byte[] header = new byte[HEADER_LENGTH];
+				int length = readHeader(file, header);
+				switch (of(header, length)) {
+					case GZIP: {
+						long mtime = length >= 8 ? (header[4] & 0xffL) | (header[5] & 0xffL) << 8 | (header[6] & 0xffL) << 16 | (header[7] & 0xffL) << 24 : 0L;
+						if (mtime > 0L) {
+							return mtime * 1000L;
+						}
+						break;
+					}
+					case ZIP: {
+						long latest = -1L;
+						ZipFile zip = new ZipFile(file);
+						try {
+							for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+								latest = Math.max(latest, entries.nextElement().getTime());
+							}
+						}
+						finally {
+							zip.close();
+						}
+						if (latest > 0L) {
+							return latest;
+						}
+						break;
+					}
+					default: break;
+				}
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.debug("Can't read {} header; using file time", file.getName(), ioe);
+		}
+		return file.lastModified();
+	}
+}
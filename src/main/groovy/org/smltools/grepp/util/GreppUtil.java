@@ -15,7 +15,11 @@ import java.lang.reflect.TypeVariable;
 import java.lang.reflect.ParameterizedType;
 import groovy.lang.GroovyClassLoader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import org.codehaus.groovy.control.CompilationFailedException;
 
 
@@ -47,6 +51,45 @@ public final class GreppUtil {
 		return null;
 	}
 
+	/**
+	 * Calculates SHA-1 of the file content followed by the salt; e.g. to check if something made of the file is up to date.
+	 *
+	 * @param file file to hash
+	 * @param salt string to be hashed after the content; could be null
+	 * @return hex string of the hash
+	 * @throws IOException if the file can't be read
+	 */
+	public static String sha1Of(File file, String salt) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException nsae) {
+			throw new RuntimeException(nsae); //every JRE has SHA-1
+		}
+
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally {
+			in.close();
+		}
+		if (salt != null) {
+			digest.update(salt.getBytes("UTF-8"));
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b: digest.digest()) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+
 	@SuppressWarnings("unchecked")
 	public static Class<?> findConcreteParameterClass(ParameterizedType type) {
 		for (Type typeArgument: type.getActualTypeArguments()) {
@@ -219,4 +262,36 @@ public final class GreppUtil {
 		return stringWithRegex.replaceAll("(\\\\)(?!['])", "$1$1"); //escapes unescaped, since ConfigObject doesn't hadnle those cases pretty well...
 	}
 
+	/**
+	 * Parses size given in bytes, or with one of K, M, G suffixes (case-insensitive; binary multiples). I.e. "512", "64K", "10m", "2G".
+	 * 
+	 * @param size String to parse
+	 * @return size in bytes
+	 * @throws IllegalArgumentException if the size is not positive, or can't be parsed
+	 */
+	public static long parseSize(String size) {
+		throwIllegalAEifNull(size, "Size shouldn't be null");
+		String trimmed = size.trim();
+		long multiplier = 1L;
+		if (trimmed.length() > 0) {
+			switch (Character.toUpperCase(trimmed.charAt(trimmed.length() - 1))) {
+				case 'K': multiplier = 1024L; break;
+				case 'M': multiplier = 1024L * 1024L; break;
+				case 'G': multiplier = 1024L * 1024L * 1024L; break;
+				default: break;
+			}
+		}
+
+		try {
+			long result = Long.parseLong(multiplier > 1L ? trimmed.substring(0, trimmed.length() - 1) : trimmed) * multiplier;
+			if (result <= 0L) {
+				throw new IllegalArgumentException("Size should be positive: " + size);
+			}
+			return result;
+		}
+		catch (NumberFormatException nfe) {
+			throw new IllegalArgumentException("Can't parse size: " + size, nfe);
+		}
+	}
+
 }
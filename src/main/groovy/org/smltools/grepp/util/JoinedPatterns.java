@@ -0,0 +1,77 @@
+package org.smltools.grepp.util;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ *
+ * Several patterns joined into a single one, i.e. (?:prefix(p1)|prefix(p2)|...), so text is scanned once for all of them. <br>
+ * Each pattern gets its own group, so the one which has matched is told by {@link #indexOf(Matcher)}; where several match at the same place, the first one wins. <br>
+ * Patterns with back references, which would be shifted by the joining, or named groups, whose names could clash, can't be joined; they should be matched one by one.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class JoinedPatterns {
+	private static final Pattern UNJOINABLE = Pattern.compile("\\\\[1-9]|\\\\k<|\\(\\?<[a-zA-Z]"); //back reference or named group
+
+	private final Pattern joined;
+	private final int[] groups; //group number of each pattern in the joined one
+
+	private JoinedPatterns(Pattern joined, int[] groups) {
+		this.joined = joined;
+		this.groups = groups;
+	}
+
+	private static boolean isJoinable(String pattern) {
+		return !UNJOINABLE.matcher(pattern).find();
+	}
+
+	/**
+	 *
+	 * @param patterns patterns to join, in the order of their priority
+	 * @param prefix regex to put before each of them, e.g. (?s:.*?) to find them with lookingAt(); could be empty
+	 * @return joined patterns, or null if there are none, or any of them can't be joined
+	 */
+	public static JoinedPatterns join(List<Pattern> patterns, String prefix) {
+		if (patterns.isEmpty()) {
+			return null;
+		}
+
+		int[] groups = new int[patterns.size()];
+		StringBuilder joined = new StringBuilder("(?:");
+		int group = 1;
+		for (int i = 0; i < patterns.size(); i++) {
+			String pattern = patterns.get(i).pattern();
+			if (!isJoinable(pattern)) {
+				return null;
+			}
+			if (i > 0) {
+				joined.append('|');
+			}
+			joined.append(prefix).append('(').append(pattern).append(')');
+			groups[i] = group;
+			group += 1 + patterns.get(i).matcher("").groupCount();
+		}
+		return new JoinedPatterns(Pattern.compile(joined.append(')').toString()), groups);
+	}
+
+	public Matcher matcher(CharSequence input) {
+		return joined.matcher(input);
+	}
+
+	/**
+	 *
+	 * @param matcher matcher of the joined pattern, after a successful match
+	 * @return index of the pattern which has matched; -1 if none has
+	 */
+	public int indexOf(Matcher matcher) {
+		for (int i = 0; i < groups.length; i++) {
+			if (matcher.start(groups[i]) != -1) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,78 @@
+package org.smltools.grepp.util;
+
+/**
+ *
+ * Boyer-Moore-Horspool search of a literal String. <br>
+ * Shifts are kept by the low byte of a char, so non-latin chars just get shorter shifts. Short literals can't be shifted far, so they are searched in Strings by String.indexOf, which JVMs intrinsify. <br>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class LiteralFinder {
+	private static final int TABLE_SIZE = 256;
+	private static final int TABLE_MASK = TABLE_SIZE - 1;
+	private static final int MIN_SHIFTED_LENGTH = 8;
+
+	private final String literal;
+	private final char[] chars;
+	private final int[] shifts = new int[TABLE_SIZE];
+
+	public LiteralFinder(String literal) {
+		if (literal == null || literal.length() == 0) {
+			throw new IllegalArgumentException("Literal shouldn't be empty");
+		}
+
+		this.literal = literal;
+		this.chars = literal.toCharArray();
+		int last = chars.length - 1;
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			shifts[i] = chars.length;
+		}
+		for (int i = 0; i < last; i++) {
+			shifts[chars[i] & TABLE_MASK] = last - i;
+		}
+	}
+
+	public String getLiteral() {
+		return literal;
+	}
+
+	public int length() {
+		return chars.length;
+	}
+
+	/**
+	 *
+	 * @param text CharSequence to search in
+	 * @param from index to start search from
+	 * @return index of the first occurrence at or after from; -1 if there is none
+	 */
+	public int indexIn(CharSequence text, int from) {
+		if (chars.length < MIN_SHIFTED_LENGTH && text instanceof String) {
+			return ((String) text).indexOf(literal, from);
+		}
+
+		int last = chars.length - 1;
+		int end = text.length() - last;
+		int i = Math.max(from, 0);
+		while (i < end) {
+			char ch = text.charAt(i + last);
+			if (ch == chars[last]) {
+				int j = last - 1;
+				while (j >= 0 && text.charAt(i + j) == chars[j]) {
+					j--;
+				}
+				if (j < 0) {
+					return i;
+				}
+			}
+			i += shifts[ch & TABLE_MASK];
+		}
+		return -1;
+	}
+
+	public boolean isIn(CharSequence text) {
+		return indexIn(text, 0) >= 0;
+	}
+}
@@ -0,0 +1,157 @@
+package org.smltools.grepp.util;
+
+import java.util.Arrays;
+
+/**
+ *
+ * Small LZ77 codec for in-memory blocks, laid out like an LZ4 block: <br>
+ * each sequence is a token (literals count in high 4 bits, match length - 4 in low 4 bits), counts beyond 15 in following bytes of 255 and the rest, <br>
+ * literals, then 2 byte little-endian match offset and the match; the last sequence has literals only. <br>
+ * It favours speed over ratio, which is still good for repetitive text like logs. Raw length isn't stored, so it should be kept by the caller. <br>
+ * Instance keeps the match table, so it's not thread-safe.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class LzCodec {
+	private static final int MIN_MATCH = 4;
+	private static final int MAX_OFFSET = 0xFFFF;
+	private static final int HASH_BITS = 12;
+
+	private final int[] matchTable = new int[1 << HASH_BITS];
+
+	/**
+	 *
+	 * @param rawLength length of data to compress
+	 * @return size of dst enough to compress it to
+	 */
+	public static int maxCompressedLength(int rawLength) {
+		return rawLength + rawLength / 255 + 16;
+	}
+
+	/**
+	 *
+	 * @param src data to compress
+	 * @param srcLength length of it
+	 * @param dst array to compress to; should have {@link #maxCompressedLength(int)} bytes from dstOffset
+	 * @param dstOffset where to start writing
+	 * @return compressed length
+	 */
+	public int compress(byte[] src, int srcLength, byte[] dst, int dstOffset) {
+		Arrays.fill(matchTable, -1);
+		int anchor = 0;
+		int ip = 0;
+		int op = dstOffset;
+		int limit = srcLength - MIN_MATCH;
+		while (ip <= limit) {
+			int sequence = readInt(src, ip);
+			int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+			int ref = matchTable[hash];
+			matchTable[hash] = ip;
+			if (ref >= 0 && ip - ref <= MAX_OFFSET && readInt(src, ref) == sequence) {
+				int matchLength = MIN_MATCH;
+				while (ip + matchLength < srcLength && src[ref + matchLength] == src[ip + matchLength]) {
+					matchLength++;
+				}
+				op = writeLiterals(dst, op, src, anchor, ip - anchor, matchLength - MIN_MATCH);
+				dst[op++] = (byte) (ip - ref);
+				dst[op++] = (byte) ((ip - ref) >>> 8);
+				if (matchLength - MIN_MATCH >= 15) {
+					op = writeCount(dst, op, matchLength - MIN_MATCH - 15);
+				}
+				ip += matchLength;
+				anchor = ip;
+			}
+			else {
+				ip++;
+			}
+		}
+		op = writeLiterals(dst, op, src, anchor, srcLength - anchor, 0);
+		return op - dstOffset;
+	}
+
+	/**
+	 *
+	 * @param src compressed data
+	 * @param srcOffset where it starts
+	 * @param srcLength compressed length
+	 * @param dst array to decompress to
+	 * @param rawLength length of the data before compression
+	 * @throws IllegalArgumentException if the data is not compressed by the codec, or rawLength doesn't match
+	 */
+	public static void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int rawLength) {
+		int ip = srcOffset;
+		int end = srcOffset + srcLength;
+		int op = 0;
+		try {
+			while (true) {
+				int token = src[ip++] & 0xFF;
+				int literals = token >>> 4;
+				if (literals == 15) {
+					while (true) {
+						int count = src[ip++] & 0xFF;
+						literals += count;
+						if (count != 255) {
+							break;
+						}
+					}
+				}
+				System.arraycopy(src, ip, dst, op, literals);
+				ip += literals;
+				op += literals;
+				if (op >= rawLength) {
+					break;
+				}
+
+				int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+				ip += 2;
+				int matchLength = token & 0x0F;
+				if (matchLength == 15) {
+					while (true) {
+						int count = src[ip++] & 0xFF;
+						matchLength += count;
+						if (count != 255) {
+							break;
+						}
+					}
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - offset;
+				if (offset == 0 || ref < 0 || op + matchLength > rawLength) {
+					throw new IllegalArgumentException("Corrupted block: match at " + op + " of " + rawLength);
+				}
+				for (int i = 0; i < matchLength; i++) { //matches could overlap with what they copy
+					dst[op++] = dst[ref++];
+				}
+			}
+		}
+		catch (ArrayIndexOutOfBoundsException aioobe) {
+			throw new IllegalArgumentException("Corrupted block: data is cut", aioobe);
+		}
+		if (ip != end || op != rawLength) {
+			throw new IllegalArgumentException("Corrupted block: " + (ip - srcOffset) + " of " + srcLength + " bytes are decompressed to " + op + " of " + rawLength);
+		}
+	}
+
+	private static int readInt(byte[] src, int i) {
+		return (src[i] & 0xFF) | (src[i + 1] & 0xFF) << 8 | (src[i + 2] & 0xFF) << 16 | (src[i + 3] & 0xFF) << 24;
+	}
+
+	private static int writeLiterals(byte[] dst, int op, byte[] src, int from, int literals, int matchCount) {
+		dst[op++] = (byte) (Math.min(literals, 15) << 4 | Math.min(matchCount, 15));
+		if (literals >= 15) {
+			op = writeCount(dst, op, literals - 15);
+		}
+		System.arraycopy(src, from, dst, op, literals);
+		return op + literals;
+	}
+
+	private static int writeCount(byte[] dst, int op, int count) {
+		while (count >= 255) {
+			dst[op++] = (byte) 255;
+			count -= 255;
+		}
+		dst[op++] = (byte) count;
+		return op;
+	}
+}
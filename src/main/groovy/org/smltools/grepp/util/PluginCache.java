@@ -0,0 +1,403 @@
+package org.smltools.grepp.util;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.security.CodeSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * On-disk cache of compiled groovy plugins, so a plugin is compiled only when its source, grepp or the Groovy version changes. <br>
+ * Compiled classes of a plugin are kept in plugin_dir/.cache/&lt;file name&gt;-&lt;hash&gt;, where hash is SHA-1 of the source, the grepp build (see {@link #GREPP_BUILD}) and the Groovy version. <br>
+ * Cached classes which fail to load or link (e.g. if they were compiled against other grepp classes) are treated as not cached, i.e. recompiled. <br>
+ * Each entry has a manifest with the main class name and the plugin id (i.e. id() of its ...Params annotation), so plugins can be looked up by id without loading them. <br>
+ * If the cache can't be written, plugins are still loaded from the freshly compiled classes.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class PluginCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(PluginCache.class);
+	public static final String CACHE_DIR = ".cache";
+	private static final String MANIFEST = "plugin.properties";
+	private static final String MAIN_CLASS_PROP = "mainClass";
+	private static final String ID_PROP = "id";
+	private static final String CLASS_FILE_EXTENSION = ".class";
+
+	/**
+	 * Name, size and modification time of the grepp jar; or grepp version, if classes aren't loaded from a jar.
+	 */
+	public static final String GREPP_BUILD = findGreppBuild();
+
+	private PluginCache() { throw new AssertionError(); } //please don't instantiate the class
+
+	/**
+	 * Finds plugin files in the dir, and their ids by the cached manifests. Plugins which weren't cached yet are compiled and cached for that. <br>
+	 * Plugins without an id are ignored.
+	 *
+	 * @param pluginDir dir with groovy plugins
+	 * @return plugin id to plugin file map, in the order of the files
+	 * @throws IllegalArgumentException if two plugins have the same id
+	 */
+	public static Map<String, File> findPluginIds(File pluginDir) {
+		Map<String, File> result = new LinkedHashMap<String, File>();
+		for (File pluginFile: listPluginFiles(pluginDir)) {
+			String id = getPluginId(pluginFile);
+			if (id != null) {
+				if (result.containsKey(id)) {
+					throw new IllegalArgumentException("Plugin id " + id + " of " + pluginFile.getName() + " already registered by " + result.get(id).getName() + "!");
+				}
+				result.put(id, pluginFile);
+			}
+			else {
+				LOGGER.error("{} was ignored; it has no plugin id", pluginFile.getName());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 *
+	 * @param pluginDir dir with groovy plugins
+	 * @return files of the dir, whatever their extension is, sorted by name; the cache dir isn't listed
+	 */
+	public static File[] listPluginFiles(File pluginDir) {
+		File[] files = pluginDir.listFiles(new java.io.FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile();
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		java.util.Arrays.sort(files);
+		return files;
+	}
+
+	/**
+	 *
+	 * @param pluginFile groovy plugin file
+	 * @return id of the plugin, or null if it has none or can't be compiled
+	 */
+	public static String getPluginId(File pluginFile) {
+		Properties manifest = readManifest(entryDirOf(pluginFile));
+		if (manifest != null) {
+			LOGGER.trace("Plugin id of {} is found in cache", pluginFile.getName());
+			return manifest.getProperty(ID_PROP);
+		}
+		Class<?> pluginClass = loadClass(pluginFile);
+		return pluginClass != null ? findId(pluginClass) : null;
+	}
+
+	/**
+	 * Loads the main class of the plugin from the cache; compiles and caches it if there is no fresh cache entry.
+	 *
+	 * @param pluginFile groovy plugin file
+	 * @return the main class of the plugin, or null if it can't be compiled
+	 */
+	public static Class<?> loadClass(File pluginFile) {
+		File entryDir = entryDirOf(pluginFile);
+		if (entryDir == null) {
+			return null;
+		}
+
+		Properties manifest = readManifest(entryDir);
+		if (manifest != null) {
+			try {
+				Map<String, byte[]> classes = readClasses(entryDir);
+				LOGGER.trace("Loading {} from cache", pluginFile.getName());
+				Class<?> pluginClass = new BytesClassLoader(classes).loadClass(manifest.getProperty(MAIN_CLASS_PROP));
+				pluginClass.getDeclaredMethods(); //so classes its methods refer to are resolved now, not on the first call
+				return pluginClass;
+			}
+			catch (IOException ioe) {
+				LOGGER.debug("Can't read cached classes of {}; recompiling", pluginFile.getName(), ioe);
+			}
+			catch (ClassNotFoundException cnfe) {
+				LOGGER.debug("Cached classes of {} are incomplete; recompiling", pluginFile.getName(), cnfe);
+			}
+			catch (LinkageError le) { //e.g. ClassFormatError, or NoClassDefFoundError of a changed grepp class
+				LOGGER.debug("Cached classes of {} can't be linked; recompiling", pluginFile.getName(), le);
+			}
+		}
+
+		try {
+			LOGGER.trace("Compiling {}", pluginFile.getName());
+			Map<String, byte[]> classes = compile(pluginFile);
+			String mainClassName = findMainClassName(pluginFile, classes);
+			Class<?> pluginClass = new BytesClassLoader(classes).loadClass(mainClassName);
+			store(pluginFile, entryDir, classes, mainClassName, findId(pluginClass));
+			return pluginClass;
+		}
+		catch (IOException ioe) {
+			LOGGER.error("Can't open groovy file;\n", ioe);
+		}
+		catch (CompilationFailedException cfe) {
+			LOGGER.error("Can't compile groovy plugin;\n", cfe);
+		}
+		catch (ClassNotFoundException cnfe) {
+			LOGGER.error("Can't load compiled groovy plugin;\n", cnfe);
+		}
+		return null;
+	}
+
+	private static File entryDirOf(File pluginFile) {
+		try {
+			String hash = GreppUtil.sha1Of(pluginFile, GREPP_BUILD + ";" + GroovySystem.getVersion());
+			return new File(new File(pluginFile.getParentFile(), CACHE_DIR), pluginFile.getName() + "-" + hash);
+		}
+		catch (IOException ioe) {
+			LOGGER.error("Can't open groovy file;\n", ioe);
+			return null;
+		}
+	}
+
+	private static String findGreppBuild() {
+		try {
+			CodeSource codeSource = PluginCache.class.getProtectionDomain().getCodeSource();
+			if (codeSource != null && codeSource.getLocation() != null && "file".equals(codeSource.getLocation().getProtocol())) {
+				File jar = new File(codeSource.getLocation().toURI());
+				if (jar.isFile()) {
+					return jar.getName() + ";" + jar.length() + ";" + jar.lastModified();
+				}
+			}
+		}
+		catch (Exception e) {
+			LOGGER.debug("Can't find grepp jar", e);
+		}
+		Package greppPackage = PluginCache.class.getPackage();
+		return greppPackage != null && greppPackage.getImplementationVersion() != null ? greppPackage.getImplementationVersion() : "dev";
+	}
+
+	private static Properties readManifest(File entryDir) {
+		if (entryDir == null) {
+			return null;
+		}
+		File manifestFile = new File(entryDir, MANIFEST);
+		if (!manifestFile.isFile()) {
+			return null;
+		}
+
+		Properties manifest = new Properties();
+		try {
+			InputStream in = new FileInputStream(manifestFile);
+			try {
+				manifest.load(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.debug("Can't read {}", manifestFile.getPath(), ioe);
+			return null;
+		}
+		return manifest.getProperty(MAIN_CLASS_PROP) != null ? manifest : null;
+	}
+
+	private static Map<String, byte[]> readClasses(File entryDir) throws IOException {
+		Map<String, byte[]> classes = new HashMap<String, byte[]>();
+		File[] classFiles = entryDir.listFiles();
+		if (classFiles == null) {
+			throw new IOException("Can't list " + entryDir.getPath());
+		}
+		for (File classFile: classFiles) {
+			String name = classFile.getName();
+			if (name.endsWith(CLASS_FILE_EXTENSION)) {
+				classes.put(name.substring(0, name.length() - CLASS_FILE_EXTENSION.length()), readBytes(classFile));
+			}
+		}
+		return classes;
+	}
+
+	private static byte[] readBytes(File file) throws IOException {
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			int pos = 0;
+			int read;
+			while (pos < bytes.length && (read = in.read(bytes, pos, bytes.length - pos)) != -1) {
+				pos += read;
+			}
+			if (pos < bytes.length) {
+				throw new IOException(file.getPath() + " is truncated");
+			}
+		}
+		finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, byte[]> compile(File pluginFile) throws IOException {
+		CompilationUnit unit = new CompilationUnit(new CompilerConfiguration(), null, new GroovyClassLoader(PluginCache.class.getClassLoader()));
+		unit.addSource(pluginFile);
+		unit.compile(Phases.CLASS_GENERATION);
+
+		Map<String, byte[]> classes = new HashMap<String, byte[]>();
+		for (GroovyClass groovyClass: (List<GroovyClass>) unit.getClasses()) {
+			classes.put(groovyClass.getName(), groovyClass.getBytes());
+		}
+		return classes;
+	}
+
+	/**
+	 * Main class is the one named as the file; otherwise the first top level class.
+	 */
+	private static String findMainClassName(File pluginFile, Map<String, byte[]> classes) throws ClassNotFoundException {
+		String baseName = pluginFile.getName();
+		if (baseName.lastIndexOf('.') > 0) {
+			baseName = baseName.substring(0, baseName.lastIndexOf('.'));
+		}
+		String topLevel = null;
+		for (String name: classes.keySet()) {
+			String simpleName = name.substring(name.lastIndexOf('.') + 1);
+			if (simpleName.equals(baseName)) {
+				return name;
+			}
+			else if (topLevel == null && simpleName.indexOf('$') == -1) {
+				topLevel = name;
+			}
+		}
+		if (topLevel == null) {
+			throw new ClassNotFoundException("No top level class in " + pluginFile.getName());
+		}
+		return topLevel;
+	}
+
+	/**
+	 *
+	 * @return value of id() of the first annotation which has it, e.g. of ReportMethodParams
+	 */
+	private static String findId(Class<?> pluginClass) {
+		for (Annotation annotation: pluginClass.getAnnotations()) {
+			try {
+				Method idMethod = annotation.annotationType().getMethod(ID_PROP);
+				Object id = idMethod.invoke(annotation);
+				if (id instanceof String) {
+					return (String) id;
+				}
+			}
+			catch (NoSuchMethodException nsme) {
+				//not a plugin params annotation
+			}
+			catch (Exception e) {
+				LOGGER.debug("Can't get id of {}", pluginClass.getName(), e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the entry to a temporary dir and renames it, so a concurrently started grepp never sees a partial entry. Stale entries of the file are removed.
+	 */
+	private static void store(File pluginFile, File entryDir, Map<String, byte[]> classes, String mainClassName, String id) {
+		File cacheDir = entryDir.getParentFile();
+		File tmpDir = new File(cacheDir, entryDir.getName() + ".tmp" + System.nanoTime());
+		try {
+			if (!tmpDir.mkdirs()) {
+				throw new IOException("Can't create " + tmpDir.getPath());
+			}
+			for (Map.Entry<String, byte[]> classEntry: classes.entrySet()) {
+				writeBytes(new File(tmpDir, classEntry.getKey() + CLASS_FILE_EXTENSION), classEntry.getValue());
+			}
+			Properties manifest = new Properties();
+			manifest.setProperty(MAIN_CLASS_PROP, mainClassName);
+			if (id != null) {
+				manifest.setProperty(ID_PROP, id);
+			}
+			OutputStream out = new FileOutputStream(new File(tmpDir, MANIFEST));
+			try {
+				manifest.store(out, pluginFile.getName() + " compiled by Groovy " + GroovySystem.getVersion() + " for grepp " + GREPP_BUILD);
+			}
+			finally {
+				out.close();
+			}
+
+			File[] entries = cacheDir.listFiles();
+			if (entries != null) {
+				for (File staleEntry: entries) {
+					if (staleEntry.getName().startsWith(pluginFile.getName() + "-") && !staleEntry.equals(tmpDir)) {
+						delete(staleEntry);
+					}
+				}
+			}
+			if (!tmpDir.renameTo(entryDir)) {
+				LOGGER.debug("{} was cached concurrently", pluginFile.getName());
+			}
+			else {
+				LOGGER.debug("{} is cached to {}", pluginFile.getName(), entryDir.getPath());
+			}
+		}
+		catch (IOException ioe) {
+			LOGGER.debug("Can't cache {}; it'll be compiled next time", pluginFile.getName(), ioe);
+		}
+		finally {
+			delete(tmpDir);
+		}
+	}
+
+	private static void writeBytes(File file, byte[] bytes) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child: children) {
+				delete(child);
+			}
+		}
+		if (file.exists() && !file.delete()) {
+			LOGGER.debug("Can't delete {}", file.getPath());
+		}
+	}
+
+	/**
+	 * Defines classes of a single plugin from their bytecode, on demand.
+	 */
+	private static final class BytesClassLoader extends ClassLoader {
+		private final Map<String, byte[]> classes;
+
+		BytesClassLoader(Map<String, byte[]> classes) {
+			super(PluginCache.class.getClassLoader());
+			this.classes = classes;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] bytes = classes.get(name);
+			if (bytes == null) {
+				throw new ClassNotFoundException(name);
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -14,6 +14,7 @@ public class PropertiesParserFactory {
 	public static final String GREPP_PROPERTIES_PARSER_PLUGIN_DIR = "/plugin/propertiesParsers";
 
     private static final Map<String, Class<? extends PropertiesParser>> ID_TO_PARSER_CLASS_MAP = new HashMap<String, Class<? extends PropertiesParser>>();
+    private static final Map<String, File> PLUGIN_FILES_BY_ID = new HashMap<String, File>();
 
     static {
     	try {
@@ -27,17 +28,11 @@ public class PropertiesParserFactory {
             File pluginDir = new File(System.getProperty(GREPP_HOME_SYSTEM_OPTION), GREPP_PROPERTIES_PARSER_PLUGIN_DIR);
             if (pluginDir.exists() && pluginDir.isDirectory()) {
                 LOGGER.trace("Plugin dir {} exists; plugging in PropertiesParsers enabled", GREPP_PROPERTIES_PARSER_PLUGIN_DIR);
-                for (File pluginFile: pluginDir.listFiles()) {
-                    LOGGER.trace("Found file: {}", pluginFile.getName());
-                    Class<?> pluginClass = GreppUtil.loadGroovyClass(pluginFile);
-                    if (pluginClass != null && PropertiesParser.class.isAssignableFrom(pluginClass)) {
-						@SuppressWarnings("unchecked")
-                    	Class<? extends PropertiesParser> parserClass = (Class<? extends PropertiesParser>) pluginClass;
-                        addIdToParserClassMapping(null, parserClass);
-                    }
-                    else {
-                        LOGGER.error("{} was ignored class: {}", pluginFile.getName(), pluginClass);
+                for (Map.Entry<String, File> plugin: PluginCache.findPluginIds(pluginDir).entrySet()) { //loaded on the first use, see getParserInstanceById
+                    if (ID_TO_PARSER_CLASS_MAP.containsKey(plugin.getKey())) {
+                        throw new IllegalArgumentException("Parser id " + plugin.getKey() + " already registered!");
                     }
+                    PLUGIN_FILES_BY_ID.put(plugin.getKey(), plugin.getValue());
                 }
             }
             else {
@@ -76,8 +71,26 @@ public class PropertiesParserFactory {
         }
     }
 
+	/**
+	 * Finds a parser class by id; a plugin is loaded when it's asked for the first time.
+	 */
+	@SuppressWarnings("unchecked")
+	private static synchronized Class<? extends PropertiesParser> findParserClass(String parserId) {
+		File pluginFile = PLUGIN_FILES_BY_ID.remove(parserId);
+		if (pluginFile != null) {
+			Class<?> pluginClass = PluginCache.loadClass(pluginFile);
+			if (pluginClass != null && PropertiesParser.class.isAssignableFrom(pluginClass)) {
+				addIdToParserClassMapping(null, (Class<? extends PropertiesParser>) pluginClass);
+			}
+			else {
+				LOGGER.error("{} was ignored class: {}", pluginFile.getName(), pluginClass);
+			}
+		}
+		return ID_TO_PARSER_CLASS_MAP.get(parserId);
+	}
+
 	public static PropertiesParser getParserInstanceById(String parserId) {
-		Class<? extends PropertiesParser> parserClass = ID_TO_PARSER_CLASS_MAP.get(parserId);
+		Class<? extends PropertiesParser> parserClass = findParserClass(parserId);
 		if (parserClass != null) {
 			try {
 				return parserClass.newInstance();
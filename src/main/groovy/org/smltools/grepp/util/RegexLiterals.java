@@ -0,0 +1,237 @@
+package org.smltools.grepp.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *
+ * Literal substrings which any match of a regex has to contain. <br>
+ * Extraction is conservative: anything in groups, classes, optional or alternated parts is not taken into account, <br>
+ * and patterns with embedded flags (e.g. case insensitive) have no literals at all.
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class RegexLiterals {
+	private final List<String> literals;
+	private final boolean isLiteral;
+
+	private RegexLiterals(List<String> literals, boolean isLiteral) {
+		this.literals = Collections.unmodifiableList(literals);
+		this.isLiteral = isLiteral;
+	}
+
+	/**
+	 * Extracts literals from a regex.
+	 *
+	 * @param regex regex String
+	 * @return RegexLiterals instance, or null if no literal is guaranteed to be in a match
+	 */
+	public static RegexLiterals of(String regex) {
+		if (regex == null) {
+			throw new IllegalArgumentException("Regex shouldn't be null");
+		}
+
+		List<String> literals = new ArrayList<String>();
+		StringBuilder literal = new StringBuilder();
+		boolean isLiteral = true;
+		int length = regex.length();
+		int i = 0;
+		while (i < length) {
+			char ch = regex.charAt(i);
+			switch (ch) {
+				case '\\': {
+					if (i + 1 >= length) {
+						return null; //invalid anyway
+					}
+					char escaped = regex.charAt(i + 1);
+					if (escaped == 'Q') {
+						int end = regex.indexOf("\\E", i + 2);
+						literal.append(end >= 0 ? regex.substring(i + 2, end) : regex.substring(i + 2));
+						i = end >= 0 ? end + 2 : length;
+					}
+					else if (Character.isLetterOrDigit(escaped)) { //a class, a boundary or a coded char
+						isLiteral = false;
+						endLiteral(literal, literals);
+						i = skipEscapeArgs(regex, i + 2);
+					}
+					else {
+						literal.append(escaped);
+						i += 2;
+					}
+					break;
+				}
+				case '(': {
+					if (i + 2 < length && regex.charAt(i + 1) == '?' && Character.isLetter(regex.charAt(i + 2))) {
+						return null; //embedded flags could change what the literals match
+					}
+					isLiteral = false;
+					endLiteral(literal, literals);
+					i = skipGroup(regex, i);
+					break;
+				}
+				case '[': {
+					isLiteral = false;
+					endLiteral(literal, literals);
+					i = skipClass(regex, i);
+					break;
+				}
+				case '|': {
+					return null; //alternatives may have nothing in common
+				}
+				case '?':
+				case '*':
+				case '{': {
+					isLiteral = false;
+					if (literal.length() > 0) { //last char is optional
+						literal.setLength(literal.length() - 1);
+					}
+					endLiteral(literal, literals);
+					i = ch == '{' ? skipTo(regex, i, '}') : i + 1;
+					break;
+				}
+				case '+': {
+					isLiteral = false;
+					endLiteral(literal, literals);
+					i++;
+					break;
+				}
+				case '.':
+				case '^':
+				case '$': {
+					isLiteral = false;
+					endLiteral(literal, literals);
+					i++;
+					break;
+				}
+				default: {
+					literal.append(ch);
+					i++;
+				}
+			}
+		}
+		endLiteral(literal, literals);
+
+		if (literals.isEmpty()) {
+			return null;
+		}
+		return new RegexLiterals(literals, isLiteral && literals.size() == 1);
+	}
+
+	/**
+	 *
+	 * @return true if the regex matches exactly one literal String, i.e. {@link #getLongest()}
+	 */
+	public boolean isLiteral() {
+		return isLiteral;
+	}
+
+	/**
+	 *
+	 * @return the longest literal, which is usually the most selective one
+	 */
+	public String getLongest() {
+		String longest = literals.get(0);
+		for (String literal : literals) {
+			if (literal.length() > longest.length()) {
+				longest = literal;
+			}
+		}
+		return longest;
+	}
+
+	public List<String> getLiterals() {
+		return literals;
+	}
+
+	private static void endLiteral(StringBuilder literal, List<String> literals) {
+		if (literal.length() > 0) {
+			literals.add(literal.toString());
+			literal.setLength(0);
+		}
+	}
+
+	/**
+	 * Skips what could be an argument of an escape like \x41, A, \p{L} or \k&lt;name&gt;. It may skip a literal after a class like \d as well, which is just less selective.
+	 */
+	private static int skipEscapeArgs(String regex, int from) {
+		int i = from;
+		while (i < regex.length() && Character.isLetterOrDigit(regex.charAt(i))) {
+			i++;
+		}
+		if (i < regex.length() && regex.charAt(i) == '{') {
+			return skipTo(regex, i, '}');
+		}
+		if (i < regex.length() && regex.charAt(i) == '<') {
+			return skipTo(regex, i, '>');
+		}
+		return i;
+	}
+
+	private static int skipTo(String regex, int from, char end) {
+		int idx = regex.indexOf(end, from);
+		return idx >= 0 ? idx + 1 : regex.length();
+	}
+
+	private static int skipClass(String regex, int from) {
+		int depth = 0;
+		int i = from;
+		while (i < regex.length()) {
+			char ch = regex.charAt(i);
+			if (ch == '\\') {
+				i += 2;
+				continue;
+			}
+			if (ch == '[') {
+				depth++;
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+					i++;
+				}
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') { //']' right after '[' is a char of the class
+					i++;
+				}
+			}
+			else if (ch == ']') {
+				depth--;
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+			i++;
+		}
+		return regex.length();
+	}
+
+	private static int skipGroup(String regex, int from) {
+		int depth = 0;
+		int i = from;
+		while (i < regex.length()) {
+			char ch = regex.charAt(i);
+			if (ch == '\\') {
+				if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					i = end >= 0 ? end + 2 : regex.length();
+					continue;
+				}
+				i += 2;
+				continue;
+			}
+			if (ch == '[') {
+				i = skipClass(regex, i);
+				continue;
+			}
+			if (ch == '(') {
+				depth++;
+			}
+			else if (ch == ')') {
+				depth--;
+				if (depth == 0) {
+					return i + 1;
+				}
+			}
+			i++;
+		}
+		return regex.length();
+	}
+}
@@ -0,0 +1,95 @@
+package org.smltools.grepp.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * Append-only temporary file for text which doesn't fit in memory. <br>
+ * Each appended piece is written as UTF-8 bytes prefixed by their count, and is read back by the offset returned on append. <br>
+ * File is deleted on close; it's not registered for deletion on exit, since the JVM would keep that registry growing in a long-running grepp (see -server).
+ *
+ * @author Alexander Semelit
+ *
+ */
+public final class SpillFile implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SpillFile.class);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+	private final RandomAccessFile data;
+	private long length = 0L;
+
+	/**
+	 *
+	 * @param prefix temporary file name prefix
+	 * @throws IOException if the file can't be created
+	 */
+	public SpillFile(String prefix) throws IOException {
+		file = File.createTempFile(prefix, ".spill");
+		data = new RandomAccessFile(file, "rw");
+		LOGGER.debug("Spilling to {}", file.getPath());
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 *
+	 * @return bytes written so far
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 *
+	 * @param text text to append
+	 * @return offset to read the text by
+	 * @throws IOException
+	 */
+	public long append(CharSequence text) throws IOException {
+		byte[] bytes = text.toString().getBytes(UTF_8);
+		long offset = length;
+		data.seek(offset);
+		data.writeInt(bytes.length);
+		data.write(bytes);
+		length += 4 + bytes.length;
+		return offset;
+	}
+
+	/**
+	 *
+	 * @param offset offset returned by {@link #append(CharSequence)}
+	 * @return text appended at the offset
+	 * @throws IOException
+	 */
+	public String read(long offset) throws IOException {
+		if (offset < 0 || offset >= length) {
+			throw new IllegalArgumentException("Offset should be in [0;" + length + "): " + offset);
+		}
+		data.seek(offset);
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	@Override
+	public void close() {
+		try {
+			data.close();
+		}
+		catch (IOException ioe) {
+			LOGGER.debug("Can't close {}", file.getPath(), ioe);
+		}
+		if (!file.delete()) {
+			LOGGER.debug("Can't delete {}", file.getPath());
+		}
+	}
+}
@@ -1,6 +1,9 @@
 defaults {
     spoolFileExtension='txt'
     resultsDir='results'
+    indexDir='index'
+    threadBuffersLimit='64M'
+    compressThreadBuffers=false
     report {
         aggregator = 'csv'
         printHeader = true
@@ -0,0 +1,240 @@
+import groovy.transform.CompileStatic
+import java.lang.management.ManagementFactory
+import java.nio.charset.Charset
+import org.smltools.grepp.filters.Filter
+import org.smltools.grepp.filters.FilterChain
+import org.smltools.grepp.filters.StringAggregator
+import org.smltools.grepp.filters.entry.LogEntryFilter
+import org.smltools.grepp.filters.entry.SimpleFilter
+import org.smltools.grepp.filters.entry.ThreadLogEntryFilter
+import org.smltools.grepp.output.SplittableOutput
+import org.smltools.grepp.processors.ByteEntrySource
+import org.smltools.grepp.processors.LineSource
+import org.smltools.grepp.processors.MappedFileLineSource
+
+/**
+ * Rough throughput comparison of grepp internals. <br>
+ * Test fixtures from grepp.home are replicated into a temporary file of grepp.bench.size MB (256 by default), which is then read by every measured way. <br>
+ * Allocated bytes per GB of input are printed as well, where the JVM can tell them (see com.sun.management.ThreadMXBean). <br>
+ * Per-entry overhead of FilterChain is measured on the fixture lines in memory. <br>
+ * Thread joining is measured on a synthetic log of grepp.bench.threads interleaved threads (5000 by default).
+ */
+
+def HOME = System.getProperty("grepp.home")
+def MB = 1024L*1024L
+def benchSize = Long.valueOf(System.getProperty("grepp.bench.size", "256"))*MB
+def runs = Integer.valueOf(System.getProperty("grepp.bench.runs", "3"))
+
+File benchFile = File.createTempFile("grepp_bench", ".log")
+benchFile.deleteOnExit()
+def fixtures = new File(HOME).listFiles().findAll { it.name.endsWith(".log") }
+benchFile.withOutputStream { out ->
+	long written = 0
+	while (written < benchSize) {
+		fixtures.each { fixture ->
+			out << fixture.bytes
+			written += fixture.length()
+		}
+	}
+}
+println "Benchmark file: ${benchFile.length()/MB} MB made of ${fixtures*.name}"
+
+def threads = ManagementFactory.getThreadMXBean()
+def allocatedBytes = { ->
+	threads.respondsTo("getThreadAllocatedBytes", [long] as Object[]) ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1L
+}
+
+def measure = { String name, Closure operation ->
+	operation.call() //warming up
+	long total = 0
+	long allocated = 0
+	runs.times {
+		long allocatedBefore = allocatedBytes()
+		long start = System.nanoTime()
+		operation.call()
+		total += System.nanoTime() - start
+		allocated += allocatedBytes() - allocatedBefore
+	}
+	double seconds = total/runs/1e9
+	double allocatedPerGB = allocated/runs/(benchFile.length()/(1024.0*MB))
+	println String.format("%-30s %8.3f s %10.1f MB/s %10.1f MB allocated per GB", name, seconds, benchFile.length()/MB/seconds, allocatedPerGB/MB)
+}
+
+measure("File.eachLine") {
+	long chars = 0
+	benchFile.eachLine { String line ->
+		chars += line.length()
+	}
+	chars
+}
+
+measure("MappedFileLineSource") {
+	long chars = 0
+	LineSource lines = new MappedFileLineSource(benchFile)
+	try {
+		String line
+		while ((line = lines.readLine()) != null) {
+			chars += line.length()
+		}
+	}
+	finally {
+		lines.close()
+	}
+	chars
+}
+
+//entries are made by date and filtered by a rare literal, i.e. most of them are dropped
+def entryStarter = "\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}"
+def filterPattern = "Man Chu"
+
+measure("eachLine + filters") {
+	LogEntryFilter logEntryFilter = new LogEntryFilter()
+	logEntryFilter.setStarter(entryStarter)
+	SimpleFilter simpleFilter = new SimpleFilter()
+	simpleFilter.setFilterPattern(filterPattern)
+	long passed = 0
+	benchFile.eachLine { String line ->
+		String entry = logEntryFilter.filter(line)
+		if (entry != null && simpleFilter.filter(entry) != null) {
+			passed++
+		}
+	}
+	passed
+}
+
+measure("ByteEntrySource + filters") {
+	LogEntryFilter logEntryFilter = new LogEntryFilter()
+	logEntryFilter.setStarter(entryStarter)
+	SimpleFilter simpleFilter = new SimpleFilter()
+	simpleFilter.setFilterPattern(filterPattern)
+	SplittableOutput output = [isSplittable: { true }, isEntryStart: { CharSequence line -> logEntryFilter.isEntryStart(line) }
+		, mayPass: { CharSequence entry -> simpleFilter.matches(entry) }, endPart: { String line -> }] as SplittableOutput
+	long passed = 0
+	ByteEntrySource entries = new ByteEntrySource(benchFile, Charset.defaultCharset(), ByteEntrySource.DEFAULT_BUFFER_SIZE, 0L, -1L)
+	try {
+		CharSequence entry
+		while ((entry = entries.nextEntry(output)) != null) {
+			if (output.mayPass(entry)) {
+				entries.getLines()
+				passed++
+			}
+		}
+	}
+	finally {
+		entries.close()
+	}
+	passed
+}
+
+//per-entry overhead of a chain of filters which pass everything: iterating the filters list as FilterChain did before it was compiled, vs the compiled FilterChain
+def entries = fixtures.collectMany { it.readLines() }
+def entryRuns = Math.max(1, (int) (5000000 / Math.max(1, entries.size())))
+List<Filter<String>> passingFilters = (1..5).collect { new PassingFilter() }
+FilterChain<String> chain = new FilterChain<String>(new ConfigObject(), new StringAggregator(), String.class)
+passingFilters.each { chain.add(it) }
+
+def measureEntries = { String name, Closure operation ->
+	operation.call() //warming up
+	long allocatedBefore = allocatedBytes()
+	long start = System.nanoTime()
+	long passed = operation.call()
+	long total = System.nanoTime() - start
+	long allocated = allocatedBytes() - allocatedBefore
+	long count = (long) entries.size() * entryRuns
+	println String.format("%-30s %8.1f ns per entry %10.1f bytes allocated per entry (%d passed)", name, total/(double) count, allocated/(double) count, passed)
+}
+
+measureEntries("Iterated filters (before)") {
+	IteratedFilters.filterAll(passingFilters, entries, entryRuns)
+}
+
+measureEntries("Compiled FilterChain") {
+	IteratedFilters.filterAll(chain, entries, entryRuns)
+}
+
+//thread joining: each thread has a few entries interleaved with other threads' ones, some of them have a skip end, and the last one ends it
+def threadCount = Integer.valueOf(System.getProperty("grepp.bench.threads", "5000"))
+def threadLines = []
+def random = new Random(42)
+def openThreads = []
+int nextThread = 0
+while (nextThread < threadCount || !openThreads.isEmpty()) {
+	if (nextThread < threadCount && (openThreads.size() < 1000 || openThreads.isEmpty())) {
+		openThreads << [id: nextThread++, left: 2 + random.nextInt(8)]
+	}
+	def thread = openThreads[random.nextInt(openThreads.size())]
+	thread.left--
+	def marker = thread.left == 0 ? (random.nextBoolean() ? "ThreadEnd1" : "ThreadEnd2") : (random.nextInt(4) == 0 ? "SkipPattern ThreadEnd1" : "")
+	threadLines << "2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '${thread.id}' $marker".toString()
+	threadLines << "Some payload of thread ${thread.id}".toString()
+	if (thread.left == 0) {
+		openThreads.remove(thread)
+	}
+}
+
+def measureThreads = { String name, Closure operation ->
+	operation.call() //warming up
+	long start = System.nanoTime()
+	long joined = 0
+	runs.times { joined = operation.call() }
+	double seconds = (System.nanoTime() - start)/runs/1e9
+	println String.format("%-30s %8.3f s %10.1f lines/s (%d threads joined)", name, seconds, threadLines.size()/seconds, joined)
+}
+
+def joinThreads = { boolean isCompressed ->
+	ThreadLogEntryFilter threadFilter = new ThreadLogEntryFilter()
+	threadFilter.setThreadBuffersCompressed(isCompressed)
+	threadFilter.setStarter(entryStarter)
+	threadFilter.setThreadExtractorList(["ThreadStart: '\\d{1,}'"])
+	threadFilter.setThreadSkipEndPatternList(["SkipPattern"])
+	threadFilter.setThreadEndPatternList(["ThreadEnd1", "ThreadEnd2"])
+	long joined = 0
+	threadLines.each { String line ->
+		if (threadFilter.filter(line) != null) {
+			joined++
+		}
+	}
+	joined
+}
+
+measureThreads("ThreadLogEntryFilter") { joinThreads(false) }
+measureThreads("ThreadLogEntryFilter, compressed") { joinThreads(true) }
+
+@CompileStatic
+class PassingFilter implements Filter<String> {
+	String filter(String data) {
+		return data
+	}
+}
+
+@CompileStatic
+class IteratedFilters {
+	static long filterAll(List<Filter<String>> filters, List<String> entries, int runs) {
+		long passed = 0
+		for (int run = 0; run < runs; run++) {
+			for (String entry : entries) {
+				String filtered = entry
+				Iterator<Filter<String>> filterIterator = filters.iterator()
+				while (filtered != null && filterIterator.hasNext()) {
+					filtered = filterIterator.next().filter(filtered)
+				}
+				if (filtered != null) {
+					passed++
+				}
+			}
+		}
+		return passed
+	}
+
+	static long filterAll(FilterChain<String> chain, List<String> entries, int runs) {
+		long passed = 0
+		for (int run = 0; run < runs; run++) {
+			for (String entry : entries) {
+				if (chain.filter(entry) != null) {
+					passed++
+				}
+			}
+		}
+		return passed
+	}
+}
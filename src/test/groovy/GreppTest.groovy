@@ -2,13 +2,35 @@ import org.smltools.grepp.filters.entry.*
 import org.smltools.grepp.filters.logfile.*
 import org.smltools.grepp.cli.Grepp
 import org.smltools.grepp.cli.CLIFacade
+import org.smltools.grepp.cli.GreppServer
 import org.smltools.grepp.config.ConfigHolder
+import org.smltools.grepp.config.ConfigSnapshot
+import org.smltools.grepp.config.FileNameIndex
+import org.smltools.grepp.output.SimpleOutput
+import org.smltools.grepp.output.SplittableOutput
+import org.smltools.grepp.output.SpoolOutputStream
+import org.smltools.grepp.filters.FilterBase
+import org.smltools.grepp.filters.enums.Event
 import org.smltools.grepp.util.GreppUtil
+import org.smltools.grepp.util.LzCodec
+import org.smltools.grepp.util.PluginCache
+import org.smltools.grepp.filters.ReportMethod
+import org.smltools.grepp.processors.ByteEntrySource
+import org.smltools.grepp.processors.InputStreamProcessor
+import org.smltools.grepp.processors.LineSource
+import org.smltools.grepp.processors.MappedFileLineSource
+import org.smltools.grepp.processors.ReadAheadLineSource
+import org.smltools.grepp.processors.ReadAheadInputStream
 import java.net.URL
 import groovy.xml.DOMBuilder
 import groovy.xml.dom.DOMCategory
 import groovy.util.GroovyTestCase
+import java.nio.charset.Charset
 import java.text.SimpleDateFormat
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
 
 class GreppTest extends GroovyTestCase {
 
@@ -24,34 +46,32 @@ class GreppTest extends GroovyTestCase {
 
 	public static String getOutput(Closure operation) {
 		def oldStdout = System.out
-		def pipeOut = new PipedOutputStream()
-		def pipeIn = new PipedInputStream(pipeOut)
-		System.setOut(new PrintStream(pipeOut))
+		def output = new ByteArrayOutputStream() //not a pipe, since nobody reads it until the operation is done
+		System.setOut(new PrintStream(output, true))
 
 		try {
-			operation.call()
-		}
-		catch (Exception e) {
-			pipeOut.close()
-			System.setOut(oldStdout)
-			throw e
+			operation.call(output)
 		}
 		finally {
 			System.setOut(oldStdout)
-			pipeOut.close()
 		}
 
-		def outputReader = new BufferedReader(new InputStreamReader(pipeIn))
+		return toLines(output)
+	}
 
-		StringBuffer actualResult = new StringBuffer()
-		if (outputReader.ready()) {
-			def line = outputReader.readLine()
-			while (line != null) {
-				actualResult.size() > 0 ? actualResult.append('\n').append(line) : actualResult.append(line)
-				line = outputReader.readLine()
-			}
+	public static String toLines(ByteArrayOutputStream output) {
+		return output.toString().readLines().join('\n')
+	}
+
+	/**
+	 * Waits until the output contains the text, rather than for some time.
+	 */
+	public static void waitForOutput(ByteArrayOutputStream output, String text) {
+		long deadline = System.currentTimeMillis() + 30000
+		while (!output.toString().contains(text)) {
+			assertTrue("Output hasn't got '$text' in time: ${output.toString()}", System.currentTimeMillis() < deadline)
+			sleep(10)
 		}
-		return actualResult.toString()
 	}
 
 	public static void assertGreppOutput(String expectedResult, Closure operation) {
@@ -92,6 +112,72 @@ class GreppTest extends GroovyTestCase {
 		assertTrue("Should have SimpleFilter", entryFilterChain.has(SimpleFilter.class))
 	}
 
+	void testConfigSnapshotProcessing() {
+		File configFile = new File(GREPP_CONFIG)
+		assertTrue("Config snapshot should be written", ConfigSnapshot.snapshotFileOf(configFile).exists())
+		def parsed = new ConfigSlurper().parse(configFile.toURI().toURL())
+		def snapshotted = ConfigSnapshot.read(configFile)
+		assertTrue("Config snapshot should be fresh", snapshotted != null)
+		assertTrue("Config snapshot should be the same as parsed config", parsed == snapshotted)
+		assertTrue("Config ids should be the same", FilterBase.configIdsSet(ReportFilter.class, parsed) == FilterBase.configIdsSet(ReportFilter.class, new ConfigHolder(new URL('file', '/', GREPP_CONFIG))))
+	}
+
+	void testFileNameConfigIdSwitching() {
+		assertTrue("Should find to_test", "to_test".equals(ConfigHolder.findConfigIdByFileName(config, "$HOME\\fpTest_test.log")))
+		assertTrue("Should find pr_test", "pr_test".equals(ConfigHolder.findConfigIdByFileName(config, "$HOME\\processing_test.log")))
+		assertTrue("Should find nothing", ConfigHolder.findConfigIdByFileName(config, "$HOME\\payload.log") == null)
+
+		def firstFound = new FileNameIndex([first: [pattern: 'c'], second: [pattern: 'a'], third: [pattern: '(b)\\1']])
+		assertTrue("First config in order should win", "first".equals(firstFound.find("abc")))
+		assertTrue("Back references should be matched", "third".equals(firstFound.find("xbb")))
+		def sameNames = new FileNameIndex([first: [pattern: '(?<name>x)y'], second: [pattern: '(?<name>z)'], third: [pattern: '(?<=a)b']])
+		assertTrue("Same named groups of different configs should be matched", "second".equals(sameNames.find("z")) && "third".equals(sameNames.find("ab")))
+
+		def edited = new ConfigHolder()
+		edited.savedConfigs.first.pattern = 'foo'
+		assertTrue("Should find the first", "first".equals(ConfigHolder.findConfigIdByFileName(edited, "foo.log")))
+		edited.savedConfigs.first.pattern = 'bar'
+		assertTrue("Edited pattern should be found", "first".equals(ConfigHolder.findConfigIdByFileName(edited, "bar.log")))
+		assertTrue("Old pattern shouldn't be found", ConfigHolder.findConfigIdByFileName(edited, "foo.log") == null)
+
+		def entryFilterChain = makeFilterChains(facade, "Foo $HOME\\processing_test.log").entryFilterChain
+		assertTrue("Switching to to_test should change filters", entryFilterChain.switchToConfigId("to_test"))
+		def toTestFilter = entryFilterChain.get(LogEntryFilter.class)
+		entryFilterChain.switchToConfigId("pr_test")
+		assertTrue("Filters should be different for pr_test", !toTestFilter.is(entryFilterChain.get(LogEntryFilter.class)))
+		entryFilterChain.switchToConfigId("to_test")
+		assertTrue("Filters of to_test should be reused", toTestFilter.is(entryFilterChain.get(LogEntryFilter.class)))
+	}
+
+	void testFilterCopying() {
+		def original = new LogEntryFilter()
+		original.setStarter("\\d{4}")
+		original.filter("2012 a")
+		def copy = original.copy()
+		assertTrue("Copy should start with no block", copy.filter("2013 b") == null)
+		assertTrue("Original block should be kept", original.filter("2014 c") == "2012 a")
+
+		def dateFilter = new EntryDateFilter()
+		assertTrue("Copy should have its own state", !dateFilter.copy().state.is(dateFilter.state))
+
+		assertTrue("Plain chain should be copyable", makeFilterChains(facade, "Foo $HOME\\processing_test.log").entryFilterChain.isCopyable())
+		def reportChain = makeFilterChains(new CLIFacade(config), "--count_ops $HOME\\processing_report_test.log").entryFilterChain
+		assertTrue("Report chain shouldn't be copyable", !reportChain.isCopyable())
+	}
+
+	void testBatchFiltering() {
+		def lines = new File(HOME, "processing_test.log").readLines()
+		def oneByOne = makeFilterChains(facade, "Foo $HOME\\processing_test.log").entryFilterChain
+		def expected = lines.collect { oneByOne.filter(it) }.findAll { it != null }
+		String flushed = oneByOne.processEvent(Event.CHUNK_ENDED)
+
+		def batched = makeFilterChains(new CLIFacade(config), "Foo $HOME\\processing_test.log").entryFilterChain
+		String[] batch = lines as String[]
+		batched.filterBatch(batch, batch.length)
+		assertTrue("Batch should be filtered as one by one", expected == batch.findAll { it != null })
+		assertTrue("Pending entry should be the same", flushed == batched.processEvent(Event.CHUNK_ENDED))
+	}
+
 	void testExtendedPatternProcessing() {
 		def entryFilterChain = makeFilterChains(facade, "-l test test%and%tets $HOME\\test*").entryFilterChain
 		assertTrue("Should have LogEntryFilter", entryFilterChain.has(LogEntryFilter.class))
@@ -165,6 +251,35 @@ doodki!"""
 		}
 	}
 
+	void testPluginCache() {
+		File pluginFile = new File(HOME, "plugin/reportMethods/TestPlugin.groovy")
+		Class<?> compiled = PluginCache.loadClass(pluginFile)
+		assertTrue("Plugin should be loaded", compiled != null && ReportMethod.isAssignableFrom(compiled))
+		assertTrue("Plugin should be cached", new File(HOME, "plugin/reportMethods/.cache").listFiles().any { it.name.startsWith("TestPlugin.groovy-") })
+
+		Class<?> cached = PluginCache.loadClass(pluginFile)
+		assertTrue("Cached plugin should be loaded", cached != null && cached.name == compiled.name)
+		assertTrue("Plugin id should be in the manifest", PluginCache.findPluginIds(pluginFile.getParentFile()).get("test") == pluginFile)
+
+		File entryDir = new File(HOME, "plugin/reportMethods/.cache").listFiles().find { it.name.startsWith("TestPlugin.groovy-") }
+		entryDir.listFiles().findAll { it.name.endsWith(".class") }.each { it.bytes = "not a class".bytes } //as if it was compiled by another JVM or grepp
+		Class<?> recompiled = PluginCache.loadClass(pluginFile)
+		assertTrue("Broken cached plugin should be recompiled", recompiled != null && recompiled.name == compiled.name)
+		assertTrue("Broken cache entry should be replaced", new File(entryDir, compiled.name + ".class").bytes != "not a class".bytes)
+
+		File duplicatesDir = File.createTempDir()
+		try {
+			new File(duplicatesDir, "TestPlugin.groovy").text = pluginFile.text
+			new File(duplicatesDir, "TestPlugin.txt").text = pluginFile.text //any file of the dir is a plugin
+			shouldFail(IllegalArgumentException) {
+				PluginCache.findPluginIds(duplicatesDir)
+			}
+		}
+		finally {
+			duplicatesDir.deleteDir()
+		}
+	}
+
 	void testOnTheFlyLockedConfig() {
 		def expectedResult = """\
 2000-01-01 10:05:56,951 [ACTIVE] ThreadStart: '15' 
@@ -264,6 +379,105 @@ Voo
 		}
 	}
 
+	void testThreadMarkersMatching() {
+		def lines = ["2012 T1 a", "2012 T1 EndSkip", "2012 T2 b", "2012 T1 End", "2012 T2 EE", "2012 T3 c"]
+		def filterLines = { List<String> ends ->
+			def filter = new ThreadLogEntryFilter()
+			filter.setStarter("\\d{4} ")
+			filter.setThreadExtractorList(["T\\d"])
+			filter.setThreadSkipEndPatternList(["EndSkip"])
+			filter.setThreadEndPatternList(ends)
+			lines.collect { filter.filter(it) }.findAll { it != null }
+		}
+
+		def entries = filterLines(["End"])
+		assertTrue("Skip end overlapping the end should keep the thread", entries.size() == 1 && entries[0].contains("T1 EndSkip") && entries[0].contains("T1 End") && !entries[0].contains("T2"))
+
+		entries = filterLines(["End", "(E)\\1"]) //back reference, so markers are matched one by one
+		assertTrue("Both threads should be ended", entries.size() == 2 && entries[0].contains("T1 End") && entries[1].contains("T2 b") && entries[1].contains("T2 EE"))
+
+		entries = filterLines(["(?<marker>End)", "(?<marker>EE)"]) //same group names, so markers are matched one by one
+		assertTrue("Both threads should be ended by named markers", entries.size() == 2 && entries[0].contains("T1 End") && entries[1].contains("T2 EE"))
+	}
+
+	void testThreadsSpilling() {
+		def lines = new File(HOME, "processing_test.log").readLines()
+		def filterLines = { Long limit ->
+			def filter = new ThreadLogEntryFilter()
+			filter.setStarter("\\d{4}-\\d{2}-\\d{2} ")
+			filter.setThreadExtractorList(["ThreadStart: '\\d{1,}'"])
+			filter.setThreadSkipEndPatternList(["SkipPattern"])
+			filter.setThreadEndPatternList(["ThreadEnd1", "ThreadEnd2"])
+			if (limit != null) {
+				filter.setThreadBuffersLimit(limit)
+			}
+			def entries = lines.collect { filter.filter(it) }.findAll { it != null }
+			entries << filter.processEvent(Event.CHUNK_ENDED)
+			entries
+		}
+
+		assertTrue("Spilled threads should be the same as in memory", filterLines(null) == filterLines(16L))
+	}
+
+	void testThreadBuffersCompression() {
+		def lines = (1..3000).collect { "2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '${it % 40}' ${it % 101 == 0 ? 'ThreadEnd1' : ''} payload $it".toString() }
+		def filterLines = { boolean isCompressed, Long limit ->
+			def filter = new ThreadLogEntryFilter()
+			filter.setStarter("\\d{4}-\\d{2}-\\d{2} ")
+			filter.setThreadExtractorList(["ThreadStart: '\\d{1,}'"])
+			filter.setThreadEndPatternList(["ThreadEnd1"])
+			filter.setThreadBuffersCompressed(isCompressed)
+			if (limit != null) {
+				filter.setThreadBuffersLimit(limit)
+			}
+			def entries = lines.collect { filter.filter(it) }.findAll { it != null }
+			entries << filter.processEvent(Event.CHUNK_ENDED)
+			entries
+		}
+
+		def expected = filterLines(false, null)
+		assertTrue("Compressed threads should be the same as plain", expected == filterLines(true, null))
+		assertTrue("Compressed and spilled threads should be the same as plain", expected == filterLines(true, 10000L))
+	}
+
+	void testLzCodec() {
+		def codec = new LzCodec()
+		[new File(HOME, "processing_test.log").bytes, new byte[0], "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".bytes, (0..255).collect { (byte) it } as byte[]].each { byte[] raw ->
+			byte[] compressed = new byte[LzCodec.maxCompressedLength(raw.length)]
+			int length = codec.compress(raw, raw.length, compressed, 0)
+			byte[] decompressed = new byte[raw.length]
+			LzCodec.decompress(compressed, 0, length, decompressed, raw.length)
+			assertTrue("Should be decompressed as it was", Arrays.equals(raw, decompressed))
+		}
+	}
+
+	void testInactiveThreadsPassing() {
+		def newFilter = { ->
+			def filter = new ThreadLogEntryFilter()
+			filter.setStarter("\\d{4}")
+			filter.setThreadExtractorList(["T\\d"])
+			filter.setThreadEndPatternList(["End"])
+			filter
+		}
+
+		def filter = newFilter()
+		filter.setThreadInactiveEntries(1)
+		def entries = ["2012 T1 a", "2012 T2 b", "2012 T2 c", "2012 T2 End", "2012 T3 d"].collect { filter.filter(it) }.findAll { it != null }
+		assertTrue("T1 should be passed once inactive", entries == ["2012 T1 a", "2012 T2 b\n2012 T2 c\n2012 T2 End"])
+
+		filter = newFilter()
+		filter.setThreadInactiveMillis(60000L, "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})", "yyyy-MM-dd HH:mm:ss")
+		entries = ["2012-09-20 05:00:00 T1 a", "2012-09-20 05:00:30 T2 b", "2012-09-20 05:01:10 T2 c", "2012-09-20 05:01:20 T2 d"].collect { filter.filter(it) }.findAll { it != null }
+		assertTrue("T1 should be passed after a minute", entries == ["2012-09-20 05:00:00 T1 a"])
+
+		filter = newFilter()
+		filter.setThreadInactiveMillis(60000L, "(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})", "yyyy-MM-dd HH:mm:ss")
+		entries = ["2012 T1 undated", "2012-09-20 05:00:00 T2 b", "2012-09-20 05:00:30 T2 c"].collect { filter.filter(it) }.findAll { it != null }
+		assertTrue("T1 started before any dated entry shouldn't be passed right away", entries.isEmpty())
+		entries = ["2012-09-20 05:01:10 T2 d", "2012-09-20 05:01:20 T2 e"].collect { filter.filter(it) }.findAll { it != null }
+		assertTrue("T1 should be passed a minute after the first dated entry", entries == ["2012 T1 undated"])
+	}
+
 	void testBasicFiltering() {
 
 		def expectedResult = """\
@@ -279,6 +493,99 @@ Foo Man Chu
 		}
 	}
 
+	/**
+	 * Each of the processing flags should change only how the file is read, and not the results.
+	 */
+	void testFlagsEquivalence() {
+		def flagsFile = new File(HOME+"\\processing_flags_test.log")
+		flagsFile.withWriter { writer ->
+			300.times { i ->
+				writer.write("2012-10-20 05:${String.format('%02d:%02d', i.intdiv(60), i % 60)},000 [ACTIVE] ThreadStart: '${i % 7}' \n${i % 3 == 0 ? 'Foo' : 'Boo'} $i\n${'payload ' * (i % 5)}\n")
+			}
+		}
+
+		try {
+			def expectedResult = getOutput {
+				Grepp.main("Foo $HOME\\processing_flags_test.log".split(" "))
+			}
+			assertTrue("Should find the last Foo", expectedResult.contains("Foo 297"))
+
+			FLAGS.each { flags ->
+				assertGreppOutput(expectedResult) {
+					Grepp.main("$flags Foo $HOME\\processing_flags_test.log".split(" "))
+				}
+			}
+		}
+		finally {
+			flagsFile.delete()
+		}
+	}
+
+	static final List<String> FLAGS = ["-mmap", "-par 2 -split 1K", "-lazy", "-ra", "-flush size", "-flush time:10"]
+
+	void testMappedFileLineSource() {
+		def mappedFile = new File(HOME+"\\processing_mapped_test.log")
+		mappedFile.setText("first\r\n\nthird line is longer than the window\r\n\u00fcml\u00e4ut\nlast without a new line", "UTF-8")
+		try {
+			def lines = new MappedFileLineSource(mappedFile, java.nio.charset.Charset.forName("UTF-8"), 8)
+			def readLines = []
+			try {
+				String line
+				while ((line = lines.readLine()) != null) {
+					readLines << line
+				}
+			}
+			finally {
+				lines.close()
+			}
+			assertTrue("Lines should be read across windows: " + readLines, readLines == mappedFile.readLines("UTF-8"))
+		}
+		finally {
+			mappedFile.delete()
+		}
+	}
+
+	void testInvalidFlushPolicy() {
+		["-flush never", "-flush size:10", "-flush time:0", "-flush time:soon"].each { flush ->
+			shouldFail(IllegalArgumentException) {
+				facade.parseOptions("$flush Foo $HOME\\processing_test.log".split(" "))
+			}
+		}
+		assertTrue("Interval should be parsed", CLIFacade.getFlushInterval(facade.parseOptions("-flush TIME:10 Foo $HOME\\processing_test.log".split(" "))) == 10L)
+	}
+
+	void testByteEntrySource() {
+		def entriesFile = new File(HOME+"\\processing_entries_test.log")
+		entriesFile.setText("leading line\n2012 first\nFoo 1\n2012 second\r\nFöö 2\r\n\n2012 a longer third entry\nFoo 3\nFoo 3 again\n2012 last", "UTF-8")
+
+		def expectedEntries = []
+		entriesFile.readLines("UTF-8").each { line ->
+			if (expectedEntries.isEmpty() || line.startsWith("2012")) {
+				expectedEntries << [line]
+			}
+			else {
+				expectedEntries[-1] << line
+			}
+		}
+
+		def output = [isEntryStart: { CharSequence line -> line.toString().startsWith("2012") }] as SplittableOutput
+		def entries = new ByteEntrySource(entriesFile, Charset.forName("UTF-8"), 8, 0L, -1L) //so entries don't fit, and the buffer is shifted and grown
+		try {
+			def actualEntries = []
+			def entry
+			while ((entry = entries.nextEntry(output)) != null) {
+				assertTrue("Entry should be its lines joined", entry.toString() == entries.getLines().join('\n'))
+				assertTrue("Line count should match", entries.getLineCount() == entries.getLines().size())
+				actualEntries << entries.getLines()
+			}
+			assertTrue("Entries not matched: " + actualEntries, expectedEntries == actualEntries)
+		}
+		finally {
+			entries.close()
+			entriesFile.delete()
+		}
+	}
+
 	void testBasicNoRegexFiltering() {
 
 		def expectedResult = """\
@@ -298,6 +605,84 @@ Boo
 
 	}
 
+	void testLiteralPrefilteredFiltering() {
+
+		def expectedResult = """\
+2012-10-20 05:05:56,951 [ACTIVE] ThreadStart: '5' 
+Boo
+\\this^should|be\$matched[with]no?pain(*)\\
+
+2012-10-20 05:05:56,951 [ACTIVE] ThreadStart: '1' 
+Foo Man Chu
+#basic"""
+
+		assertGreppOutput(expectedResult) {
+			Grepp.main("-norx Man%and%#basic%or%no?pain(*) $HOME\\processing_test.log".split(" "))
+		}
+
+		assertGreppOutput(expectedResult) {
+			Grepp.main("Man.\\w+%or%pa[i]n $HOME\\processing_test.log".split(" "))
+		}
+
+		assertGreppOutput("") {
+			Grepp.main("-norx #basic%and%Man $HOME\\processing_test.log".split(" "))
+		}
+	}
+
+	void testResultLimitFiltering() {
+
+		def expectedResult = """\
+2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '22' 
+Foo Koo
+
+2013-09-20 05:05:57,951 [ACTIVE] ThreadStart: '22' SkipPattern
+Too"""
+
+		assertGreppOutput(expectedResult) {
+			Grepp.main("-n 2 oo $HOME\\processing_test.log".split(" "))
+		}
+
+		expectedResult = """\
+2012-10-20 05:05:57,953 [ACTIVE] ThreadStart: '1' ThreadEnd2
+Voo
+#complex
+2012-10-20 05:05:57,952 [ACTIVE] ThreadStart: '1' SkipPattern
+Loo"""
+
+		assertGreppOutput(expectedResult) {
+			Grepp.main("-n 2 --reverse oo $HOME\\processing_test.log".split(" "))
+		}
+	}
+
+	/**
+	 * Files which can't be read from the end are read forward with --reverse, so their dates should be checked as usual.
+	 */
+	void testReversedFallbackDateFiltering() {
+		def gzFile = new File(HOME+"\\processing_reverse_test.log.gz")
+		gzFile.withOutputStream { out ->
+			def gzOut = new GZIPOutputStream(out)
+			gzOut.write(new File(HOME+"\\processing_test.log").bytes)
+			gzOut.finish()
+		}
+
+		try {
+			["-d 2012-10-01;+", "-d +;2013-01-01"].each { dates ->
+				["-e $dates oo $HOME\\processing_test.log", "$dates oo $HOME\\processing_reverse_test.log.gz"].each { args ->
+					def expectedResult = getOutput {
+						Grepp.main(args.split(" "))
+					}
+					assertTrue("Should have results for $args", !expectedResult.isEmpty())
+					assertGreppOutput(expectedResult) {
+						Grepp.main("--reverse $args".split(" "))
+					}
+				}
+			}
+		}
+		finally {
+			gzFile.delete()
+		}
+	}
+
 	void testLogEntryStartEndFiltering() {
 
 		def expectedResult = """\
@@ -379,6 +764,31 @@ Foo Koo
 		}
 	}
 
+	void testTimeToThreadsFiltering() {
+		def testFile = new File(HOME+"\\processing_interrupt_test.log")
+		testFile.text = """\
+2012-09-20 05:00:00 ThreadStart: '1' Foo a
+2012-09-20 05:00:01 ThreadStart: '2' Foo b ThreadEnd1
+2012-09-20 06:00:00 ThreadStart: '3' Foo c ThreadEnd1
+2012-09-20 06:00:01 ThreadStart: '1' Foo late
+2012-09-20 06:00:02 ThreadStart: '1' Foo later
+"""
+
+		def expectedResult = """\
+2012-09-20 05:00:01 ThreadStart: '2' Foo b ThreadEnd1
+2012-09-20 05:00:00 ThreadStart: '1' Foo a
+2012-09-20 06:00:01 ThreadStart: '1' Foo late"""
+
+		try {
+			assertGreppOutput(expectedResult) { //the thread shouldn't get lines past the one which has interrupted filtering
+				Grepp.main("-e --noff -d 2012-09-20T05:00:00;2012-09-20T05:30:00 Foo $HOME\\processing_interrupt_test.log".split(" "))
+			}
+		}
+		finally {
+			testFile.delete()
+		}
+	}
+
 	void testReportFiltering() {
 
 		def expectedResult = """\
@@ -443,6 +853,489 @@ Foo Man Chu
 		}
 	}
 
+	void testParallelHeteroFilesGreppMain() {
+
+		def expectedResult = """\
+2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '22' 
+Foo Koo
+
+2012-10-20 05:05:56,951 [ACTIVE] ThreadStart: '1' 
+Foo Man Chu
+#basic"""
+
+		assertGreppOutput(expectedResult) {
+			Grepp.main("-par 2 Foo $HOME\\processing_test.log $HOME\\fpTest_test.log".split(" "))
+		}
+	}
+
+	void testReadAheadHeteroFilesGreppMain() {
+		def expectedResult = getOutput {
+			Grepp.main("Foo $HOME\\processing_test.log $HOME\\fpTest_test.log".split(" "))
+		}
+
+		assertGreppOutput(expectedResult) {
+			Grepp.main("-ra Foo $HOME\\processing_test.log $HOME\\fpTest_test.log".split(" "))
+		}
+	}
+
+	void testMergedHeteroFilesGreppMain() {
+		def fpFile = new File(HOME+"\\fpTest_merge_test.log")
+		def prFile = new File(HOME+"\\processing_merge_test.log")
+		fpFile.text = "####[INFO] 2012-09-20 05:06:00 three Foo\n####[INFO] 2012-09-20 05:06:01 four Foo\n"
+		prFile.text = "2012-09-20 05:07:00 one Foo\n2012-09-20 05:07:01 two Foo\n"
+
+		def expectedResult = """\
+####[INFO] 2012-09-20 05:06:00 three Foo
+####[INFO] 2012-09-20 05:06:01 four Foo
+2012-09-20 05:07:00 one Foo
+2012-09-20 05:07:01 two Foo"""
+
+		try {
+			fpFile.setLastModified(1300000000000L)
+			prFile.setLastModified(1400000000000L)
+			assertGreppOutput(expectedResult) { //last entries of both files should be printed, though they have different configIds
+				Grepp.main("-m Foo $HOME\\fpTest_merge_test.log $HOME\\processing_merge_test.log".split(" "))
+			}
+		}
+		finally {
+			[fpFile, prFile]*.delete()
+		}
+	}
+
+	void testReadAheadLineSource() {
+		def linesOf = { int count, Throwable failure ->
+			int read = 0
+			[readLine: { -> 
+				if (read < count) {
+					return "line ${read++}".toString()
+				}
+				if (failure != null) {
+					throw failure
+				}
+				return null
+			}, close: { -> }] as LineSource
+		}
+
+		def lines = new ReadAheadLineSource(linesOf(10, null), "test", 3, 2) //so the last batch is not full
+		try {
+			(0..9).each { assertTrue("Lines should come in order", "line $it".toString() == lines.readLine()) }
+			assertTrue("Should be the end", lines.readLine() == null)
+			assertTrue("Should stay at the end", lines.readLine() == null)
+		}
+		finally {
+			lines.close()
+		}
+
+		[new IOException("source failed"), new IllegalStateException("source failed"), new OutOfMemoryError("source failed")].each { failure ->
+			lines = new ReadAheadLineSource(linesOf(5, failure), "test", 3, 2)
+			try {
+				(0..4).each { assertTrue("Lines read before the failure should come first", "line $it".toString() == lines.readLine()) }
+				try {
+					lines.readLine()
+					fail("The source failure should be rethrown")
+				}
+				catch (Throwable t) {
+					assertTrue("The source failure should be rethrown as is: " + t, t.is(failure))
+				}
+			}
+			finally {
+				lines.close()
+			}
+		}
+	}
+
+	void testCompressedFileFiltering() {
+		def expectedResult = getOutput {
+			Grepp.main("Foo $HOME\\processing_test.log".split(" "))
+		}
+
+		def gzFile = new File(HOME+"\\processing_test.log.gz")
+		gzFile.withOutputStream { out ->
+			def gzOut = new GZIPOutputStream(out)
+			gzOut.write(new File(HOME+"\\processing_test.log").bytes)
+			gzOut.finish()
+		}
+
+		try {
+			assertGreppOutput(expectedResult) {
+				Grepp.main("Foo $HOME\\processing_test.log.gz".split(" "))
+			}
+		}
+		finally {
+			gzFile.delete()
+		}
+	}
+
+	void testParallelUnsplitFilesFiltering() {
+		def text = new File(HOME+"\\processing_test.log").text
+		def gzFile = new File(HOME+"\\processing_par_test.log.gz")
+		gzFile.withOutputStream { out ->
+			def gzOut = new GZIPOutputStream(out)
+			gzOut.write(text.getBytes())
+			gzOut.finish()
+		}
+		def bigFile = new File(HOME+"\\processing_par_big_test.log")
+		bigFile.text = text * 200 //threads can't be split, so it's processed sequentially between the forked files
+
+		def files = "$HOME\\processing_test.log $HOME\\processing_par_test.log.gz $HOME\\processing_par_big_test.log"
+		try {
+			def expectedResult = getOutput {
+				Grepp.main("-e oo $files".split(" "))
+			}
+			assertGreppOutput(expectedResult) {
+				Grepp.main("-par 3 -split 1K -e oo $files".split(" "))
+			}
+		}
+		finally {
+			[gzFile, bigFile]*.delete()
+		}
+	}
+
+	void testReadAheadInputStream() {
+		def text = (1..2000).collect { "line $it ${'x' * (it % 13)}" }.join('\n').getBytes("UTF-8")
+		def compressed = new ByteArrayOutputStream()
+		def gzOut = new GZIPOutputStream(compressed)
+		gzOut.write(text)
+		gzOut.finish()
+
+		def stream = new ReadAheadInputStream(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray())), "test", 7, 2) //so blocks are recycled many times
+		def result = new ByteArrayOutputStream()
+		try {
+			result << stream
+		}
+		finally {
+			stream.close()
+		}
+		assertTrue("Read ahead bytes should be the same as decompressed ones", Arrays.equals(text, result.toByteArray()))
+
+		def failure = new IllegalStateException("source failed")
+		def failing = new InputStream() {
+			int left = 10
+			int read() {
+				byte[] b = new byte[1]
+				return read(b, 0, 1) == 1 ? b[0] : -1
+			}
+			int read(byte[] b, int off, int len) {
+				if (left == 0) {
+					throw failure
+				}
+				int length = Math.min(len, left)
+				Arrays.fill(b, off, off + length, (byte) 'x')
+				left -= length
+				return length
+			}
+		}
+		stream = new ReadAheadInputStream(failing, "test", 4, 2) //so the failure is met in the middle of a block
+		int read = 0
+		try {
+			while (stream.read() != -1) {
+				read++
+			}
+			fail("The source failure should be rethrown")
+		}
+		catch (IllegalStateException ise) {
+			assertTrue("The source failure should be rethrown as is", ise.is(failure))
+			assertTrue("Bytes read before the failure should come first: " + read, read == 10)
+		}
+		finally {
+			stream.close()
+		}
+	}
+
+	void testFileSorting() {
+		def oldFile = new File(HOME+"\\sort_test_old.log")
+		def newFile = new File(HOME+"\\sort_test_new.log")
+		def gzFile = new File(HOME+"\\sort_test_archived.log.gz")
+		oldFile.text = "old\n"
+		newFile.text = "new\n"
+		gzFile.withOutputStream { out ->
+			def gzOut = new GZIPOutputStream(out)
+			gzOut.write("archived\n".getBytes("UTF-8"))
+			gzOut.finish()
+		}
+		def gzBytes = gzFile.bytes
+		long archivedSeconds = 1000000000L
+		(0..3).each { gzBytes[4 + it] = (byte) (archivedSeconds >>> (8 * it)) } //gzip header MTIME
+		gzFile.bytes = gzBytes
+
+		try {
+			oldFile.setLastModified(1300000000000L)
+			newFile.setLastModified(1400000000000L)
+			gzFile.setLastModified(1500000000000L) //the archive is the newest file, but has the oldest content
+			assertTrue("Files should be sorted by their content time", [gzFile, oldFile, newFile] == new FileSortFilter().filter([newFile, gzFile, oldFile]))
+		}
+		finally {
+			[oldFile, newFile, gzFile]*.delete()
+		}
+	}
+
+	void testCompressedSpoolFiltering() {
+
+		def expectedResult = """\
+2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '22' 
+Foo Koo
+
+2012-10-20 05:05:56,951 [ACTIVE] ThreadStart: '1' 
+Foo Man Chu
+#basic"""
+
+		def resultsDir = new File(HOME, "results")
+		def spooledBefore = resultsDir.exists() ? resultsDir.listFiles().toList() : []
+		Grepp.main("-s -gz Foo $HOME\\processing_test.log".split(" "))
+		def spooled = resultsDir.listFiles().findAll { !spooledBefore.contains(it) }
+		try {
+			assertTrue("Should be a single gzipped spool file: " + spooled, spooled.size() == 1 && spooled[0].name.endsWith(".txt.gz"))
+			def spooledResult = new GZIPInputStream(new FileInputStream(spooled[0])).withReader { it.readLines().join('\n') }
+			assertTrue("Spooled output not matched", expectedResult == spooledResult)
+		}
+		finally {
+			spooled*.delete()
+		}
+	}
+
+	void testSpoolClosingFailure() {
+		File dir = File.createTempFile("grepp_spool", "")
+		dir.delete()
+		dir.mkdirs()
+		def spool = new SpoolOutputStream(dir, "result", "txt", false, 0L) {
+			@Override
+			protected OutputStream openStream(FileOutputStream file) {
+				return new FilterOutputStream(file) {
+					@Override
+					public void close() {
+						throw new IOException("No space left on device")
+					}
+				}
+			}
+		}
+		Throwable thrown = null
+		def closing = Thread.start {
+			try {
+				spool.write("Foo\n".getBytes())
+				spool.close()
+			}
+			catch (Throwable t) {
+				thrown = t
+			}
+		}
+		closing.join(30000)
+		try {
+			assertTrue("Closing shouldn't hang if the file can't be closed", !closing.isAlive())
+			assertTrue("Failure of closing should be thrown: " + thrown, thrown instanceof IOException && thrown.getMessage() == "No space left on device")
+		}
+		finally {
+			dir.deleteDir()
+		}
+	}
+
+	void testZipEntriesFiltering() {
+
+		def expectedResult = """\
+2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '22' 
+Foo Koo
+
+2012-10-20 05:05:56,951 [ACTIVE] ThreadStart: '1' 
+Foo Man Chu
+#basic"""
+
+		def zipFile = new File(HOME+"\\test_logs.zip")
+		zipFile.withOutputStream { out ->
+			def zipOut = new ZipOutputStream(out)
+			["processing_test.log", "fpTest_test.log"].each { name ->
+				zipOut.putNextEntry(new ZipEntry(name))
+				zipOut.write(new File(HOME+"\\"+name).bytes)
+				zipOut.closeEntry()
+			}
+			zipOut.finish()
+		}
+
+		try {
+			assertGreppOutput(expectedResult) {
+				Grepp.main("Foo $HOME\\test_logs.zip".split(" "))
+			}
+		}
+		finally {
+			zipFile.delete()
+		}
+	}
+
+	void testSeekToDateFromFiltering() {
+
+		def expectedResult = """\
+2013-01-02 09:18:00,000 [ACTIVE] ThreadStart: '1998' 
+Foo 1998
+2013-01-02 09:19:00,000 [ACTIVE] ThreadStart: '1999' 
+Foo 1999"""
+
+		def timedFile = new File(HOME+"\\processing_seek_test.log")
+		def dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+		def startTime = dateFormat.parse("2013-01-01 00:00:00").getTime()
+		timedFile.withWriter { writer ->
+			2000.times { i ->
+				writer.write("${dateFormat.format(new Date(startTime + i*60000L))},000 [ACTIVE] ThreadStart: '$i' \nFoo $i\n")
+			}
+		}
+
+		try {
+			assertGreppOutput(expectedResult) {
+				Grepp.main("-d 2013-01-02T09:18;+ Foo $HOME\\processing_seek_test.log".split(" "))
+			}
+
+			assertGreppOutput(expectedResult) {
+				Grepp.main("-seek -d 2013-01-02T09:18;+ Foo $HOME\\processing_seek_test.log".split(" "))
+			}
+
+			assertGreppOutput("$expectedResult\n$expectedResult") { //each worker seeks by its own output
+				Grepp.main("-seek -par 2 -d 2013-01-02T09:18;+ Foo $HOME\\processing_seek_test.log $HOME\\processing_seek_test.log".split(" "))
+			}
+		}
+		finally {
+			timedFile.delete()
+		}
+	}
+
+	void testSplitFromDateFiltering() {
+		def timedFile = new File(HOME+"\\processing_split_test.log")
+		def dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+		def startTime = dateFormat.parse("2013-01-01 00:00:00").getTime()
+		timedFile.withWriter { writer ->
+			400.times { i ->
+				def entryTime = i > 100 && i % 10 == 5 ? startTime : startTime + i*60000L //some entries after 'from' are dated before it
+				writer.write("${dateFormat.format(new Date(entryTime))},000 [ACTIVE] ThreadStart: '$i' \n${i % 2 == 1 ? 'Foo' : 'Boo'} $i\n")
+			}
+		}
+
+		try {
+			def expectedResult = getOutput {
+				Grepp.main("-d 2013-01-01T01:40;+ Foo $HOME\\processing_split_test.log".split(" "))
+			}
+			assertTrue("Should keep entries dated before 'from' after it's passed", expectedResult.contains("Foo 105"))
+			assertFalse("Should drop entries before 'from'", expectedResult.contains("Foo 99\n"))
+
+			assertGreppOutput(expectedResult) {
+				Grepp.main("-par 2 -split 1K -d 2013-01-01T01:40;+ Foo $HOME\\processing_split_test.log".split(" "))
+			}
+		}
+		finally {
+			timedFile.delete()
+		}
+	}
+
+	void testIndexedSeekFiltering() {
+
+		def expectedResult = """\
+2013-01-02 09:19:00,000 [ACTIVE] ThreadStart: '1999' 
+Foo 1999"""
+
+		def expectedAppendedResult = """\
+2013-01-02 09:19:00,000 [ACTIVE] ThreadStart: '1999' 
+Foo 1999
+2013-01-02 09:20:00,000 [ACTIVE] ThreadStart: '2000' 
+Foo 2000"""
+
+		def timedFile = new File(HOME+"\\processing_index_test.log")
+		def indexDir = new File(HOME+"\\index")
+		def dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+		def startTime = dateFormat.parse("2013-01-01 00:00:00").getTime()
+		def writeEntries = { range ->
+			timedFile.withWriterAppend { writer ->
+				range.each { i ->
+					writer.write("${dateFormat.format(new Date(startTime + i*60000L))},000 [ACTIVE] ThreadStart: '$i' \nFoo $i\n")
+				}
+			}
+		}
+		writeEntries(0..1999)
+
+		try {
+			assertGreppOutput(expectedResult) {
+				Grepp.main("-idx -d 2013-01-02T09:19;+ Foo $HOME\\processing_index_test.log".split(" "))
+			}
+			assertTrue("Index wasn't saved", indexDir.listFiles().any { it.name.startsWith("processing_index_test.log") })
+
+			assertGreppOutput(expectedResult) {
+				Grepp.main("-idx -d 2013-01-02T09:19;+ Foo $HOME\\processing_index_test.log".split(" "))
+			}
+
+			writeEntries(2000..2000)
+			assertGreppOutput(expectedAppendedResult) {
+				Grepp.main("-idx -d 2013-01-02T09:19;+ Foo $HOME\\processing_index_test.log".split(" "))
+			}
+		}
+		finally {
+			timedFile.delete()
+			indexDir.deleteDir()
+		}
+	}
+
+	void testFollowFiltering() {
+
+		def expectedResult = """\
+2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '22' 
+Foo Koo
+
+2012-10-20 05:05:56,951 [ACTIVE] ThreadStart: '1' 
+Foo Man Chu
+#basic
+2012-10-20 05:05:58,000 [ACTIVE] ThreadStart: '9' 
+Foo appended
+2012-10-20 05:06:00,000 [ACTIVE] ThreadStart: '3' 
+Foo rotated"""
+
+		def followedFile = new File(HOME+"\\processing_follow.log")
+		def rotatedFile = new File(HOME+"\\processing_follow.log.1")
+		followedFile.bytes = new File(HOME+"\\processing_test.log").bytes
+
+		try {
+			assertGreppOutput(expectedResult) { output ->
+				def follower = Thread.start {
+					Grepp.main("-f -idle 100 Foo $HOME\\processing_follow.log".split(" "))
+				}
+				waitForOutput(output, "#basic") //the last entry is printed by the file getting idle, so it's read up to the end
+				followedFile.append("2012-10-20 05:05:58,000 [ACTIVE] ThreadStart: '9' \nFoo appended\n")
+				waitForOutput(output, "Foo appended")
+				followedFile.renameTo(rotatedFile)
+				followedFile.text = "2012-10-20 05:06:00,000 [ACTIVE] ThreadStart: '3' \nFoo rotated\n"
+				waitForOutput(output, "Foo rotated")
+				follower.interrupt()
+				follower.join()
+			}
+		}
+		finally {
+			followedFile.delete()
+			rotatedFile.delete()
+		}
+	}
+
+	void testFollowThreadsFiltering() {
+
+		def expectedResult = """\
+2012-10-20 05:05:59,000 [ACTIVE] ThreadStart: '8' ThreadEnd1
+Foo b
+2012-10-20 05:05:58,000 [ACTIVE] ThreadStart: '9' 
+Foo a
+2012-10-20 05:06:00,000 [ACTIVE] ThreadStart: '9' ThreadEnd1
+Foo c"""
+
+		def followedFile = new File(HOME+"\\processing_follow_threads.log")
+		followedFile.text = "2012-10-20 05:05:58,000 [ACTIVE] ThreadStart: '9' \nFoo a\n"
+
+		try {
+			assertGreppOutput(expectedResult) { output ->
+				def follower = Thread.start {
+					Grepp.main("-f -e -idle 100 Foo $HOME\\processing_follow_threads.log".split(" "))
+				}
+				sleep(500) //the file gets idle, while the thread is still open
+				followedFile.append("2012-10-20 05:05:59,000 [ACTIVE] ThreadStart: '8' ThreadEnd1\nFoo b\n2012-10-20 05:06:00,000 [ACTIVE] ThreadStart: '9' ThreadEnd1\nFoo c\n")
+				waitForOutput(output, "Foo c")
+				follower.interrupt()
+				follower.join()
+			}
+		}
+		finally {
+			followedFile.delete()
+		}
+	}
+
 	void testPropertiesFilter() {
 		def configString = """\
 log4j.logger.com.netcracker.solutions.tnz.cwms=DEBUG, CWMSGlobal
@@ -499,6 +1392,45 @@ logDateFormats {
 		assertTrue(changedConfig.savedConfigs.grepp.pattern == "grepp\\.log")
 	}
 
+	void testServerQueryProcessing() {
+
+		def expectedResult = """\
+2012-09-20 05:05:56,951 [ACTIVE] ThreadStart: '22' 
+Foo Koo
+
+2012-10-20 05:05:56,951 [ACTIVE] ThreadStart: '1' 
+Foo Man Chu
+#basic"""
+
+		def server = new GreppServer(config, 0)
+		server.start()
+		try {
+			def query = ["Foo", "$HOME\\processing_test.log"].collect { "arg=" + URLEncoder.encode(it, "UTF-8") }.join("&")
+			def actualResult = new URL("http://127.0.0.1:${server.getPort()}/grepp?$query").openStream().withReader { it.readLines().join('\n') }
+			assertTrue("Server output not matched", expectedResult == actualResult)
+
+			def statusOf = { List<String> args ->
+				HttpURLConnection connection = new URL("http://127.0.0.1:${server.getPort()}/grepp?" + args.collect { "arg=" + URLEncoder.encode(it, "UTF-8") }.join("&")).openConnection()
+				return connection.getResponseCode()
+			}
+			assertTrue("Nested server not refused", statusOf(["-server", "0"]) == 400)
+			assertTrue("Follow not refused", statusOf(["-f", "Foo", "$HOME\\processing_test.log"]) == 400)
+			assertTrue("Logging level change not refused", statusOf(["-t", "Foo", "$HOME\\processing_test.log"]) == 400)
+			assertTrue("Config saving by GET not refused", statusOf(["--add", "foo", "Foo", "$HOME\\processing_test.log"]) == 405)
+
+			HttpURLConnection existingAdd = new URL("http://127.0.0.1:${server.getPort()}/grepp?" + ["--add", "pr_test", "Foo", "$HOME\\processing_test.log"].collect { "arg=" + URLEncoder.encode(it, "UTF-8") }.join("&")).openConnection()
+			existingAdd.setRequestMethod("POST")
+			assertTrue("Adding an existing configId should fail the query", existingAdd.getResponseCode() == 400)
+
+			query = ["--dateProp", "yyyy;(\\d{4})", "Foo", "$HOME\\processing_test.log"].collect { "arg=" + URLEncoder.encode(it, "UTF-8") }.join("&")
+			def noticedResult = new URL("http://127.0.0.1:${server.getPort()}/grepp?$query").openStream().withReader { it.readLines().join('\n') }
+			assertTrue("Notice should be sent to the client", noticedResult.startsWith("dateProp option is ignored"))
+		}
+		finally {
+			server.stop()
+		}
+	}
+
 	void testInputStreamProcessing() {
 		def tPipeOut = new PipedOutputStream()
 		def tPipeIn = new PipedInputStream(tPipeOut)
@@ -533,5 +1465,86 @@ asdas
 			System.setIn(oldIn)
 		}
 	}
+
+	void testPipelinedInputStreamProcessing() {
+		def tPipeOut = new PipedOutputStream()
+		def tPipeIn = new PipedInputStream(tPipeOut)
+		def passToIn = new PrintStream(tPipeOut)
+		def text = """\
+#asda
+asdas
+#asdas
+#sadas
+fdsfd
+"""
+		passToIn.print(text)
+		passToIn.close()
+		def oldIn = System.in
+		System.setIn(tPipeIn)
+		def expectedResult = """#asda
+asdas
+#asdas"""
+
+		try {
+			assertGreppOutput(expectedResult) {
+				Grepp.main("-par 2 -l # asd".split(" "))
+			}
+		}
+		catch (Exception e) {
+			tPipeIn.close()
+			System.setIn(oldIn)
+			throw e
+		}
+		finally {
+			tPipeIn.close()
+			System.setIn(oldIn)
+		}
+	}
+
+	void testStreamFlushing() {
+		def tPipeOut = new PipedOutputStream()
+		def tPipeIn = new PipedInputStream(tPipeOut)
+		def passToIn = new PrintStream(tPipeOut, true)
+		def oldIn = System.in
+		System.setIn(tPipeIn)
+
+		try {
+			assertGreppOutput("#asda\n#asdb") { output ->
+				def grepp = Thread.start {
+					Grepp.main("-l # asd".split(" "))
+				}
+				passToIn.print("#asda\n#asdb\n")
+				waitForOutput(output, "#asda") //the first entry is ended by the second one, and shouldn't wait for the end of the stream
+				passToIn.close()
+				grepp.join()
+			}
+		}
+		finally {
+			tPipeIn.close()
+			System.setIn(oldIn)
+		}
+	}
+
+	void testPipelinedBatchBoundaries() {
+		def text = new StringBuilder()
+		200.times { i ->
+			text.append("#entry $i ${i % 3 == 0 ? 'asd' : 'qwe'}\n")
+			(i % 5).times { j -> text.append("line $j of $i\n") }
+		}
+
+		def processWith = { int threads ->
+			def entryFilterChain = makeFilterChains(facade, "-l # asd").entryFilterChain
+			def result = new StringWriter()
+			def processor = new InputStreamProcessor(new SimpleOutput<String>(config, entryFilterChain, new PrintWriter(result)))
+			processor.setThreads(threads)
+			processor.setBatchLines(3) //so each batch is ended by the next one's entry start
+			processor.process(new ByteArrayInputStream(text.toString().bytes))
+			return result.toString().readLines().join("\n")
+		}
+
+		def expectedResult = processWith(1)
+		assertTrue("Should find the whole last matching entry", expectedResult.contains("#entry 198 asd\nline 0 of 198\nline 1 of 198\nline 2 of 198"))
+		assertTrue("Pipelined output should be the same as sequential", expectedResult == processWith(3))
+	}
 	
 }
\ No newline at end of file